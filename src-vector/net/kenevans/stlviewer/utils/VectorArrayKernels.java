@@ -0,0 +1,290 @@
+package net.kenevans.stlviewer.utils;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * VectorArrayKernels implements ArrayKernels with the jdk.incubator.vector
+ * API. It needs Java 16 or later and is compiled and run with --add-modules
+ * jdk.incubator.vector. ArrayKernels.getInstance uses it when the system
+ * property stlviewer.vectorKernels is true and it can be loaded.<br>
+ * <br>
+ * The values are handled in lanes, with masks in place of the branches of
+ * ScalarArrayKernels. The counts, minimum, and maximum are the same. The sums
+ * are the same apart from rounding, since each lane is summed separately.
+ * The distances use the vector sin, cos, and atan2, which may differ from
+ * Math by a few ulps.
+ *
+ * @author Kenneth Evans, Jr.
+ */
+public class VectorArrayKernels extends ArrayKernels
+{
+    private static final VectorSpecies<Double> DSPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LSPECIES = LongVector.SPECIES_PREFERRED;
+    private static final int LANES = DSPECIES.length();
+
+    /**
+     * VectorArrayKernels constructor.
+     *
+     * @throws IllegalStateException If the double and long vectors do not
+     *             have the same number of lanes.
+     */
+    public VectorArrayKernels() {
+        if(LSPECIES.length() != LANES) {
+            throw new IllegalStateException("Vector shapes do not match");
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see net.kenevans.stlviewer.utils.ArrayKernels#channelStats(double[],
+     * long[], double, double, double[])
+     */
+    @Override
+    public void channelStats(double[] vals, long[] timeVals,
+        double omitBelow, double movingOmitBelow, double[] results) {
+        int len = vals.length;
+        // Lanes need the values on both sides, so the first and last values
+        // and the rest that do not fill the lanes are done with the scalar
+        // kernel
+        int end = len < LANES + 2 ? 1 : 1 + (len - 2) / LANES * LANES;
+        scalarRange(vals, timeVals, 0, Math.min(len, 1), omitBelow,
+            movingOmitBelow, results);
+        if(end == 1) {
+            double[] rest = new double[N_RESULTS];
+            scalarRange(vals, timeVals, 1, len, omitBelow, movingOmitBelow,
+                rest);
+            combine(results, rest);
+            return;
+        }
+
+        DoubleVector zero = DoubleVector.zero(DSPECIES);
+        DoubleVector sumV = zero, weightedSumV = zero, totalWeightV = zero;
+        DoubleVector movingSumV = zero, movingWeightedSumV = zero;
+        DoubleVector movingTotalWeightV = zero, gainV = zero, lossV = zero;
+        DoubleVector minV = DoubleVector.broadcast(DSPECIES, Double.MAX_VALUE);
+        DoubleVector maxV = DoubleVector.broadcast(DSPECIES,
+            -Double.MAX_VALUE);
+        long nValues = 0, nNaN = 0, nSegments = 0, nUsed = 0, nMoving = 0;
+        long nDiffs = 0;
+        DoubleVector val, prev, next, halfLeft, halfRight, weight, diff;
+        VectorMask<Double> valid, prevValid, nextValid, used, moving,
+            diffValid;
+        for(int i = 1; i < end; i += LANES) {
+            val = DoubleVector.fromArray(DSPECIES, vals, i);
+            prev = DoubleVector.fromArray(DSPECIES, vals, i - 1);
+            next = DoubleVector.fromArray(DSPECIES, vals, i + 1);
+            LongVector time = LongVector.fromArray(LSPECIES, timeVals, i);
+            halfLeft = ((DoubleVector)time
+                .sub(LongVector.fromArray(LSPECIES, timeVals, i - 1))
+                .convert(VectorOperators.L2D, 0)).mul(.5);
+            halfRight = ((DoubleVector)LongVector
+                .fromArray(LSPECIES, timeVals, i + 1).sub(time)
+                .convert(VectorOperators.L2D, 0)).mul(.5);
+
+            valid = val.test(VectorOperators.IS_NAN).not();
+            prevValid = prev.test(VectorOperators.IS_NAN).not();
+            nextValid = next.test(VectorOperators.IS_NAN).not();
+            nValues += valid.trueCount();
+            nNaN += LANES - valid.trueCount();
+            nSegments += valid.and(prevValid.not()).trueCount();
+
+            // The weight is 0 on a side with a NaN
+            weight = zero.blend(halfLeft, prevValid)
+                .add(zero.blend(halfRight, nextValid));
+
+            diff = val.sub(prev);
+            diffValid = valid.and(prevValid);
+            nDiffs += diffValid.trueCount();
+            gainV = gainV.add(diff,
+                diffValid.and(diff.compare(VectorOperators.GT, 0)));
+            lossV = lossV.sub(diff,
+                diffValid.and(diff.compare(VectorOperators.LT, 0)));
+
+            // Comparisons with NaN are false
+            used = val.compare(VectorOperators.GE, omitBelow);
+            nUsed += used.trueCount();
+            sumV = sumV.add(val, used);
+            totalWeightV = totalWeightV.add(weight, used);
+            weightedSumV = weightedSumV.add(val.mul(weight), used);
+            minV = minV.min(minV.blend(val, used));
+            maxV = maxV.max(maxV.blend(val, used));
+
+            moving = val.compare(VectorOperators.GE, movingOmitBelow);
+            nMoving += moving.trueCount();
+            movingSumV = movingSumV.add(val, moving);
+            movingTotalWeightV = movingTotalWeightV.add(weight, moving);
+            movingWeightedSumV = movingWeightedSumV.add(val.mul(weight),
+                moving);
+        }
+        double[] part = new double[N_RESULTS];
+        part[N_VALUES] = nValues;
+        part[N_NAN] = nNaN;
+        part[N_SEGMENTS] = nSegments;
+        part[N_USED] = nUsed;
+        part[MIN] = minV.reduceLanes(VectorOperators.MIN);
+        part[MAX] = maxV.reduceLanes(VectorOperators.MAX);
+        part[SUM] = sumV.reduceLanes(VectorOperators.ADD);
+        part[WEIGHTED_SUM] = weightedSumV.reduceLanes(VectorOperators.ADD);
+        part[TOTAL_WEIGHT] = totalWeightV.reduceLanes(VectorOperators.ADD);
+        part[N_MOVING] = nMoving;
+        part[MOVING_SUM] = movingSumV.reduceLanes(VectorOperators.ADD);
+        part[MOVING_WEIGHTED_SUM] = movingWeightedSumV
+            .reduceLanes(VectorOperators.ADD);
+        part[MOVING_TOTAL_WEIGHT] = movingTotalWeightV
+            .reduceLanes(VectorOperators.ADD);
+        part[N_DIFFS] = nDiffs;
+        part[GAIN] = gainV.reduceLanes(VectorOperators.ADD);
+        part[LOSS] = lossV.reduceLanes(VectorOperators.ADD);
+        combine(results, part);
+
+        double[] rest = new double[N_RESULTS];
+        scalarRange(vals, timeVals, end, len, omitBelow, movingOmitBelow,
+            rest);
+        combine(results, rest);
+    }
+
+    /**
+     * Gets the results for the values from start to end, using the values on
+     * either side of the range for the weights and differences.
+     *
+     * @param vals
+     * @param timeVals
+     * @param start
+     * @param end
+     * @param omitBelow
+     * @param movingOmitBelow
+     * @param results
+     */
+    private static void scalarRange(double[] vals, long[] timeVals,
+        int start, int end, double omitBelow, double movingOmitBelow,
+        double[] results) {
+        int len = vals.length;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        double val, diff, weight;
+        boolean prevValid, nextValid;
+        for(int i = 0; i < N_RESULTS; i++) {
+            results[i] = 0;
+        }
+        for(int i = start; i < end; i++) {
+            val = vals[i];
+            if(Double.isNaN(val)) {
+                results[N_NAN]++;
+                continue;
+            }
+            results[N_VALUES]++;
+            prevValid = i > 0 && !Double.isNaN(vals[i - 1]);
+            nextValid = i < len - 1 && !Double.isNaN(vals[i + 1]);
+            if(prevValid) {
+                diff = val - vals[i - 1];
+                results[N_DIFFS]++;
+                if(diff > 0) {
+                    results[GAIN] += diff;
+                } else if(diff < 0) {
+                    results[LOSS] += -diff;
+                }
+            } else {
+                results[N_SEGMENTS]++;
+            }
+            weight = (prevValid ? .5 * (timeVals[i] - timeVals[i - 1]) : 0)
+                + (nextValid ? .5 * (timeVals[i + 1] - timeVals[i]) : 0);
+            if(val >= omitBelow) {
+                results[N_USED]++;
+                results[SUM] += val;
+                results[TOTAL_WEIGHT] += weight;
+                results[WEIGHTED_SUM] += val * weight;
+                max = Math.max(max, val);
+                min = Math.min(min, val);
+            }
+            if(val >= movingOmitBelow) {
+                results[N_MOVING]++;
+                results[MOVING_SUM] += val;
+                results[MOVING_TOTAL_WEIGHT] += weight;
+                results[MOVING_WEIGHTED_SUM] += val * weight;
+            }
+        }
+        results[MIN] = min;
+        results[MAX] = max;
+    }
+
+    /**
+     * Adds the given part of the results to the results.
+     *
+     * @param results
+     * @param part
+     */
+    private static void combine(double[] results, double[] part) {
+        for(int i = 0; i < N_RESULTS; i++) {
+            if(i == MIN) {
+                results[i] = Math.min(results[i], part[i]);
+            } else if(i == MAX) {
+                results[i] = Math.max(results[i], part[i]);
+            } else {
+                results[i] += part[i];
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * net.kenevans.stlviewer.utils.ArrayKernels#consecutiveDistances(double[],
+     * double[], double[])
+     */
+    @Override
+    public void consecutiveDistances(double[] lats, double[] lons,
+        double[] distances) {
+        int len = lats.length;
+        if(len == 0) {
+            return;
+        }
+        distances[0] = Double.NaN;
+        int end = 1 + (len - 1) / LANES * LANES;
+        DoubleVector lat1, lon1, lat2, lon2, slon, slat, a, c;
+        for(int i = 1; i < end; i += LANES) {
+            lat1 = DoubleVector.fromArray(DSPECIES, lats, i - 1)
+                .mul(GpxUtils.DEG2RAD);
+            lon1 = DoubleVector.fromArray(DSPECIES, lons, i - 1)
+                .mul(GpxUtils.DEG2RAD);
+            lat2 = DoubleVector.fromArray(DSPECIES, lats, i)
+                .mul(GpxUtils.DEG2RAD);
+            lon2 = DoubleVector.fromArray(DSPECIES, lons, i)
+                .mul(GpxUtils.DEG2RAD);
+            // Haversine formula as in GpxUtils.greatCircleDistance
+            slon = lon2.sub(lon1).div(2.).lanewise(VectorOperators.SIN);
+            slat = lat2.sub(lat1).div(2.).lanewise(VectorOperators.SIN);
+            a = slat.mul(slat).add(lat1.lanewise(VectorOperators.COS)
+                .mul(lat2.lanewise(VectorOperators.COS)).mul(slon)
+                .mul(slon));
+            c = a.sqrt().lanewise(VectorOperators.ATAN2,
+                a.neg().add(1.).sqrt()).mul(2.);
+            c.mul(GpxUtils.REARTH / GpxUtils.M2MI).intoArray(distances, i);
+        }
+        for(int i = end; i < len; i++) {
+            distances[i] = GpxUtils.greatCircleDistance(lats[i - 1],
+                lons[i - 1], lats[i], lons[i]);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see net.kenevans.stlviewer.utils.ArrayKernels#getName()
+     */
+    @Override
+    public String getName() {
+        return "Vector (" + LANES + " lanes)";
+    }
+
+}
@@ -6,15 +6,20 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.text.SimpleDateFormat;
+import java.util.List;
 
 import javax.swing.JOptionPane;
 
 import net.kenevans.core.utils.Utils;
+import net.kenevans.stlviewer.model.GpxSource;
 import net.kenevans.stlviewer.model.IConstants;
+import net.kenevans.stlviewer.model.QuantileSketch;
+import net.kenevans.stlviewer.model.STLFileModel;
 
 /* STLDatabase
  * Created on Feb 2, 2015
@@ -96,6 +101,134 @@ public class STLDatabase implements IConstants
         return conn;
     }
 
+    /**
+     * Gets the name under which the sketches for the given file are stored.
+     * It is the GPX name without the directory, so a plain, compressed, or
+     * zipped copy of the same file replaces the same rows.
+     *
+     * @param fileName
+     * @return
+     */
+    private static String getSketchName(String fileName) {
+        return new File(GpxSource.getGpxName(fileName)).getName();
+    }
+
+    /**
+     * Saves the HR and speed QuantileSketches for the given model, replacing
+     * any for the same file as given by getSketchName. The sketch table is
+     * created if it does not exist.
+     *
+     * @param conn
+     * @param model
+     * @return If it succeeded.
+     */
+    public static boolean putSketches(Connection conn, STLFileModel model) {
+        Statement stmt = null;
+        PreparedStatement pstmt = null;
+        try {
+            stmt = conn.createStatement();
+            stmt.setQueryTimeout(30); // set timeout to 30 sec.
+            stmt.executeUpdate(CREATE_SKETCH_TABLE_STMT);
+            pstmt = conn.prepareStatement("INSERT OR REPLACE INTO "
+                + SKETCH_TABLE_NAME + " VALUES(?,?,?,?,?)");
+            pstmt.setQueryTimeout(30);
+            String[] channels = {SKETCH_CHANNEL_HR, SKETCH_CHANNEL_SPEED};
+            QuantileSketch[] sketches = {model.getHrSketch(),
+                model.getSpeedSketch()};
+            String name = getSketchName(model.getFileName());
+            for(int i = 0; i < channels.length; i++) {
+                pstmt.setString(1, name);
+                pstmt.setString(2, channels[i]);
+                pstmt.setLong(3, model.getStartTime());
+                pstmt.setLong(4, model.getEndTime());
+                pstmt.setBytes(5, sketches[i].toBytes());
+                pstmt.executeUpdate();
+            }
+        } catch(SQLException ex) {
+            Utils.excMsg("Error saving the distributions for "
+                + model.getFileName(), ex);
+            return false;
+        } finally {
+            close(pstmt);
+            close(stmt);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the QuantileSketch for the given channel merged over the files
+     * that start in the given range.
+     *
+     * @param conn
+     * @param channel SKETCH_CHANNEL_HR or SKETCH_CHANNEL_SPEED.
+     * @param startTime The start of the range in ms, inclusive.
+     * @param endTime The end of the range in ms, exclusive.
+     * @return The merged sketch, which is empty if there are no files, or
+     *         null on error.
+     */
+    public static QuantileSketch getMergedSketch(Connection conn,
+        String channel, long startTime, long endTime) {
+        QuantileSketch merged = new QuantileSketch();
+        Statement stmt = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = conn.createStatement();
+            stmt.setQueryTimeout(30); // set timeout to 30 sec.
+            stmt.executeUpdate(CREATE_SKETCH_TABLE_STMT);
+            pstmt = conn.prepareStatement("SELECT data FROM "
+                + SKETCH_TABLE_NAME + " WHERE channel=? AND start_time>=?"
+                + " AND start_time<?");
+            pstmt.setQueryTimeout(30);
+            pstmt.setString(1, channel);
+            pstmt.setLong(2, startTime);
+            pstmt.setLong(3, endTime);
+            rs = pstmt.executeQuery();
+            while(rs.next()) {
+                merged.merge(QuantileSketch.fromBytes(rs.getBytes(1)));
+            }
+        } catch(Exception ex) {
+            Utils.excMsg("Error getting the distributions for " + channel,
+                ex);
+            return null;
+        } finally {
+            close(rs);
+            close(pstmt);
+            close(stmt);
+        }
+        return merged;
+    }
+
+    /**
+     * Closes the given Statement, ignoring any error.
+     *
+     * @param stmt The Statement or null.
+     */
+    private static void close(Statement stmt) {
+        if(stmt != null) {
+            try {
+                stmt.close();
+            } catch(SQLException ex) {
+                // Do nothing
+            }
+        }
+    }
+
+    /**
+     * Closes the given ResultSet, ignoring any error.
+     *
+     * @param rs The ResultSet or null.
+     */
+    private static void close(ResultSet rs) {
+        if(rs != null) {
+            try {
+                rs.close();
+            } catch(SQLException ex) {
+                // Do nothing
+            }
+        }
+    }
+
     /**
      * Adds values from the given CSV file to the database.
      *
@@ -309,26 +442,37 @@ public class STLDatabase implements IConstants
     }
 
     public static String getInfoForId(String id, String databaseUrl) {
+        return getInfoForId(id, databaseUrl, null);
+    }
+
+    /**
+     * Gets the info in the database for the given id.
+     *
+     * @param id
+     * @param databaseUrl
+     * @param errors A List to which error messages are added rather than
+     *            shown, as when not on the EDT, or null to show them.
+     * @return
+     */
+    public static String getInfoForId(String id, String databaseUrl,
+        List<String> errors) {
         String info = "";
         String databasePath = databaseUrl.substring(DATABASE_URL_PREFIX
             .length());
         File file = new File(databasePath);
         if(file == null) {
-            Utils.errMsg("Database path is null");
+            error(errors, "Database path is null", null);
             return info;
         }
         if(!file.exists()) {
-            Utils.errMsg("Database path does not exist");
+            error(errors, "Database path does not exist", null);
             return info;
         }
         Connection conn = null;
         try {
             // Initialize the JDBC driver
             Class.forName(DRIVER_CLASS).newInstance();
-            conn = getConnection(databaseUrl);
-            if(conn == null) {
-                return info;
-            }
+            conn = DriverManager.getConnection(databaseUrl);
             Statement stmt = conn.createStatement();
             stmt.setQueryTimeout(30); // set timeout to 30 sec.
             String query = "SELECT * FROM " + DATA_TABLE_NAME + " WHERE "
@@ -350,14 +494,39 @@ public class STLDatabase implements IConstants
                 }
             }
         } catch(Exception ex) {
-            Utils.excMsg("Failed to get info for id=" + id, ex);
+            error(errors, "Failed to get info for id=" + id, ex);
             info += "An error occurred getting the database info" + LS;
         } finally {
-            closeConnection(conn);
+            try {
+                if(conn != null && !conn.isClosed()) {
+                    conn.close();
+                }
+            } catch(Exception ex) {
+                error(errors, "Failed to close connection", ex);
+            }
         }
         return info;
     }
 
+    /**
+     * Shows the given error or adds it to the given List.
+     *
+     * @param errors The List or null to show the error.
+     * @param msg
+     * @param ex The exception or null if there is none.
+     */
+    private static void error(List<String> errors, String msg, Exception ex) {
+        if(errors == null) {
+            if(ex == null) {
+                Utils.errMsg(msg);
+            } else {
+                Utils.excMsg(msg, ex);
+            }
+        } else {
+            errors.add(ex == null ? msg : msg + LS + ex.getMessage());
+        }
+    }
+
     /**
      * Fills the database with test values.
      *
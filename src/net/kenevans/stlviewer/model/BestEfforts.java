@@ -0,0 +1,370 @@
+package net.kenevans.stlviewer.model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * BestEfforts holds the best efforts for one channel, such as HR or speed,
+ * over windows of given lengths of time, for example the highest 5 minute
+ * mean HR or the fastest 20 minutes. For each window length there are two
+ * tables:<br>
+ * <ul>
+ * <li>Mean: the highest time-weighted mean over a window.</li>
+ * <li>Sustained: the highest value that every value in a window reached,
+ * which is the largest minimum over a window.</li>
+ * </ul>
+ * Each value holds until the next one, and a window must be within a
+ * segment, so a NaN is a break. The efforts for all the window lengths are
+ * found in one pass with a pointer to the start of each window and, for the
+ * sustained values, a deque of the increasing minimums. Each value enters
+ * and leaves each window once, so the time is O(n) for each window
+ * length.<br>
+ * <br>
+ * A file gives one effort per table. Tables can be merged, keeping the best
+ * maxEntries efforts with the files they came from, so the efforts for many
+ * files can be ranked. They are Serializable.
+ *
+ * @author Kenneth Evans, Jr.
+ */
+public class BestEfforts implements Serializable, IConstants
+{
+    private static final long serialVersionUID = 1L;
+    /** The default window lengths of 1, 5, 20, and 60 min in ms. */
+    public static final long[] DEFAULT_WINDOWS = {60000L, 300000L, 1200000L,
+        3600000L};
+    /** The default number of efforts kept in each table when merging. */
+    public static final int DEFAULT_MAX_ENTRIES = 10;
+
+    /**
+     * Effort is one entry in a table.
+     */
+    public static class Effort implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+        private final double value;
+        private final long endTime;
+        private final String source;
+
+        /**
+         * Effort constructor.
+         *
+         * @param value
+         * @param endTime The time at the end of the window in ms.
+         * @param source The file it came from or null.
+         */
+        public Effort(double value, long endTime, String source) {
+            this.value = value;
+            this.endTime = endTime;
+            this.source = source;
+        }
+
+        /**
+         * @return The value of value.
+         */
+        public double getValue() {
+            return value;
+        }
+
+        /**
+         * @return The time at the end of the window in ms.
+         */
+        public long getEndTime() {
+            return endTime;
+        }
+
+        /**
+         * @return The file it came from or null.
+         */
+        public String getSource() {
+            return source;
+        }
+    }
+
+    /** Sorts Efforts with the highest value first. */
+    private static final Comparator<Effort> BEST_FIRST = new Comparator<Effort>() {
+        @Override
+        public int compare(Effort effort1, Effort effort2) {
+            return Double.compare(effort2.value, effort1.value);
+        }
+    };
+
+    private final long[] windows;
+    private final int maxEntries;
+    /** The mean efforts, indexed by window, best first. */
+    private final Effort[][] means;
+    /** The sustained efforts, indexed by window, best first. */
+    private final Effort[][] sustained;
+
+    /**
+     * BestEfforts constructor for empty tables.
+     *
+     * @param windows The window lengths in ms.
+     * @param maxEntries The number of efforts to keep in each table.
+     */
+    public BestEfforts(long[] windows, int maxEntries) {
+        this.windows = windows.clone();
+        this.maxEntries = maxEntries;
+        means = new Effort[windows.length][0];
+        sustained = new Effort[windows.length][0];
+    }
+
+    /**
+     * Finds the best efforts for the given values with DEFAULT_WINDOWS.
+     *
+     * @param vals
+     * @param timeVals The times in ms, which must have the same length and
+     *            be in order.
+     * @param source The file the values came from or null.
+     * @return The efforts or null if the lengths do not match.
+     */
+    public static BestEfforts compute(double[] vals, long[] timeVals,
+        String source) {
+        return compute(vals, timeVals, DEFAULT_WINDOWS, source);
+    }
+
+    /**
+     * Finds the best efforts for the given values and window lengths in one
+     * pass.
+     *
+     * @param vals
+     * @param timeVals The times in ms, which must have the same length and
+     *            be in order.
+     * @param windows The window lengths in ms.
+     * @param source The file the values came from or null.
+     * @return The efforts or null if the lengths do not match.
+     */
+    public static BestEfforts compute(double[] vals, long[] timeVals,
+        long[] windows, String source) {
+        if(vals.length != timeVals.length) {
+            return null;
+        }
+        int len = vals.length;
+        int nWindows = windows.length;
+        // The state for each window
+        int[] start = new int[nWindows];
+        double[] sum = new double[nWindows];
+        int[][] deque = new int[nWindows][len];
+        int[] head = new int[nWindows];
+        int[] tail = new int[nWindows];
+        // The best so far for each window
+        double[] bestMean = new double[nWindows];
+        long[] bestMeanTime = new long[nWindows];
+        double[] bestSustained = new double[nWindows];
+        long[] bestSustainedTime = new long[nWindows];
+        Arrays.fill(bestMean, Double.NaN);
+        Arrays.fill(bestSustained, Double.NaN);
+
+        int segStart = 0;
+        long time, windowStart;
+        double val, mean, low;
+        int k, first;
+        for(int i = 0; i < len; i++) {
+            if(Double.isNaN(vals[i])) {
+                // Start over after the break
+                segStart = i + 1;
+                continue;
+            }
+            if(i == segStart) {
+                for(int w = 0; w < nWindows; w++) {
+                    start[w] = i;
+                    sum[w] = 0;
+                    head[w] = tail[w] = 0;
+                }
+                continue;
+            }
+            // The value before this one holds until now
+            k = i - 1;
+            val = vals[k];
+            time = timeVals[i];
+            for(int w = 0; w < nWindows; w++) {
+                sum[w] += val * (time - timeVals[k]);
+                int[] dq = deque[w];
+                if(time > timeVals[k]) {
+                    // A value that holds for no time is not sustained
+                    while(tail[w] > head[w] && vals[dq[tail[w] - 1]] >= val) {
+                        tail[w]--;
+                    }
+                    dq[tail[w]++] = k;
+                }
+                windowStart = time - windows[w];
+                if(windowStart < timeVals[segStart]) {
+                    // Not a full window yet
+                    continue;
+                }
+                // Drop the values that end at or before the window start
+                first = start[w];
+                while(timeVals[first + 1] <= windowStart) {
+                    sum[w] -= vals[first]
+                        * (timeVals[first + 1] - timeVals[first]);
+                    first++;
+                }
+                start[w] = first;
+                while(dq[head[w]] < first) {
+                    head[w]++;
+                }
+                // The first value is only partly in the window
+                mean = (sum[w] - vals[first] * (windowStart - timeVals[first]))
+                    / windows[w];
+                if(!(mean <= bestMean[w])) {
+                    bestMean[w] = mean;
+                    bestMeanTime[w] = time;
+                }
+                low = vals[dq[head[w]]];
+                if(!(low <= bestSustained[w])) {
+                    bestSustained[w] = low;
+                    bestSustainedTime[w] = time;
+                }
+            }
+        }
+
+        BestEfforts efforts = new BestEfforts(windows, DEFAULT_MAX_ENTRIES);
+        for(int w = 0; w < nWindows; w++) {
+            if(!Double.isNaN(bestMean[w])) {
+                efforts.means[w] = new Effort[] {
+                    new Effort(bestMean[w], bestMeanTime[w], source)};
+                efforts.sustained[w] = new Effort[] {new Effort(
+                    bestSustained[w], bestSustainedTime[w], source)};
+            }
+        }
+        return efforts;
+    }
+
+    /**
+     * Merges the efforts from the given BestEfforts into these, keeping the
+     * best maxEntries in each table.
+     *
+     * @param other
+     * @return This BestEfforts.
+     * @throws IllegalArgumentException If the window lengths are not the
+     *             same.
+     */
+    public BestEfforts merge(BestEfforts other) {
+        if(!Arrays.equals(windows, other.windows)) {
+            throw new IllegalArgumentException(
+                "Cannot merge best efforts with different windows");
+        }
+        for(int w = 0; w < windows.length; w++) {
+            means[w] = mergeTable(means[w], other.means[w]);
+            sustained[w] = mergeTable(sustained[w], other.sustained[w]);
+        }
+        return this;
+    }
+
+    /**
+     * Merges two tables, keeping the best maxEntries.
+     *
+     * @param table1
+     * @param table2
+     * @return The merged table.
+     */
+    private Effort[] mergeTable(Effort[] table1, Effort[] table2) {
+        if(table2.length == 0) {
+            return table1;
+        }
+        Effort[] table = Arrays.copyOf(table1, table1.length + table2.length);
+        System.arraycopy(table2, 0, table, table1.length, table2.length);
+        // Stable, so earlier entries win ties
+        Arrays.sort(table, BEST_FIRST);
+        return table.length > maxEntries ? Arrays.copyOf(table, maxEntries)
+            : table;
+    }
+
+    /**
+     * Gets text with the best mean and sustained values for each window.
+     *
+     * @param name The name of the channel, such as "HR".
+     * @param format The format for a value, such as "%.0f".
+     * @return
+     */
+    public String getInfo(String name, String format) {
+        StringBuilder sb = new StringBuilder();
+        for(int w = 0; w < windows.length; w++) {
+            sb.append(String.format("%s Best %d min: ", name,
+                windows[w] / 60000));
+            if(means[w].length == 0) {
+                sb.append("NA").append(LS);
+                continue;
+            }
+            sb.append("Mean=")
+                .append(String.format(format, means[w][0].value))
+                .append(" Sustained=")
+                .append(String.format(format, sustained[w][0].value))
+                .append(LS);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets text with the efforts in each table, best first, with the files
+     * they came from.
+     *
+     * @param name The name of the channel, such as "HR".
+     * @param format The format for a value, such as "%.0f".
+     * @return
+     */
+    public String getRankingInfo(String name, String format) {
+        StringBuilder sb = new StringBuilder();
+        for(int w = 0; w < windows.length; w++) {
+            sb.append(String.format("%s Best %d min Mean", name,
+                windows[w] / 60000)).append(LS);
+            appendTable(sb, means[w], format);
+            sb.append(String.format("%s Best %d min Sustained", name,
+                windows[w] / 60000)).append(LS);
+            appendTable(sb, sustained[w], format);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Appends a line for each effort in the given table.
+     *
+     * @param sb
+     * @param table
+     * @param format The format for a value.
+     */
+    private static void appendTable(StringBuilder sb, Effort[] table,
+        String format) {
+        for(int i = 0; i < table.length; i++) {
+            sb.append(String.format("%4d ", i + 1))
+                .append(String.format(format, table[i].value)).append(" ")
+                .append(new Date(table[i].endTime)).append(" ")
+                .append(table[i].source == null ? "" : table[i].source)
+                .append(LS);
+        }
+    }
+
+    /**
+     * @return The window lengths in ms.
+     */
+    public long[] getWindows() {
+        return windows.clone();
+    }
+
+    /**
+     * Gets the mean efforts for the given window, best first.
+     *
+     * @param window The index of the window.
+     * @return
+     */
+    public Effort[] getMeans(int window) {
+        return means[window].clone();
+    }
+
+    /**
+     * Gets the sustained efforts for the given window, best first.
+     *
+     * @param window The index of the window.
+     * @return
+     */
+    public Effort[] getSustained(int window) {
+        return sustained[window].clone();
+    }
+
+}
@@ -0,0 +1,493 @@
+package net.kenevans.stlviewer.model;
+
+import java.io.Serializable;
+
+import net.kenevans.stlviewer.utils.ArrayKernels;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * ChannelStats accumulates the statistics for one channel of values, such as
+ * HR, speed, or elevation, in a single pass with no allocation. It gets the
+ * min, max, simple mean, time-weighted mean, a second mean that omits values
+ * below a moving threshold, and the gain and loss. An instance can be reused
+ * for the next channel.<br>
+ * <br>
+ * A NaN value is a segment break. The time-weighted mean integrates each
+ * segment with the trapezoidal rule, so each value is weighted by half the
+ * time to the values on either side in the same segment. The time between
+ * segments does not count. Values below omitBelow are left out along with
+ * their weight. If no time is covered, as when each segment has one point,
+ * the simple mean is used instead.<br>
+ * <br>
+ * The values can be given all at once with compute or one at a time or one
+ * array at a time with add, followed by finish. When there is no
+ * SegmentListener or QuantileSketch, compute uses the loop from
+ * ArrayKernels, which may be vectorized. A SegmentListener gets the
+ * statistics for each segment from the same pass.<br>
+ * <br>
+ * Finished instances can be merged, so the statistics for many files can be
+ * found separately, in any order or in parallel, and combined. Merging is
+ * associative, and the result is the same as adding the values of each file
+ * as separate segments, apart from rounding. Instances are Serializable, so
+ * partial results can be saved and merged with later ones. The
+ * SegmentListener and QuantileSketch are not serialized.
+ *
+ * @author Kenneth Evans, Jr.
+ */
+public class ChannelStats implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * SegmentListener is notified with the statistics for each segment.
+     */
+    public interface SegmentListener
+    {
+        /**
+         * Called at the end of each segment that has values.
+         *
+         * @param segment The index of the segment, counting all segments.
+         * @param stats The statistics for the segment. They are only valid
+         *            during the call.
+         */
+        void segmentDone(int segment, ChannelStats stats);
+    }
+
+    private double omitBelow = -Double.MIN_VALUE;
+    private double movingOmitBelow = Double.NaN;
+    /** Statistics for the current segment, used with a SegmentListener. */
+    private transient ChannelStats segmentStats;
+    private transient SegmentListener listener;
+    /** A QuantileSketch to receive the values that are used or null. */
+    private transient QuantileSketch sketch;
+
+    // Totals
+    private int nValues;
+    private int nUsed;
+    private int nSegments;
+    private double min = Double.MAX_VALUE;
+    private double max = -Double.MAX_VALUE;
+    private double sum;
+    private double weightedSum;
+    private double totalWeight;
+    private int nMoving;
+    private double movingSum;
+    private double movingWeightedSum;
+    private double movingTotalWeight;
+    private int nDiffs;
+    private double gain;
+    private double loss;
+
+    // The current segment
+    private int segment;
+    private boolean inSegment;
+    private long prevTime;
+    private double prevVal;
+    /** The weight of the previous value from the interval before it. */
+    private double prevWeight;
+
+    /**
+     * Resets to start a new channel, keeping the thresholds and the
+     * SegmentListener.
+     */
+    public void reset() {
+        nValues = nUsed = nSegments = nMoving = nDiffs = 0;
+        min = Double.MAX_VALUE;
+        max = -Double.MAX_VALUE;
+        sum = weightedSum = totalWeight = 0;
+        movingSum = movingWeightedSum = movingTotalWeight = 0;
+        gain = loss = 0;
+        segment = 0;
+        inSegment = false;
+        if(segmentStats != null) {
+            segmentStats.reset();
+        }
+    }
+
+    /**
+     * Resets to start a new channel with the given thresholds.
+     *
+     * @param omitBelow Values below this are omitted. Use -Double.MIN_VALUE to
+     *            omit only negative values.
+     * @param movingOmitBelow Values below this are omitted for the moving
+     *            mean. Use NaN if it is not needed.
+     */
+    public void reset(double omitBelow, double movingOmitBelow) {
+        this.omitBelow = omitBelow;
+        this.movingOmitBelow = movingOmitBelow;
+        if(segmentStats != null) {
+            segmentStats.reset(omitBelow, movingOmitBelow);
+        }
+        reset();
+    }
+
+    /**
+     * Sets the SegmentListener to be notified of the statistics for each
+     * segment.
+     *
+     * @param listener The SegmentListener or null for none.
+     */
+    public void setSegmentListener(SegmentListener listener) {
+        this.listener = listener;
+        if(listener != null && segmentStats == null) {
+            segmentStats = new ChannelStats();
+            segmentStats.reset(omitBelow, movingOmitBelow);
+        } else if(listener == null) {
+            segmentStats = null;
+        }
+    }
+
+    /**
+     * Sets a QuantileSketch to receive the values that are not NaN or
+     * omitted, so the quantiles come from the same pass.
+     *
+     * @param sketch The QuantileSketch or null for none.
+     */
+    public void setSketch(QuantileSketch sketch) {
+        this.sketch = sketch;
+    }
+
+    /**
+     * Computes the statistics for the given values.
+     *
+     * @param vals
+     * @param timeVals The times in ms, which must have the same length.
+     * @param omitBelow Values below this are omitted. Use -Double.MIN_VALUE to
+     *            omit only negative values.
+     * @param movingOmitBelow Values below this are omitted for the moving
+     *            mean. Use NaN if it is not needed.
+     * @return False if the lengths do not match, in which case nothing is
+     *         valid.
+     */
+    public boolean compute(double[] vals, long[] timeVals, double omitBelow,
+        double movingOmitBelow) {
+        reset(omitBelow, movingOmitBelow);
+        if(vals.length != timeVals.length) {
+            return false;
+        }
+        int len = vals.length;
+        if(listener == null && sketch == null) {
+            // Nothing is needed per value, so use the array kernel
+            double[] results = new double[ArrayKernels.N_RESULTS];
+            ArrayKernels.getInstance().channelStats(vals, timeVals,
+                omitBelow, movingOmitBelow, results);
+            setFromKernel(results);
+            segment = (int)results[ArrayKernels.N_NAN]
+                + (len > 0 && !Double.isNaN(vals[len - 1]) ? 1 : 0);
+            return true;
+        }
+        for(int i = 0; i < len; i++) {
+            add(timeVals[i], vals[i]);
+        }
+        finish();
+        return true;
+    }
+
+    /**
+     * Sets the totals from the results of ArrayKernels.channelStats.
+     *
+     * @param results
+     */
+    private void setFromKernel(double[] results) {
+        nValues = (int)results[ArrayKernels.N_VALUES];
+        nSegments = (int)results[ArrayKernels.N_SEGMENTS];
+        nUsed = (int)results[ArrayKernels.N_USED];
+        min = results[ArrayKernels.MIN];
+        max = results[ArrayKernels.MAX];
+        sum = results[ArrayKernels.SUM];
+        weightedSum = results[ArrayKernels.WEIGHTED_SUM];
+        totalWeight = results[ArrayKernels.TOTAL_WEIGHT];
+        nMoving = (int)results[ArrayKernels.N_MOVING];
+        movingSum = results[ArrayKernels.MOVING_SUM];
+        movingWeightedSum = results[ArrayKernels.MOVING_WEIGHTED_SUM];
+        movingTotalWeight = results[ArrayKernels.MOVING_TOTAL_WEIGHT];
+        nDiffs = (int)results[ArrayKernels.N_DIFFS];
+        gain = results[ArrayKernels.GAIN];
+        loss = results[ArrayKernels.LOSS];
+    }
+
+    /**
+     * Adds a value. NaN ends the current segment.
+     *
+     * @param time The time in ms, which must not be before the last one.
+     * @param val
+     */
+    public void add(long time, double val) {
+        if(Double.isNaN(val)) {
+            endSegment();
+            return;
+        }
+        nValues++;
+        if(inSegment) {
+            double diff = val - prevVal;
+            nDiffs++;
+            if(diff > 0) {
+                gain += diff;
+            } else if(diff < 0) {
+                loss += -diff;
+            }
+            // The previous value is now complete
+            double halfInterval = .5 * (time - prevTime);
+            addWeighted(prevVal, prevWeight + halfInterval);
+            prevWeight = halfInterval;
+        } else {
+            inSegment = true;
+            nSegments++;
+            prevWeight = 0;
+        }
+        prevTime = time;
+        prevVal = val;
+        if(segmentStats != null) {
+            segmentStats.add(time, val);
+        }
+    }
+
+    /**
+     * Adds the given values and ends the segment they are in, so the next
+     * values start a new one.
+     *
+     * @param vals
+     * @param timeVals The times in ms, which must have the same length.
+     * @return False if the lengths do not match, in which case nothing is
+     *         added.
+     */
+    public boolean add(double[] vals, long[] timeVals) {
+        if(vals.length != timeVals.length) {
+            return false;
+        }
+        int len = vals.length;
+        for(int i = 0; i < len; i++) {
+            add(timeVals[i], vals[i]);
+        }
+        finish();
+        return true;
+    }
+
+    /**
+     * Merges the statistics from the given ChannelStats into these, as if its
+     * values had been added as separate segments. Both should be finished.
+     * The thresholds of this one are kept.
+     *
+     * @param other
+     * @return This ChannelStats.
+     */
+    public ChannelStats merge(ChannelStats other) {
+        nValues += other.nValues;
+        nSegments += other.nSegments;
+        segment += other.segment;
+        if(other.nUsed > 0) {
+            nUsed += other.nUsed;
+            if(other.min < min) {
+                min = other.min;
+            }
+            if(other.max > max) {
+                max = other.max;
+            }
+            sum += other.sum;
+            weightedSum += other.weightedSum;
+            totalWeight += other.totalWeight;
+        }
+        nMoving += other.nMoving;
+        movingSum += other.movingSum;
+        movingWeightedSum += other.movingWeightedSum;
+        movingTotalWeight += other.movingTotalWeight;
+        nDiffs += other.nDiffs;
+        gain += other.gain;
+        loss += other.loss;
+        return this;
+    }
+
+    /**
+     * Ends the current segment, if any. The next value starts a new one.
+     */
+    public void endSegment() {
+        if(inSegment) {
+            addWeighted(prevVal, prevWeight);
+            inSegment = false;
+            if(segmentStats != null) {
+                segmentStats.endSegment();
+                listener.segmentDone(segment, segmentStats);
+                segmentStats.reset();
+            }
+        }
+        segment++;
+    }
+
+    /**
+     * Ends the last segment. Call this after the last value has been added.
+     * The statistics can then be used.
+     */
+    public void finish() {
+        if(inSegment) {
+            endSegment();
+        }
+    }
+
+    /**
+     * Adds a value whose weight is known.
+     *
+     * @param val
+     * @param weight
+     */
+    private void addWeighted(double val, double weight) {
+        if(val >= omitBelow) {
+            nUsed++;
+            sum += val;
+            totalWeight += weight;
+            weightedSum += val * weight;
+            if(val > max) {
+                max = val;
+            }
+            if(val < min) {
+                min = val;
+            }
+            if(sketch != null) {
+                sketch.add(val);
+            }
+        }
+        if(val >= movingOmitBelow) {
+            nMoving++;
+            movingSum += val;
+            movingTotalWeight += weight;
+            movingWeightedSum += val * weight;
+        }
+    }
+
+    /**
+     * @return The number of values that were not NaN.
+     */
+    public int getnValues() {
+        return nValues;
+    }
+
+    /**
+     * @return The number of values that were not NaN or omitted.
+     */
+    public int getnUsed() {
+        return nUsed;
+    }
+
+    /**
+     * @return The number of segments with values.
+     */
+    public int getnSegments() {
+        return nSegments;
+    }
+
+    /**
+     * @return Whether there were values to get the min, max, and mean from.
+     */
+    public boolean isValid() {
+        return nUsed > 0;
+    }
+
+    /**
+     * @return Whether the mean is time weighted rather than simple. A single
+     *         value is its own time average.
+     */
+    public boolean isTimeAverage() {
+        return totalWeight > 0 || nUsed == 1;
+    }
+
+    /**
+     * @return The minimum or NaN if there are no values.
+     */
+    public double getMin() {
+        return nUsed > 0 ? min : Double.NaN;
+    }
+
+    /**
+     * @return The maximum or NaN if there are no values.
+     */
+    public double getMax() {
+        return nUsed > 0 ? max : Double.NaN;
+    }
+
+    /**
+     * @return The mean, which is time weighted if isTimeAverage, or NaN if
+     *         there are no values.
+     */
+    public double getMean() {
+        if(totalWeight > 0) {
+            return weightedSum / totalWeight;
+        }
+        return getSimpleMean();
+    }
+
+    /**
+     * @return The simple mean of the values that were not NaN or omitted, or
+     *         NaN if there were none.
+     */
+    public double getSimpleMean() {
+        return nUsed > 0 ? sum / nUsed : Double.NaN;
+    }
+
+    /**
+     * @return The time covered by the values that were not omitted, in ms.
+     */
+    public double getDuration() {
+        return totalWeight;
+    }
+
+    /**
+     * @return Whether there were values at or above the moving threshold.
+     */
+    public boolean isMovingValid() {
+        return nMoving > 0;
+    }
+
+    /**
+     * @return Whether the moving mean is time weighted rather than simple.
+     */
+    public boolean isMovingTimeAverage() {
+        return movingTotalWeight > 0 || nMoving == 1;
+    }
+
+    /**
+     * @return The mean of the values at or above the moving threshold or NaN
+     *         if there are none.
+     */
+    public double getMovingMean() {
+        if(movingTotalWeight > 0) {
+            return movingWeightedSum / movingTotalWeight;
+        }
+        return nMoving > 0 ? movingSum / nMoving : Double.NaN;
+    }
+
+    /**
+     * @return The time covered by the values at or above the moving
+     *         threshold, in ms.
+     */
+    public double getMovingDuration() {
+        return movingTotalWeight;
+    }
+
+    /**
+     * @return Whether there were consecutive values in a segment for the gain
+     *         and loss.
+     */
+    public boolean isGainLossValid() {
+        return nDiffs > 0;
+    }
+
+    /**
+     * @return The sum of the increases between consecutive values in the
+     *         same segment.
+     */
+    public double getGain() {
+        return gain;
+    }
+
+    /**
+     * @return The sum of the decreases between consecutive values in the
+     *         same segment.
+     */
+    public double getLoss() {
+        return loss;
+    }
+
+}
@@ -0,0 +1,235 @@
+package net.kenevans.stlviewer.model;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * GpxSource handles the names used for GPX files, which may be plain files
+ * (x.gpx), gzip-compressed files (x.gpx.gz), or entries in a zip file
+ * (bundle.zip!/x.gpx or bundle.zip!/x.gpx.gz). The compressed ones are read
+ * by streaming from the decompressor, without a temporary file.
+ *
+ * @author Kenneth Evans, Jr.
+ */
+public class GpxSource
+{
+    /** Separates the zip file and the entry name. */
+    public static final String ZIP_SEPARATOR = "!/";
+    /** Buffer size for reading. */
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * Gets whether the given name is that of a GPX file or a gzip-compressed
+     * GPX file.
+     *
+     * @param name
+     * @return
+     */
+    public static boolean isGpxName(String name) {
+        String lower = name.toLowerCase();
+        return lower.endsWith(".gpx") || lower.endsWith(".gpx.gz");
+    }
+
+    /**
+     * Gets whether the given name is that of a zip file.
+     *
+     * @param name
+     * @return
+     */
+    public static boolean isZipName(String name) {
+        return name.toLowerCase().endsWith(".zip");
+    }
+
+    /**
+     * Gets whether the given file name refers to compressed data.
+     *
+     * @param fileName
+     * @return
+     */
+    public static boolean isCompressed(String fileName) {
+        return fileName.toLowerCase().endsWith(".gz")
+            || getEntryName(fileName) != null;
+    }
+
+    /**
+     * Gets the file that contains the data for the given file name. This is
+     * the zip file for a zip entry and the file itself otherwise. Its size and
+     * last-modified time apply to the data.
+     *
+     * @param fileName
+     * @return
+     */
+    public static File getFile(String fileName) {
+        int index = separatorIndex(fileName);
+        return new File(index < 0 ? fileName : fileName.substring(0, index));
+    }
+
+    /**
+     * Gets the name of the zip entry for the given file name.
+     *
+     * @param fileName
+     * @return The entry name or null if it is not a zip entry.
+     */
+    public static String getEntryName(String fileName) {
+        int index = separatorIndex(fileName);
+        if(index < 0) {
+            return null;
+        }
+        // Zip entry names always use /
+        return fileName.substring(index + 2).replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Gets the given file name without a zip file or a .gz extension, as it
+     * would be for a plain GPX file.
+     *
+     * @param fileName
+     * @return
+     */
+    public static String getGpxName(String fileName) {
+        String name = getEntryName(fileName);
+        if(name == null) {
+            name = fileName;
+        }
+        if(name.toLowerCase().endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        return name;
+    }
+
+    /**
+     * Gets whether the data for the given file name exists. For a zip entry
+     * only the zip file is checked.
+     *
+     * @param fileName
+     * @return
+     */
+    public static boolean exists(String fileName) {
+        return getFile(fileName).exists();
+    }
+
+    /**
+     * Gets the file names for the GPX entries in the given zip file, in the
+     * order they are in the zip file.
+     *
+     * @param zipFile
+     * @return
+     * @throws IOException
+     */
+    public static List<String> listEntries(File zipFile) throws IOException {
+        List<String> names = new ArrayList<String>();
+        ZipFile zip = new ZipFile(zipFile);
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            ZipEntry entry;
+            while(entries.hasMoreElements()) {
+                entry = entries.nextElement();
+                if(!entry.isDirectory() && isGpxName(entry.getName())) {
+                    names.add(zipFile.getPath() + ZIP_SEPARATOR
+                        + entry.getName());
+                }
+            }
+        } finally {
+            zip.close();
+        }
+        return names;
+    }
+
+    /**
+     * Opens a buffered stream of the uncompressed data for the given file
+     * name. The caller must close it.
+     *
+     * @param fileName
+     * @return
+     * @throws IOException
+     */
+    public static InputStream open(String fileName) throws IOException {
+        String entryName = getEntryName(fileName);
+        InputStream in;
+        if(entryName == null) {
+            in = new FileInputStream(fileName);
+        } else {
+            final ZipFile zip = new ZipFile(getFile(fileName));
+            ZipEntry entry = zip.getEntry(entryName);
+            if(entry == null) {
+                zip.close();
+                throw new IOException("Not found: " + fileName);
+            }
+            // Close the zip file with the stream
+            in = new FilterInputStream(zip.getInputStream(entry)) {
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        zip.close();
+                    }
+                }
+            };
+        }
+        try {
+            if(fileName.toLowerCase().endsWith(".gz")) {
+                return new BufferedInputStream(
+                    new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+            }
+            return new BufferedInputStream(in, BUFFER_SIZE);
+        } catch(IOException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Reads all of the uncompressed data for the given file name.
+     *
+     * @param fileName
+     * @return
+     * @throws IOException
+     */
+    public static byte[] readAllBytes(String fileName) throws IOException {
+        InputStream in = open(fileName);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(
+                BUFFER_SIZE);
+            byte[] buf = new byte[BUFFER_SIZE];
+            int n;
+            while((n = in.read(buf)) != -1) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Finds the separator between the zip file and the entry name. A
+     * separator converted by File on Windows is also accepted.
+     *
+     * @param fileName
+     * @return The index or -1 if there is none.
+     */
+    private static int separatorIndex(String fileName) {
+        int index = fileName.indexOf(ZIP_SEPARATOR);
+        if(index < 0 && File.separatorChar != '/') {
+            index = fileName.indexOf("!" + File.separatorChar);
+        }
+        return index;
+    }
+
+}
@@ -0,0 +1,268 @@
+package net.kenevans.stlviewer.model;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import net.kenevans.stlviewer.utils.IsoTimeParser;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * GpxStreamExtractor reads the trk, trkseg, and trkpt elements of a GPX file
+ * with StAX and passes the values directly to a TrackAccumulator. It never
+ * builds the JAXB GpxType, so the memory used is independent of the length of
+ * the file.<br>
+ * <br>
+ * The HR is taken from the first TrackPointExtension (v1 or v2) in the track
+ * point extensions and from the bpm element of an OruxMaps track extension.
+ * Other elements are skipped.
+ * 
+ * @author Kenneth Evans, Jr.
+ */
+public class GpxStreamExtractor
+{
+    /** XMLInputFactory is not guaranteed to be thread safe. */
+    private static final ThreadLocal<XMLInputFactory> inputFactory = new ThreadLocal<XMLInputFactory>() {
+        protected XMLInputFactory initialValue() {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            factory.setProperty(
+                XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+            return factory;
+        }
+    };
+
+    private final TrackAccumulator acc;
+
+    /**
+     * GpxStreamExtractor constructor.
+     * 
+     * @param acc The TrackAccumulator to receive the values.
+     */
+    public GpxStreamExtractor(TrackAccumulator acc) {
+        this.acc = acc;
+    }
+
+    /**
+     * Extracts the tracks from the given file.
+     * 
+     * @param file
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    public void extract(File file) throws IOException, XMLStreamException {
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file), 65536);
+            extract(in);
+        } finally {
+            if(in != null) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Extracts the tracks from the given stream. The stream is not closed.
+     * 
+     * @param in
+     * @throws XMLStreamException
+     */
+    public void extract(InputStream in) throws XMLStreamException {
+        XMLStreamReader reader = inputFactory.get()
+            .createXMLStreamReader(in);
+        try {
+            extract(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Extracts the tracks from the given reader.
+     * 
+     * @param reader
+     * @throws XMLStreamException
+     */
+    protected void extract(XMLStreamReader reader) throws XMLStreamException {
+        // Depths of the elements we are in or -1 if not in them
+        int depth = 0;
+        int trkDepth = -1;
+        int trkExtDepth = -1;
+        int trkptDepth = -1;
+        int ptExtDepth = -1;
+        int tpeDepth = -1;
+
+        // Values for the current track point
+        boolean haveTime = false;
+        long time = 0;
+        double lat = 0, lon = 0, ele = Double.NaN, hr = Double.NaN;
+
+        String name;
+        while(reader.hasNext()) {
+            int event = reader.next();
+            if(event == XMLStreamConstants.END_ELEMENT) {
+                if(depth == trkptDepth) {
+                    if(!haveTime) {
+                        throw new XMLStreamException(
+                            "Track point without a time", reader.getLocation());
+                    }
+                    acc.addTrackPoint(time, lat, lon, ele, hr);
+                    trkptDepth = -1;
+                } else if(depth == tpeDepth) {
+                    tpeDepth = -1;
+                } else if(depth == ptExtDepth) {
+                    ptExtDepth = -1;
+                } else if(depth == trkExtDepth) {
+                    trkExtDepth = -1;
+                } else if(depth == trkDepth) {
+                    trkDepth = -1;
+                }
+                depth--;
+                continue;
+            }
+            if(event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            depth++;
+            name = reader.getLocalName();
+            if(trkptDepth != -1) {
+                // In a track point
+                if(tpeDepth != -1) {
+                    if(depth == tpeDepth + 1
+                        && TrackPointExtensionDecoder
+                            .getField(name) == TrackPointExtensionDecoder.HR) {
+                        hr = parseDouble(reader);
+                        depth--;
+                    }
+                } else if(ptExtDepth != -1) {
+                    // Only use the first TrackPointExtension with a HR
+                    if(Double.isNaN(hr) && TrackPointExtensionDecoder
+                        .isTrackPointExtension(name)) {
+                        tpeDepth = depth;
+                    }
+                } else if(depth == trkptDepth + 1) {
+                    if(name.equals("time")) {
+                        time = parseTime(reader);
+                        haveTime = true;
+                        depth--;
+                    } else if(name.equals("ele")) {
+                        ele = parseDouble(reader);
+                        depth--;
+                    } else if(name.equals("extensions")) {
+                        ptExtDepth = depth;
+                    }
+                }
+            } else if(trkExtDepth != -1) {
+                if(name.equals("bpm")) {
+                    decodeBpm(reader);
+                    depth--;
+                }
+            } else if(trkDepth != -1) {
+                if(name.equals("trkpt")) {
+                    trkptDepth = depth;
+                    haveTime = false;
+                    ele = Double.NaN;
+                    hr = Double.NaN;
+                    lat = Double.parseDouble(
+                        reader.getAttributeValue(null, "lat").trim());
+                    lon = Double.parseDouble(
+                        reader.getAttributeValue(null, "lon").trim());
+                } else if(name.equals("trkseg") && depth == trkDepth + 1) {
+                    acc.startSegment();
+                } else if(name.equals("extensions")
+                    && depth == trkDepth + 1) {
+                    trkExtDepth = depth;
+                }
+            } else if(name.equals("trk")) {
+                trkDepth = depth;
+                acc.startTrack();
+            }
+        }
+    }
+
+    /**
+     * Decodes the text of the current bpm element as it is read, without
+     * making a String of it, as for getElementText.
+     * 
+     * @param reader
+     * @throws XMLStreamException
+     */
+    private void decodeBpm(XMLStreamReader reader) throws XMLStreamException {
+        OruxMapsBpmDecoder decoder = acc.startOruxMapsBpm();
+        int event = reader.next();
+        while(event != XMLStreamConstants.END_ELEMENT) {
+            switch(event) {
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                decoder.decode(reader.getTextCharacters(),
+                    reader.getTextStart(), reader.getTextLength());
+                break;
+            case XMLStreamConstants.ENTITY_REFERENCE:
+                decoder.decode(reader.getText());
+                break;
+            case XMLStreamConstants.COMMENT:
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                break;
+            default:
+                throw new XMLStreamException(
+                    "Unexpected content in bpm element",
+                    reader.getLocation());
+            }
+            event = reader.next();
+        }
+        acc.endOruxMapsBpm(decoder);
+    }
+
+    /**
+     * Reads the text of the current element as a double.
+     * 
+     * @param reader
+     * @return The value or NaN if it is empty.
+     * @throws XMLStreamException
+     */
+    private double parseDouble(XMLStreamReader reader)
+        throws XMLStreamException {
+        String text = reader.getElementText().trim();
+        if(text.length() == 0) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(text);
+        } catch(NumberFormatException ex) {
+            throw new XMLStreamException("Invalid number: " + text,
+                reader.getLocation(), ex);
+        }
+    }
+
+    /**
+     * Reads the text of the current element as an xsd:dateTime.
+     * 
+     * @param reader
+     * @return The time in ms.
+     * @throws XMLStreamException
+     */
+    private long parseTime(XMLStreamReader reader) throws XMLStreamException {
+        String text = reader.getElementText();
+        long time = IsoTimeParser.parse(text);
+        if(time == IsoTimeParser.INVALID) {
+            throw new XMLStreamException("Invalid time: " + text.trim(),
+                reader.getLocation());
+        }
+        return time;
+    }
+
+}
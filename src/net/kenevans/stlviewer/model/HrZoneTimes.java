@@ -0,0 +1,247 @@
+package net.kenevans.stlviewer.model;
+
+import java.io.Serializable;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * HrZoneTimes finds how long was spent at each HR in one pass over the HR
+ * values. It keeps the time at each whole HR from 0 to MAX_HR, so the time in
+ * each zone can be found for any zone values from the sums without going over
+ * the values again. Zone values are whole numbers, so a HR is in the same zone
+ * as its whole part.<br>
+ * <br>
+ * The time is weighted as in ChannelStats: each value gets half the time to
+ * the values on either side in the same segment, and a NaN value is a segment
+ * break. The bin for a value is found by clamping its whole part to the range
+ * of the bins, which needs no branches. HRs below 0 are counted at 0 and those
+ * above MAX_HR at MAX_HR.<br>
+ * <br>
+ * Instances can be merged and are Serializable, so the times for many files
+ * can be found in parallel and combined.
+ *
+ * @author Kenneth Evans, Jr.
+ */
+public class HrZoneTimes implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+    /** The highest HR that has its own bin. */
+    public static final int MAX_HR = 255;
+
+    /** The time at each whole HR in ms. */
+    private final double[] binTimes = new double[MAX_HR + 1];
+    private double totalTime;
+
+    // The current segment
+    private boolean inSegment;
+    private long prevTime;
+    private int prevBin;
+    /** The weight of the previous value from the interval before it. */
+    private double prevWeight;
+
+    /**
+     * Gets the times for the given values.
+     *
+     * @param hrVals
+     * @param hrTimeVals The times in ms, which must have the same length.
+     * @return The times or null if the lengths do not match.
+     */
+    public static HrZoneTimes compute(double[] hrVals, long[] hrTimeVals) {
+        return compute(hrVals, hrTimeVals, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Gets the times for the given values from startTime to endTime. The
+     * values outside the range are not used, so the range starts and ends a
+     * segment.
+     *
+     * @param hrVals
+     * @param hrTimeVals The times in ms, which must have the same length and
+     *            be in order.
+     * @param startTime
+     * @param endTime
+     * @return The times or null if the lengths do not match.
+     */
+    public static HrZoneTimes compute(double[] hrVals, long[] hrTimeVals,
+        long startTime, long endTime) {
+        if(hrVals.length != hrTimeVals.length) {
+            return null;
+        }
+        HrZoneTimes zoneTimes = new HrZoneTimes();
+        int start = firstIndexAtOrAfter(hrTimeVals, startTime);
+        int len = hrTimeVals.length;
+        for(int i = start; i < len && hrTimeVals[i] <= endTime; i++) {
+            zoneTimes.add(hrTimeVals[i], hrVals[i]);
+        }
+        zoneTimes.finish();
+        return zoneTimes;
+    }
+
+    /**
+     * Gets the index of the first time that is not before the given one.
+     *
+     * @param timeVals The times, which must be in order.
+     * @param time
+     * @return The index or the length if there is none.
+     */
+    private static int firstIndexAtOrAfter(long[] timeVals, long time) {
+        int low = 0;
+        int high = timeVals.length;
+        int mid;
+        while(low < high) {
+            mid = (low + high) >>> 1;
+            if(timeVals[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Adds a value. NaN ends the current segment.
+     *
+     * @param time The time in ms, which must not be before the last one.
+     * @param hr
+     */
+    public void add(long time, double hr) {
+        if(Double.isNaN(hr)) {
+            endSegment();
+            return;
+        }
+        int bin = Math.min(Math.max((int)hr, 0), MAX_HR);
+        if(inSegment) {
+            double halfInterval = .5 * (time - prevTime);
+            binTimes[prevBin] += prevWeight + halfInterval;
+            prevWeight = halfInterval;
+        } else {
+            inSegment = true;
+            prevWeight = 0;
+        }
+        prevTime = time;
+        prevBin = bin;
+    }
+
+    /**
+     * Ends the current segment, if any. The next value starts a new one.
+     */
+    public void endSegment() {
+        if(inSegment) {
+            binTimes[prevBin] += prevWeight;
+            inSegment = false;
+        }
+    }
+
+    /**
+     * Ends the last segment and updates the total. Call this after the last
+     * value has been added.
+     */
+    public void finish() {
+        endSegment();
+        double sum = 0;
+        for(double time : binTimes) {
+            sum += time;
+        }
+        totalTime = sum;
+    }
+
+    /**
+     * Merges the times from the given HrZoneTimes into these. Both should be
+     * finished.
+     *
+     * @param other
+     * @return This HrZoneTimes.
+     */
+    public HrZoneTimes merge(HrZoneTimes other) {
+        for(int i = 0; i <= MAX_HR; i++) {
+            binTimes[i] += other.binTimes[i];
+        }
+        totalTime += other.totalTime;
+        return this;
+    }
+
+    /**
+     * Gets the time in each zone for the given zone values. Zone i is from
+     * zoneVals[i - 1] up to zoneVals[i]. Zone 0 is below zoneVals[0], and the
+     * last one is at or above the last zone value.
+     *
+     * @param zoneVals The zone values in increasing order.
+     * @return The times in ms, one more than the number of zone values.
+     */
+    public double[] getZoneTimes(int[] zoneVals) {
+        int nZones = zoneVals.length + 1;
+        double[] zoneTimes = new double[nZones];
+        int bin = 0;
+        int end;
+        double sum;
+        for(int zone = 0; zone < nZones; zone++) {
+            end = zone < zoneVals.length ? Math.min(
+                Math.max(zoneVals[zone], bin), MAX_HR + 1) : MAX_HR + 1;
+            sum = 0;
+            for(; bin < end; bin++) {
+                sum += binTimes[bin];
+            }
+            zoneTimes[zone] = sum;
+        }
+        return zoneTimes;
+    }
+
+    /**
+     * Gets a line of text with the time in each zone, as from getZoneTimes.
+     * The zones between the zone values are numbered from 1.
+     *
+     * @param zoneVals The zone values in increasing order.
+     * @return
+     */
+    public String getZoneTimesInfo(int[] zoneVals) {
+        double[] zoneTimes = getZoneTimes(zoneVals);
+        int nZones = zoneTimes.length;
+        StringBuilder sb = new StringBuilder();
+        for(int zone = 0; zone < nZones; zone++) {
+            if(zone == 0) {
+                sb.append("Below ").append(zoneVals.length > 0 ? zoneVals[0]
+                    : MAX_HR + 1);
+            } else if(zone == nZones - 1) {
+                sb.append("  Above ").append(zoneVals[zone - 1]);
+            } else {
+                sb.append("  Z").append(zone);
+            }
+            sb.append(" ").append(formatTime(zoneTimes[zone]));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Formats a time as h:mm:ss.
+     *
+     * @param time The time in ms.
+     * @return
+     */
+    private static String formatTime(double time) {
+        long sec = Math.round(time / 1000.);
+        return String.format("%d:%02d:%02d", sec / 3600, (sec / 60) % 60,
+            sec % 60);
+    }
+
+    /**
+     * Gets the time at the given whole HR.
+     *
+     * @param hr
+     * @return The time in ms.
+     */
+    public double getBinTime(int hr) {
+        return binTimes[hr];
+    }
+
+    /**
+     * @return The total time in ms.
+     */
+    public double getTotalTime() {
+        return totalTime;
+    }
+
+}
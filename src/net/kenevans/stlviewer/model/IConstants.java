@@ -84,6 +84,10 @@ public interface IConstants
     public static final String P_HR_ROLLING_AVG_COUNT = "hrRollingAvgCount";
     /*** The default value for the HR rolling average count. */
     public static final int D_HR_ROLLING_AVG_COUNT = 0;
+    /*** The preference name for the HR rolling average units. */
+    public static final String P_HR_ROLLING_AVG_SECONDS = "hrRollingAvgSeconds";
+    /*** The default for whether the HR rolling average is in seconds. */
+    public static final boolean D_HR_ROLLING_AVG_SECONDS = false;
 
     // HR Zones
     /** Index for HR */
@@ -134,6 +138,10 @@ public interface IConstants
     public static final String P_SPEED_ROLLING_AVG_COUNT = "speedRollingAvgCount";
     /*** The default value for the speed rolling average count. */
     public static final int D_SPEED_ROLLING_AVG_COUNT = 5;
+    /*** The preference name for the speed rolling average units. */
+    public static final String P_SPEED_ROLLING_AVG_SECONDS = "speedRollingAvgSeconds";
+    /*** The default for whether the speed rolling average is in seconds. */
+    public static final boolean D_SPEED_ROLLING_AVG_SECONDS = false;
 
     // Elevation
     /** Index for ELE */
@@ -158,6 +166,10 @@ public interface IConstants
     public static final String P_ELE_ROLLING_AVG_COUNT = "elevationRollingAvgCount";
     /*** The default value for the elevation rolling average count. */
     public static final int D_ELE_ROLLING_AVG_COUNT = 5;
+    /*** The preference name for the elevation rolling average units. */
+    public static final String P_ELE_ROLLING_AVG_SECONDS = "elevationRollingAvgSeconds";
+    /*** The default for whether the elevation rolling average is in seconds. */
+    public static final boolean D_ELE_ROLLING_AVG_SECONDS = false;
 
     // Zones
     /*** The preference name for zone 1 value. */
@@ -231,6 +243,13 @@ public interface IConstants
 
     public static final String FILE_PATH = D_DEFAULT_DIR + "/" + FILE_NAME;
 
+    // Track cache
+    /** The directory for the cached tracks. */
+    public static final String CACHE_DIR = System.getProperty("user.home")
+        + "/.stlviewer/cache";
+    /** The extension for the cached tracks. */
+    public static final String CACHE_EXT = ".stlc";
+
     // Database
     public static final String DRIVER_CLASS = "org.sqlite.JDBC";
     public static final String DATABASE_NAME = "STLDatabase.db";
@@ -253,6 +272,19 @@ public interface IConstants
         + "ave_moving_pace_sec text not null," + "max_speed text not null,"
         + "ave_heart_rate text not null," + "elevation_gain text not null,"
         + "elevation_loss text not null," + "max_elevation text not null" + ")";
+    /**
+     * The table of the QuantileSketch for each file and channel. The file is
+     * the GPX name without the directory, zip file, or .gz extension, so the
+     * same track is only stored once.
+     */
+    public static final String SKETCH_TABLE_NAME = "sketch";
+    public static final String CREATE_SKETCH_TABLE_STMT = "CREATE TABLE IF NOT EXISTS "
+        + SKETCH_TABLE_NAME + " (" + "name text not null,"
+        + "channel text not null," + "start_time integer not null,"
+        + "end_time integer not null," + "data blob not null,"
+        + "primary key (name, channel)" + ")";
+    public static final String SKETCH_CHANNEL_HR = "hr";
+    public static final String SKETCH_CHANNEL_SPEED = "speed";
     String[] COLS = {"rowid", "id", "category", "event", "location", "tags",
         "year", "month", "week_of_year", "start", "finish", "distance",
         "duration", "duration_sec", "calories", "ave_speed", "ave_pace",
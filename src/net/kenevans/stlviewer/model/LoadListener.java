@@ -0,0 +1,31 @@
+package net.kenevans.stlviewer.model;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * LoadListener is notified of the progress of a ModelLoader. The methods are
+ * called on the thread that is loading, so they should return quickly and use
+ * SwingUtilities.invokeLater or the like to update a user interface.
+ *
+ * @author Kenneth Evans, Jr.
+ */
+public interface LoadListener
+{
+    /**
+     * Called every so often while the file is being read.
+     *
+     * @param loader
+     */
+    void loadProgress(ModelLoader loader);
+
+    /**
+     * Called once when the load has finished, failed, or been cancelled.
+     *
+     * @param loader
+     */
+    void loadDone(ModelLoader loader);
+
+}
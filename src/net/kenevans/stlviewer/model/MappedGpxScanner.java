@@ -0,0 +1,970 @@
+package net.kenevans.stlviewer.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import net.kenevans.stlviewer.utils.IsoTimeParser;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * MappedGpxScanner reads a GPX file into a ByteBuffer and scans the bytes
+ * for the trk, trkseg, and trkpt elements and the ele, time, and HR values,
+ * passing them to a TrackAccumulator. No Strings are created for the names or
+ * values, and the numbers and times are parsed directly from the buffer. It
+ * follows the same rules as GpxStreamExtractor, so the values are the
+ * same.<br>
+ * <br>
+ * It only handles the plain UTF-8 or ASCII files written by the usual
+ * exporters. If it finds anything else, such as a DOCTYPE, CDATA, an entity
+ * reference in a value it needs, an element inside a value, another encoding,
+ * or a file that is not well formed, extract returns false. The
+ * TrackAccumulator is then incomplete and should be discarded, and the file
+ * should be read with the full parser, which also reports any errors.<br>
+ * <br>
+ * For a file that is still being written, extractAppended scans only up to
+ * the end of the last complete trkpt, or to the end once the gpx end tag has
+ * been written, and returns a Checkpoint with the state there. Scanning
+ * again from the Checkpoint with the same TrackAccumulator passes only the
+ * track points that have been appended since.<br>
+ * <br>
+ * The file is read with FileChannel.read rather than mapped, since a mapping
+ * is only released when the buffer is garbage collected, and on Windows the
+ * file cannot be replaced or deleted until then.
+ *
+ * @author Kenneth Evans, Jr.
+ */
+public class MappedGpxScanner
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte[] TRK = "trk".getBytes();
+    private static final byte[] TRKSEG = "trkseg".getBytes();
+    private static final byte[] TRKPT = "trkpt".getBytes();
+    private static final byte[] EXTENSIONS = "extensions".getBytes();
+    private static final byte[] TIME = "time".getBytes();
+    private static final byte[] ELE = "ele".getBytes();
+    private static final byte[] HR = "hr".getBytes();
+    private static final byte[] BPM = "bpm".getBytes();
+    private static final byte[] LAT = "lat".getBytes();
+    private static final byte[] LON = "lon".getBytes();
+    private static final byte[] TPE = "trackpointextension".getBytes();
+    private static final byte[] ENCODING = "encoding".getBytes();
+    private static final byte[] COMMENT_START = "<!--".getBytes();
+    private static final byte[] COMMENT_END = "-->".getBytes();
+    private static final byte[] PI_END = "?>".getBytes();
+    private static final byte[] XML_DECL = "<?xml".getBytes();
+    private static final byte[] TRKPT_END = "trkpt>".getBytes();
+    private static final byte[] GPX_END = "gpx>".getBytes();
+    /** The number of bytes before a Checkpoint that are saved to check it. */
+    private static final int N_CHECK_BYTES = 32;
+
+    /** Powers of ten that are exact as doubles. */
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5,
+        1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17,
+        1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private final TrackAccumulator acc;
+
+    private ByteBuffer buf;
+    private int limit;
+    /** The start and end of the name of each open element. */
+    private int[] nameStack = new int[64];
+    /** Scratch space for the times. */
+    private final byte[] timeBytes = new byte[64];
+    /** The start of the text found by textEnd. */
+    private int textStart;
+    /** The end of the text found by textEnd. */
+    private int textEnd;
+
+    /**
+     * Thrown internally for anything this class does not handle. It has no
+     * stack trace, since it is expected.
+     */
+    private static class UnsupportedException extends Exception
+    {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedException(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    /**
+     * Checkpoint is the state of the scanner at the end of a complete trkpt.
+     * The offsets in it are from the start of the file, so they are still
+     * valid when the file has been appended to and read again. There are no
+     * extensions open at the end of a trkpt, so only the trk depth is kept.
+     */
+    public static class Checkpoint
+    {
+        /** The offset after the trkpt end tag. */
+        private int offset;
+        private int depth;
+        private int trkDepth = -1;
+        private boolean seenRoot;
+        /** The start and end of the names of the open elements. */
+        private int[] nameStack = new int[0];
+        /** The bytes just before offset, to check they have not changed. */
+        private byte[] checkBytes = new byte[0];
+
+        /**
+         * @return The offset after the last complete trkpt.
+         */
+        public int getOffset() {
+            return offset;
+        }
+    }
+
+    /**
+     * MappedGpxScanner constructor.
+     *
+     * @param acc The TrackAccumulator to receive the values.
+     */
+    public MappedGpxScanner(TrackAccumulator acc) {
+        this.acc = acc;
+    }
+
+    /**
+     * Reads the given file and extracts the tracks.
+     *
+     * @param file
+     * @return If the file was handled. If false, the TrackAccumulator should
+     *         be discarded and the file read with the full parser.
+     * @throws IOException
+     */
+    public boolean extract(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            ByteBuffer buffer = read(raf.getChannel());
+            if(buffer == null) {
+                return false;
+            }
+            return extract(buffer);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads all of the given channel into a heap ByteBuffer. If the file is
+     * changing, the buffer has what could be read, and its limit is the
+     * number of bytes read.
+     * 
+     * @param channel
+     * @return The buffer, positioned at the start, or null if the file is too
+     *         large.
+     * @throws IOException
+     */
+    static ByteBuffer read(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if(size > Integer.MAX_VALUE) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int)size);
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Extracts the tracks from the given buffer, from its position to its
+     * limit. Only absolute gets are used, so the buffer is not changed.
+     *
+     * @param buffer
+     * @return If the contents were handled. If false, the TrackAccumulator
+     *         should be discarded and the contents read with the full parser.
+     */
+    public boolean extract(ByteBuffer buffer) {
+        buf = buffer;
+        limit = buffer.limit();
+        try {
+            scan(buffer.position(), new Checkpoint(), false);
+            return true;
+        } catch(UnsupportedException ex) {
+            return false;
+        } catch(IndexOutOfBoundsException ex) {
+            // Ran off the end
+            return false;
+        } finally {
+            buf = null;
+        }
+    }
+
+    /**
+     * Reads the given file and extracts the track points up to the end of the
+     * last complete trkpt, starting from the given Checkpoint. Anything after
+     * that trkpt, such as a partly written track point, is left for the next
+     * call. If the file ends with the gpx end tag, it is finished and is
+     * scanned to the end.
+     *
+     * @param file
+     * @param from The Checkpoint from the last call with the same
+     *            TrackAccumulator or null to start at the beginning.
+     * @return The new Checkpoint or null if the file was not handled or has
+     *         changed before the given Checkpoint. If null, the
+     *         TrackAccumulator should be discarded.
+     * @throws IOException
+     */
+    public Checkpoint extractAppended(File file, Checkpoint from)
+        throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            buf = read(raf.getChannel());
+            if(buf == null) {
+                return null;
+            }
+            limit = buf.limit();
+            if(from == null) {
+                from = new Checkpoint();
+            } else if(!isUnchanged(from)) {
+                return null;
+            }
+            boolean finished = endsWithGpxEnd(from.offset);
+            int end = finished ? limit : lastTrkptEnd(from.offset);
+            if(end < 0 || end == from.offset) {
+                // Nothing new
+                return from;
+            }
+            limit = end;
+            Checkpoint checkpoint = new Checkpoint();
+            checkpoint.depth = from.depth;
+            checkpoint.trkDepth = from.trkDepth;
+            checkpoint.seenRoot = from.seenRoot;
+            nameStack = new int[Math.max(64, 2 * from.depth)];
+            System.arraycopy(from.nameStack, 0, nameStack, 0,
+                from.nameStack.length);
+            scan(from.offset, checkpoint, true);
+            if(finished && (checkpoint.depth != 0 || !checkpoint.seenRoot)) {
+                return null;
+            }
+            checkpoint.offset = end;
+            checkpoint.nameStack = new int[2 * checkpoint.depth];
+            System.arraycopy(nameStack, 0, checkpoint.nameStack, 0,
+                checkpoint.nameStack.length);
+            checkpoint.checkBytes = new byte[Math.min(end, N_CHECK_BYTES)];
+            for(int i = 0; i < checkpoint.checkBytes.length; i++) {
+                checkpoint.checkBytes[i] = buf
+                    .get(end - checkpoint.checkBytes.length + i);
+            }
+            return checkpoint;
+        } catch(UnsupportedException ex) {
+            return null;
+        } catch(IndexOutOfBoundsException ex) {
+            return null;
+        } finally {
+            buf = null;
+            raf.close();
+        }
+    }
+
+    /**
+     * Checks that the bytes before the given Checkpoint are the same as when
+     * it was made.
+     *
+     * @param checkpoint
+     * @return
+     */
+    private boolean isUnchanged(Checkpoint checkpoint) {
+        if(checkpoint.offset > limit) {
+            return false;
+        }
+        byte[] bytes = checkpoint.checkBytes;
+        int start = checkpoint.offset - bytes.length;
+        for(int i = 0; i < bytes.length; i++) {
+            if(buf.get(start + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the end of the last trkpt end tag at or after the given offset.
+     *
+     * @param from
+     * @return The offset after the end tag or -1 if there is none.
+     */
+    private int lastTrkptEnd(int from) {
+        for(int i = limit - TRKPT_END.length; i >= from; i--) {
+            if(startsWith(i, TRKPT_END) && isEndTagName(i, from)) {
+                return i + TRKPT_END.length;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets whether the data after the given offset ends with the gpx end tag,
+     * apart from trailing white space.
+     *
+     * @param from
+     * @return
+     */
+    private boolean endsWithGpxEnd(int from) {
+        int i = limit;
+        while(i > from && isSpace(buf.get(i - 1))) {
+            i--;
+        }
+        i -= GPX_END.length;
+        return i >= from && startsWith(i, GPX_END) && isEndTagName(i, from);
+    }
+
+    /**
+     * Gets whether the name at i is that of an end tag, with or without a
+     * prefix.
+     *
+     * @param i
+     * @param from Where to stop looking back.
+     * @return
+     */
+    private boolean isEndTagName(int i, int from) {
+        // Skip a prefix
+        int j = i - 1;
+        if(j > from && buf.get(j) == ':') {
+            j--;
+            while(j > from && buf.get(j) != '/' && buf.get(j) != '<'
+                && !isSpace(buf.get(j))) {
+                j--;
+            }
+        }
+        return j > from && buf.get(j) == '/' && buf.get(j - 1) == '<';
+    }
+
+    /**
+     * Scans the elements starting at the given position.
+     *
+     * @param pos
+     * @param state The state at pos. It is updated with the state at the
+     *            end.
+     * @param incremental Whether the scan ends after a trkpt rather than at
+     *            the end of the document.
+     * @throws UnsupportedException
+     */
+    private void scan(int pos, Checkpoint state, boolean incremental)
+        throws UnsupportedException {
+        if(pos == 0) {
+            // Byte order marks
+            if(limit - pos >= 3 && (buf.get(pos) & 0xff) == 0xef
+                && (buf.get(pos + 1) & 0xff) == 0xbb
+                && (buf.get(pos + 2) & 0xff) == 0xbf) {
+                pos += 3;
+            } else if(limit - pos >= 2 && (buf.get(pos) == 0
+                || (buf.get(pos) & 0xff) == 0xfe
+                || (buf.get(pos) & 0xff) == 0xff)) {
+                throw new UnsupportedException("Not UTF-8");
+            }
+        }
+
+        // Depths of the elements we are in or -1 if not in them, as in
+        // GpxStreamExtractor
+        int depth = state.depth;
+        int trkDepth = state.trkDepth;
+        int trkExtDepth = -1;
+        int trkptDepth = -1;
+        int ptExtDepth = -1;
+        int tpeDepth = -1;
+        boolean seenRoot = state.seenRoot;
+
+        // Values for the current track point
+        boolean haveTime = false;
+        long time = 0;
+        double lat = 0, lon = 0, ele = Double.NaN, hr = Double.NaN;
+
+        int nameStart, nameEnd, localStart;
+        boolean selfClosing;
+        while(true) {
+            pos = nextMarkup(pos);
+            if(pos < 0) {
+                break;
+            }
+            byte next = buf.get(pos + 1);
+            if(next == '?') {
+                if(!seenRoot && startsWith(pos, XML_DECL)) {
+                    checkEncoding(pos, skipPast(pos, PI_END));
+                }
+                pos = skipPast(pos, PI_END);
+                continue;
+            }
+            if(next == '!') {
+                if(startsWith(pos, COMMENT_START)) {
+                    pos = skipPast(pos, COMMENT_END);
+                    continue;
+                }
+                // CDATA or DOCTYPE
+                throw new UnsupportedException("Markup declaration");
+            }
+            if(next == '/') {
+                // End tag
+                if(depth == 0) {
+                    throw new UnsupportedException("Unexpected end tag");
+                }
+                nameStart = pos + 2;
+                nameEnd = nameEnd(nameStart);
+                if(!sameName(nameStart, nameEnd, nameStack[2 * depth - 2],
+                    nameStack[2 * depth - 1])) {
+                    throw new UnsupportedException("Mismatched end tag");
+                }
+                pos = skipSpace(nameEnd);
+                if(buf.get(pos) != '>') {
+                    throw new UnsupportedException("Bad end tag");
+                }
+                pos++;
+                if(depth == trkptDepth) {
+                    if(!haveTime) {
+                        throw new UnsupportedException(
+                            "Track point without a time");
+                    }
+                    if(acc.getLoader() != null) {
+                        acc.getLoader().setBytesRead(pos);
+                    }
+                    acc.addTrackPoint(time, lat, lon, ele, hr);
+                    trkptDepth = -1;
+                } else if(depth == tpeDepth) {
+                    tpeDepth = -1;
+                } else if(depth == ptExtDepth) {
+                    ptExtDepth = -1;
+                } else if(depth == trkExtDepth) {
+                    trkExtDepth = -1;
+                } else if(depth == trkDepth) {
+                    trkDepth = -1;
+                }
+                depth--;
+                continue;
+            }
+
+            // Start tag
+            if(seenRoot && depth == 0) {
+                throw new UnsupportedException("More than one root element");
+            }
+            seenRoot = true;
+            nameStart = pos + 1;
+            nameEnd = nameEnd(nameStart);
+            if(nameEnd == nameStart) {
+                throw new UnsupportedException("Bad start tag");
+            }
+            localStart = localStart(nameStart, nameEnd);
+            boolean isTrkpt = trkptDepth == -1 && trkExtDepth == -1
+                && trkDepth != -1 && equals(localStart, nameEnd, TRKPT);
+            // Attributes
+            pos = nameEnd;
+            int latStart = -1, latEnd = -1, lonStart = -1, lonEnd = -1;
+            while(true) {
+                pos = skipSpace(pos);
+                byte b = buf.get(pos);
+                if(b == '>') {
+                    selfClosing = false;
+                    pos++;
+                    break;
+                }
+                if(b == '/') {
+                    if(buf.get(pos + 1) != '>') {
+                        throw new UnsupportedException("Bad start tag");
+                    }
+                    selfClosing = true;
+                    pos += 2;
+                    break;
+                }
+                int attrStart = pos;
+                int attrEnd = nameEnd(attrStart);
+                if(attrEnd == attrStart) {
+                    throw new UnsupportedException("Bad attribute");
+                }
+                pos = skipSpace(attrEnd);
+                if(buf.get(pos) != '=') {
+                    throw new UnsupportedException("Bad attribute");
+                }
+                pos = skipSpace(pos + 1);
+                byte quote = buf.get(pos);
+                if(quote != '"' && quote != '\'') {
+                    throw new UnsupportedException("Bad attribute");
+                }
+                int valStart = pos + 1;
+                int valEnd = indexOf(quote, valStart);
+                if(valEnd < 0) {
+                    throw new UnsupportedException("Bad attribute");
+                }
+                checkReferences(valStart, valEnd);
+                pos = valEnd + 1;
+                if(isTrkpt) {
+                    // Only unprefixed attributes, as for getAttributeValue
+                    if(equals(attrStart, attrEnd, LAT)) {
+                        latStart = valStart;
+                        latEnd = valEnd;
+                    } else if(equals(attrStart, attrEnd, LON)) {
+                        lonStart = valStart;
+                        lonEnd = valEnd;
+                    }
+                }
+            }
+
+            depth++;
+            push(depth, nameStart, nameEnd);
+            boolean isText = false;
+            if(trkptDepth != -1) {
+                // In a track point
+                if(tpeDepth != -1) {
+                    if(depth == tpeDepth + 1 && equals(localStart, nameEnd, HR)) {
+                        pos = textEnd(pos, selfClosing, nameStart, nameEnd);
+                        hr = parseDouble(textStart, textEnd);
+                        isText = true;
+                    }
+                } else if(ptExtDepth != -1) {
+                    // Only use the first TrackPointExtension with a HR
+                    if(Double.isNaN(hr) && startsWithIgnoreCase(localStart,
+                        nameEnd, TPE)) {
+                        tpeDepth = depth;
+                    }
+                } else if(depth == trkptDepth + 1) {
+                    if(equals(localStart, nameEnd, TIME)) {
+                        pos = textEnd(pos, selfClosing, nameStart, nameEnd);
+                        time = parseTime(textStart, textEnd);
+                        haveTime = true;
+                        isText = true;
+                    } else if(equals(localStart, nameEnd, ELE)) {
+                        pos = textEnd(pos, selfClosing, nameStart, nameEnd);
+                        ele = parseDouble(textStart, textEnd);
+                        isText = true;
+                    } else if(equals(localStart, nameEnd, EXTENSIONS)) {
+                        ptExtDepth = depth;
+                    }
+                }
+            } else if(trkExtDepth != -1) {
+                if(equals(localStart, nameEnd, BPM)) {
+                    pos = textEnd(pos, selfClosing, nameStart, nameEnd);
+                    OruxMapsBpmDecoder decoder = acc.startOruxMapsBpm();
+                    decoder.decode(buf, textStart, textEnd);
+                    acc.endOruxMapsBpm(decoder);
+                    isText = true;
+                }
+            } else if(trkDepth != -1) {
+                if(isTrkpt) {
+                    if(latStart < 0 || lonStart < 0) {
+                        throw new UnsupportedException(
+                            "Track point without lat or lon");
+                    }
+                    trkptDepth = depth;
+                    haveTime = false;
+                    ele = Double.NaN;
+                    hr = Double.NaN;
+                    lat = parseAttribute(latStart, latEnd);
+                    lon = parseAttribute(lonStart, lonEnd);
+                } else if(depth == trkDepth + 1
+                    && equals(localStart, nameEnd, TRKSEG)) {
+                    acc.startSegment();
+                } else if(depth == trkDepth + 1
+                    && equals(localStart, nameEnd, EXTENSIONS)) {
+                    trkExtDepth = depth;
+                }
+            } else if(equals(localStart, nameEnd, TRK)) {
+                trkDepth = depth;
+                acc.startTrack();
+            }
+            if(isText) {
+                // The end tag has been consumed
+                depth--;
+            } else if(selfClosing) {
+                // Same as the end tag
+                if(depth == trkptDepth) {
+                    throw new UnsupportedException(
+                        "Track point without a time");
+                } else if(depth == tpeDepth) {
+                    tpeDepth = -1;
+                } else if(depth == ptExtDepth) {
+                    ptExtDepth = -1;
+                } else if(depth == trkExtDepth) {
+                    trkExtDepth = -1;
+                } else if(depth == trkDepth) {
+                    trkDepth = -1;
+                }
+                depth--;
+            }
+        }
+        if(incremental) {
+            // Ends after a trkpt
+            state.depth = depth;
+            state.trkDepth = trkDepth;
+            state.seenRoot = seenRoot;
+        } else if(depth != 0 || !seenRoot) {
+            throw new UnsupportedException("Unexpected end of file");
+        }
+    }
+
+    /**
+     * Finds the text of a simple element whose start tag ends at pos and sets
+     * textStart and textEnd. The text must be followed directly by the end
+     * tag, and it may not have references.
+     *
+     * @param pos
+     * @param selfClosing
+     * @param nameStart
+     * @param nameEnd
+     * @return The position after the end tag.
+     * @throws UnsupportedException
+     */
+    private int textEnd(int pos, boolean selfClosing, int nameStart,
+        int nameEnd) throws UnsupportedException {
+        textStart = pos;
+        if(selfClosing) {
+            textEnd = pos;
+            return pos;
+        }
+        int end = indexOf((byte)'<', pos);
+        if(end < 0 || buf.get(end + 1) != '/') {
+            // Comment, CDATA, or element in the text
+            throw new UnsupportedException("Mixed content");
+        }
+        for(int i = pos; i < end; i++) {
+            if(buf.get(i) == '&') {
+                throw new UnsupportedException("Reference in text");
+            }
+        }
+        textEnd = end;
+        int endNameEnd = nameEnd(end + 2);
+        if(!sameName(end + 2, endNameEnd, nameStart, nameEnd)) {
+            throw new UnsupportedException("Mismatched end tag");
+        }
+        int i = skipSpace(endNameEnd);
+        if(buf.get(i) != '>') {
+            throw new UnsupportedException("Bad end tag");
+        }
+        return i + 1;
+    }
+
+    /**
+     * Checks that the encoding in the XML declaration is one that can be
+     * scanned as bytes.
+     *
+     * @param start
+     * @param end
+     * @throws UnsupportedException
+     */
+    private void checkEncoding(int start, int end)
+        throws UnsupportedException {
+        for(int i = start; i < end - ENCODING.length; i++) {
+            if(startsWith(i, ENCODING)) {
+                int pos = skipSpace(i + ENCODING.length);
+                if(buf.get(pos) != '=') {
+                    throw new UnsupportedException("Bad XML declaration");
+                }
+                pos = skipSpace(pos + 1);
+                byte quote = buf.get(pos);
+                int valEnd = indexOf(quote, pos + 1);
+                if(valEnd < 0 || valEnd > end) {
+                    throw new UnsupportedException("Bad XML declaration");
+                }
+                String encoding = decode(pos + 1, valEnd);
+                if(!encoding.equalsIgnoreCase("UTF-8")
+                    && !encoding.equalsIgnoreCase("UTF8")
+                    && !encoding.equalsIgnoreCase("US-ASCII")
+                    && !encoding.equalsIgnoreCase("ASCII")) {
+                    throw new UnsupportedException("Encoding " + encoding);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Parses a double from the given bytes. Short decimal numbers are
+     * converted exactly without a String. Others use Double.parseDouble.
+     *
+     * @param start
+     * @param end
+     * @return The value or NaN if there is only white space.
+     * @throws UnsupportedException
+     */
+    private double parseDouble(int start, int end)
+        throws UnsupportedException {
+        while(start < end && isSpace(buf.get(start))) {
+            start++;
+        }
+        while(end > start && isSpace(buf.get(end - 1))) {
+            end--;
+        }
+        if(start == end) {
+            return Double.NaN;
+        }
+        int i = start;
+        boolean negative = false;
+        byte b = buf.get(i);
+        if(b == '-' || b == '+') {
+            negative = b == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int nDigits = 0;
+        int nFraction = -1;
+        for(; i < end; i++) {
+            b = buf.get(i);
+            if(b >= '0' && b <= '9') {
+                mantissa = 10 * mantissa + (b - '0');
+                nDigits++;
+                if(nFraction >= 0) {
+                    nFraction++;
+                }
+            } else if(b == '.' && nFraction < 0) {
+                nFraction = 0;
+            } else {
+                break;
+            }
+        }
+        if(i == end && nDigits > 0 && nDigits <= 15) {
+            // Both are exact, so the quotient is correctly rounded as for
+            // Double.parseDouble
+            double val = nFraction > 0 ? mantissa / POW10[nFraction]
+                : (double)mantissa;
+            return negative ? -val : val;
+        }
+        String text = decode(start, end);
+        try {
+            return Double.parseDouble(text);
+        } catch(NumberFormatException ex) {
+            throw new UnsupportedException("Invalid number: " + text);
+        }
+    }
+
+    /**
+     * Parses a double attribute value.
+     *
+     * @param start
+     * @param end
+     * @return
+     * @throws UnsupportedException
+     */
+    private double parseAttribute(int start, int end)
+        throws UnsupportedException {
+        for(int i = start; i < end; i++) {
+            if(buf.get(i) == '&') {
+                throw new UnsupportedException("Reference in attribute");
+            }
+        }
+        double val = parseDouble(start, end);
+        if(Double.isNaN(val)) {
+            throw new UnsupportedException("Empty attribute");
+        }
+        return val;
+    }
+
+    /**
+     * Parses an xsd:dateTime from the given bytes.
+     *
+     * @param start
+     * @param end
+     * @return The time in ms.
+     * @throws UnsupportedException
+     */
+    private long parseTime(int start, int end) throws UnsupportedException {
+        int len = end - start;
+        long time;
+        if(len <= timeBytes.length) {
+            for(int i = 0; i < len; i++) {
+                timeBytes[i] = buf.get(start + i);
+            }
+            time = IsoTimeParser.parse(timeBytes, 0, len);
+        } else {
+            time = IsoTimeParser.parse(decode(start, end));
+        }
+        if(time == IsoTimeParser.INVALID) {
+            throw new UnsupportedException("Invalid time");
+        }
+        return time;
+    }
+
+    /**
+     * Saves the name of the element at the given depth.
+     */
+    private void push(int depth, int nameStart, int nameEnd) {
+        if(2 * depth > nameStack.length) {
+            int[] newStack = new int[2 * nameStack.length];
+            System.arraycopy(nameStack, 0, newStack, 0, nameStack.length);
+            nameStack = newStack;
+        }
+        nameStack[2 * depth - 2] = nameStart;
+        nameStack[2 * depth - 1] = nameEnd;
+    }
+
+    private String decode(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for(int i = 0; i < bytes.length; i++) {
+            bytes[i] = buf.get(start + i);
+        }
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * @return The index of the end of the name starting at i.
+     */
+    private int nameEnd(int i) {
+        while(i < limit) {
+            byte b = buf.get(i);
+            if(b == '>' || b == '/' || b == '=' || isSpace(b)) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return The start of the local name, after any prefix.
+     */
+    private int localStart(int start, int end) {
+        for(int i = end - 1; i >= start; i--) {
+            if(buf.get(i) == ':') {
+                return i + 1;
+            }
+        }
+        return start;
+    }
+
+    private boolean equals(int start, int end, byte[] name) {
+        if(end - start != name.length) {
+            return false;
+        }
+        return startsWith(start, name);
+    }
+
+    private boolean startsWithIgnoreCase(int start, int end, byte[] prefix) {
+        if(end - start < prefix.length) {
+            return false;
+        }
+        for(int j = 0; j < prefix.length; j++) {
+            byte b = buf.get(start + j);
+            if(b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if(b != prefix[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean sameName(int start1, int end1, int start2, int end2) {
+        if(end1 - start1 != end2 - start2) {
+            return false;
+        }
+        for(int j = 0; j < end1 - start1; j++) {
+            if(buf.get(start1 + j) != buf.get(start2 + j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean startsWith(int i, byte[] prefix) {
+        if(i + prefix.length > limit) {
+            return false;
+        }
+        for(int j = 0; j < prefix.length; j++) {
+            if(buf.get(i + j) != prefix[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the next &lt; at or after i, checking the references in the text
+     * that is skipped.
+     *
+     * @param i
+     * @return The index or -1 if there is none.
+     * @throws UnsupportedException
+     */
+    private int nextMarkup(int i) throws UnsupportedException {
+        for(; i < limit; i++) {
+            byte b = buf.get(i);
+            if(b == '<') {
+                return i;
+            }
+            if(b == '&') {
+                checkReference(i);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks the references in the given range.
+     *
+     * @param start
+     * @param end
+     * @throws UnsupportedException
+     */
+    private void checkReferences(int start, int end)
+        throws UnsupportedException {
+        for(int i = start; i < end; i++) {
+            if(buf.get(i) == '&') {
+                checkReference(i);
+            }
+        }
+    }
+
+    /**
+     * Checks that the reference at i is a character reference or one of the
+     * predefined entities, which are the only ones without a DTD.
+     *
+     * @param i
+     * @throws UnsupportedException
+     */
+    private void checkReference(int i) throws UnsupportedException {
+        int end = indexOf((byte)';', i);
+        if(end < 0 || end - i > 12) {
+            throw new UnsupportedException("Bad reference");
+        }
+        String name = decode(i + 1, end);
+        if(name.equals("amp") || name.equals("lt") || name.equals("gt")
+            || name.equals("quot") || name.equals("apos")
+            || name.matches("#[0-9]+|#x[0-9a-fA-F]+")) {
+            return;
+        }
+        throw new UnsupportedException("Unknown reference &" + name + ";");
+    }
+
+    private int indexOf(byte b, int from) {
+        for(int i = from; i < limit; i++) {
+            if(buf.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int skipSpace(int i) {
+        while(i < limit && isSpace(buf.get(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return The index after the next occurrence of end after i.
+     * @throws UnsupportedException If there is none.
+     */
+    private int skipPast(int i, byte[] end) throws UnsupportedException {
+        for(int j = i; j + end.length <= limit; j++) {
+            if(startsWith(j, end)) {
+                return j + end.length;
+            }
+        }
+        throw new UnsupportedException("Unexpected end of file");
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+}
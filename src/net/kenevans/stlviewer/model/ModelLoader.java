@@ -0,0 +1,357 @@
+package net.kenevans.stlviewer.model;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * ModelLoader loads an STLFileModel without blocking the caller. It is a
+ * handle to the load that can be waited on, polled for progress in bytes read
+ * and track points decoded, and cancelled. Errors are returned by getError
+ * rather than shown in a dialog, so it can be used by the viewer, a batch
+ * tool, or a server.<br>
+ * <br>
+ * Cancelling is checked between track points, so a load stops soon after
+ * cancel is called. Reading the file into a GpxType for ParseMode.JAXB cannot
+ * be interrupted, so that part finishes first. With ParseMode.PARALLEL, the
+ * track points of each track are checked on the pool threads, and each track
+ * is checked again as it is appended.
+ *
+ * @author Kenneth Evans, Jr.
+ */
+public class ModelLoader implements Runnable
+{
+    /** Number of track points between progress reports and checks. */
+    private static final int CHECK_INTERVAL = 1024;
+
+    private final String fileName;
+    private final ParseMode parseMode;
+    private final boolean useCache;
+    private final LoadListener listener;
+    private final long totalBytes;
+
+    private final CountDownLatch doneLatch = new CountDownLatch(1);
+    private volatile Thread thread;
+    private volatile boolean started;
+    private volatile boolean cancelled;
+    private volatile boolean done;
+    private volatile STLFileModel model;
+    private volatile Exception error;
+
+    /** Only changed on the loading thread. */
+    private int nPoints;
+    private long bytesRead;
+    /** Published for other threads at each check. */
+    private volatile int nPointsReported;
+    private volatile long bytesReadReported;
+
+    /**
+     * ModelLoader constructor. Use start or run to load the file.
+     *
+     * @param fileName The name of the file as for GpxSource.
+     * @param parseMode The ParseMode to use if it is not in the cache.
+     * @param useCache Whether to use and update the TrackCache.
+     * @param listener A LoadListener or null.
+     */
+    public ModelLoader(String fileName, ParseMode parseMode, boolean useCache,
+        LoadListener listener) {
+        this.fileName = fileName;
+        this.parseMode = parseMode;
+        this.useCache = useCache;
+        this.listener = listener;
+        this.totalBytes = GpxSource.isCompressed(fileName) ? -1
+            : GpxSource.getFile(fileName).length();
+    }
+
+    /**
+     * Starts the load using the given Executor.
+     *
+     * @param executor
+     * @return This ModelLoader.
+     */
+    public ModelLoader start(Executor executor) {
+        executor.execute(this);
+        return this;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+        synchronized(this) {
+            if(started) {
+                return;
+            }
+            started = true;
+            thread = Thread.currentThread();
+        }
+        try {
+            if(!cancelled) {
+                model = useCache ? STLFileModel.load(fileName, parseMode, this)
+                    : new STLFileModel(fileName, parseMode, false, this);
+            }
+        } catch(CancellationException ex) {
+            cancelled = true;
+        } catch(Exception ex) {
+            if(!cancelled) {
+                error = ex;
+            }
+        } finally {
+            synchronized(this) {
+                thread = null;
+                if(cancelled) {
+                    // Clear the interrupt from cancel
+                    Thread.interrupted();
+                }
+            }
+            if(cancelled) {
+                model = null;
+                error = null;
+            }
+            nPointsReported = nPoints;
+            bytesReadReported = bytesRead;
+            done = true;
+            doneLatch.countDown();
+            if(listener != null) {
+                listener.loadDone(this);
+            }
+        }
+    }
+
+    /**
+     * Cancels the load. It stops at the next check between track points.
+     *
+     * @return False if it had already finished.
+     */
+    public boolean cancel() {
+        synchronized(this) {
+            if(done) {
+                return false;
+            }
+            cancelled = true;
+            if(thread != null) {
+                thread.interrupt();
+            }
+        }
+        if(!started) {
+            // It will not run, so finish it here
+            run();
+        }
+        return true;
+    }
+
+    /**
+     * Waits for the load to finish.
+     *
+     * @return The model or null if it failed or was cancelled.
+     * @throws InterruptedException
+     */
+    public STLFileModel get() throws InterruptedException {
+        doneLatch.await();
+        return model;
+    }
+
+    /**
+     * Waits for the load to finish for at most the given time.
+     *
+     * @param timeout
+     * @param unit
+     * @return The model or null if it failed, was cancelled, or has not
+     *         finished.
+     * @throws InterruptedException
+     */
+    public STLFileModel get(long timeout, TimeUnit unit)
+        throws InterruptedException {
+        doneLatch.await(timeout, unit);
+        return model;
+    }
+
+    /**
+     * Called for each track point added to a TrackAccumulator being loaded.
+     * Reports progress and checks for cancelling every CHECK_INTERVAL points.
+     *
+     * @throws CancellationException
+     */
+    void pointAdded() {
+        if(++nPoints % CHECK_INTERVAL == 0) {
+            check();
+        }
+    }
+
+    /**
+     * Called when a number of track points have been added at once.
+     *
+     * @param n
+     */
+    void pointsAdded(int n) {
+        nPoints += n;
+        check();
+    }
+
+    /**
+     * Called when the values are to be extracted again from the start, as
+     * when a faster method did not handle the file.
+     */
+    void restart() {
+        nPoints = 0;
+        bytesRead = 0;
+    }
+
+    /**
+     * Sets the number of bytes of the file that have been read.
+     *
+     * @param bytesRead
+     */
+    void setBytesRead(long bytesRead) {
+        this.bytesRead = bytesRead;
+    }
+
+    /**
+     * Reports progress and throws a CancellationException if the load has
+     * been cancelled.
+     *
+     * @throws CancellationException
+     */
+    void check() {
+        if(cancelled || Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Cancelled loading " + fileName);
+        }
+        report();
+    }
+
+    /**
+     * Throws a CancellationException if the load has been cancelled. Unlike
+     * check, this may be called from any thread, as for the tracks extracted
+     * in parallel.
+     *
+     * @throws CancellationException
+     */
+    void checkCancelled() {
+        if(cancelled) {
+            throw new CancellationException("Cancelled loading " + fileName);
+        }
+    }
+
+    private void report() {
+        nPointsReported = nPoints;
+        bytesReadReported = bytesRead;
+        if(listener != null) {
+            listener.loadProgress(this);
+        }
+    }
+
+    /**
+     * Wraps the given stream so the bytes read from it are counted.
+     *
+     * @param in
+     * @return
+     */
+    InputStream countBytes(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if(b >= 0) {
+                    bytesRead++;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if(n > 0) {
+                    bytesRead += n;
+                }
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                bytesRead += skipped;
+                return skipped;
+            }
+        };
+    }
+
+    /**
+     * @return The value of fileName.
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return The file that holds the data, which is the zip file for a zip
+     *         entry.
+     */
+    public File getFile() {
+        return GpxSource.getFile(fileName);
+    }
+
+    /**
+     * @return Whether the load has finished, failed, or been cancelled.
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * @return Whether the load was cancelled.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return The model or null if it has not been loaded.
+     */
+    public STLFileModel getModel() {
+        return model;
+    }
+
+    /**
+     * @return The error that stopped the load or null if there was none.
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    /**
+     * @return The number of bytes read as of the last report. For compressed
+     *         data, this is the number of uncompressed bytes.
+     */
+    public long getBytesRead() {
+        return bytesReadReported;
+    }
+
+    /**
+     * @return The size of the file or -1 if it is compressed and the
+     *         uncompressed size is not known.
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return The number of track points decoded as of the last report.
+     */
+    public int getnPoints() {
+        return nPointsReported;
+    }
+
+}
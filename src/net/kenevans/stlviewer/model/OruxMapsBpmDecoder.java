@@ -0,0 +1,320 @@
+package net.kenevans.stlviewer.model;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+import net.kenevans.stlviewer.utils.DoubleColumn;
+import net.kenevans.stlviewer.utils.IsoTimeParser;
+import net.kenevans.stlviewer.utils.LongColumn;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * OruxMapsBpmDecoder decodes the bpm text of an OruxMaps track extension,
+ * which has one "hr time" line per HR value, in one pass over the characters.
+ * The HR and time values are added directly to the given columns. The text
+ * may be given in pieces as it is read, as from a Reader or the character
+ * events of an XMLStreamReader, or as the bytes of a mapped file, so the
+ * whole text never has to be in a String.<br>
+ * <br>
+ * The lines are handled as they were with split("\n") and split(" "): a line
+ * is used if, without trailing spaces, it has exactly one space. A HR that is
+ * not a number is NaN. A line with an invalid time is not used. Lines that are
+ * not used, other than empty ones, are counted as malformed. A carriage
+ * return also ends a line, so "\r\n" and "\r" line ends in the bytes of a
+ * file give the same values as the text from an XML parser, which has
+ * changed them to "\n".
+ *
+ * @author Kenneth Evans, Jr.
+ */
+public class OruxMapsBpmDecoder
+{
+    /** Powers of 10 that are exact as doubles. */
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5,
+        1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17,
+        1e18, 1e19, 1e20, 1e21, 1e22};
+    /** Size of the buffer used for a Reader. */
+    private static final int BUFFER_SIZE = 8192;
+
+    private final DoubleColumn hrVals;
+    private final LongColumn hrTimeVals;
+
+    /** The current line. */
+    private char[] line = new char[64];
+    private int lineLength;
+    /** The current line as a CharSequence for IsoTimeParser. */
+    private CharBuffer lineSequence = CharBuffer.wrap(line);
+
+    private boolean empty = true;
+    private int nValues;
+    private int nMalformed;
+    private int nInvalidTimes;
+    private long startTime = Long.MAX_VALUE;
+    private long endTime = Long.MIN_VALUE;
+
+    /**
+     * OruxMapsBpmDecoder constructor.
+     *
+     * @param hrVals The column for the HR values.
+     * @param hrTimeVals The column for the HR times.
+     */
+    public OruxMapsBpmDecoder(DoubleColumn hrVals, LongColumn hrTimeVals) {
+        this.hrVals = hrVals;
+        this.hrTimeVals = hrTimeVals;
+    }
+
+    /**
+     * Decodes the given characters. They continue any line from the last
+     * call.
+     *
+     * @param chars
+     * @param start
+     * @param length
+     */
+    public void decode(char[] chars, int start, int length) {
+        int end = start + length;
+        char c;
+        for(int i = start; i < end; i++) {
+            c = chars[i];
+            if(c == '\n' || c == '\r') {
+                endLine();
+            } else {
+                addChar(c);
+            }
+        }
+        if(length > 0) {
+            empty = false;
+        }
+    }
+
+    /**
+     * Decodes the given bytes of the text, as from a mapped file. It
+     * continues any line from the last call. The text of a valid line is
+     * ASCII, so each byte is taken as one character. Other bytes give the
+     * same values as decoding the text first would.
+     *
+     * @param bytes
+     * @param start The index of the first byte.
+     * @param end The index after the last byte.
+     */
+    public void decode(ByteBuffer bytes, int start, int end) {
+        byte b;
+        for(int i = start; i < end; i++) {
+            b = bytes.get(i);
+            if(b == '\n' || b == '\r') {
+                endLine();
+            } else {
+                addChar((char)(b & 0xff));
+            }
+        }
+        if(end > start) {
+            empty = false;
+        }
+    }
+
+    /**
+     * Decodes the given text. It continues any line from the last call.
+     *
+     * @param text
+     */
+    public void decode(CharSequence text) {
+        int len = text.length();
+        char c;
+        for(int i = 0; i < len; i++) {
+            c = text.charAt(i);
+            if(c == '\n' || c == '\r') {
+                endLine();
+            } else {
+                addChar(c);
+            }
+        }
+        if(len > 0) {
+            empty = false;
+        }
+    }
+
+    /**
+     * Decodes the rest of the text from the given Reader and finishes. The
+     * Reader is not closed.
+     *
+     * @param reader
+     * @throws IOException
+     */
+    public void decode(Reader reader) throws IOException {
+        char[] chars = new char[BUFFER_SIZE];
+        int n;
+        while((n = reader.read(chars)) != -1) {
+            decode(chars, 0, n);
+        }
+        finish();
+    }
+
+    /**
+     * Handles the last line if the text does not end with a new line. Call
+     * this after the last of the text has been decoded.
+     */
+    public void finish() {
+        if(lineLength > 0) {
+            endLine();
+        }
+    }
+
+    /**
+     * Adds a character to the current line.
+     *
+     * @param c
+     */
+    private void addChar(char c) {
+        if(lineLength == line.length) {
+            char[] newLine = new char[2 * line.length];
+            System.arraycopy(line, 0, newLine, 0, lineLength);
+            line = newLine;
+            lineSequence = CharBuffer.wrap(line);
+        }
+        line[lineLength++] = c;
+    }
+
+    /**
+     * Decodes the current line and starts a new one.
+     */
+    private void endLine() {
+        int len = lineLength;
+        lineLength = 0;
+        if(len == 0) {
+            return;
+        }
+        // Trailing spaces give no tokens
+        int end = len;
+        while(end > 0 && line[end - 1] == ' ') {
+            end--;
+        }
+        int space = -1;
+        for(int i = 0; i < end; i++) {
+            if(line[i] == ' ') {
+                if(space >= 0) {
+                    // More than two tokens
+                    nMalformed++;
+                    return;
+                }
+                space = i;
+            }
+        }
+        if(space < 0) {
+            nMalformed++;
+            return;
+        }
+        long time = IsoTimeParser.parse(lineSequence, space + 1, end);
+        if(time == IsoTimeParser.INVALID) {
+            nInvalidTimes++;
+            nMalformed++;
+            return;
+        }
+        hrVals.add(parseHr(0, space));
+        hrTimeVals.add(time);
+        if(time < startTime) {
+            startTime = time;
+        }
+        if(time > endTime) {
+            endTime = time;
+        }
+        nValues++;
+    }
+
+    /**
+     * Parses the HR in the current line as Double.parseDouble does. Simple
+     * decimal numbers are parsed directly.
+     *
+     * @param start
+     * @param end
+     * @return The HR or NaN if it is not a number.
+     */
+    private double parseHr(int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if(i < end && (line[i] == '-' || line[i] == '+')) {
+            negative = line[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int nDigits = 0;
+        int nFraction = -1;
+        char c;
+        for(; i < end; i++) {
+            c = line[i];
+            if(c >= '0' && c <= '9') {
+                mantissa = 10 * mantissa + (c - '0');
+                nDigits++;
+                if(nFraction >= 0) {
+                    nFraction++;
+                }
+            } else if(c == '.' && nFraction < 0) {
+                nFraction = 0;
+            } else {
+                break;
+            }
+        }
+        if(i == end && nDigits > 0 && nDigits <= 15
+            && nFraction < POW10.length) {
+            // Both are exact, so the quotient is correctly rounded as for
+            // Double.parseDouble
+            double val = nFraction > 0 ? mantissa / POW10[nFraction]
+                : (double)mantissa;
+            return negative ? -val : val;
+        }
+        try {
+            return Double.parseDouble(new String(line, start, end - start));
+        } catch(NumberFormatException ex) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * @return Whether no text has been decoded.
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * @return The number of values added.
+     */
+    public int getnValues() {
+        return nValues;
+    }
+
+    /**
+     * @return The number of lines that were not used, not counting empty
+     *         ones.
+     */
+    public int getnMalformed() {
+        return nMalformed;
+    }
+
+    /**
+     * @return The number of lines that were not used because the time was
+     *         invalid.
+     */
+    public int getnInvalidTimes() {
+        return nInvalidTimes;
+    }
+
+    /**
+     * @return The earliest time added or Long.MAX_VALUE if there are none.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return The latest time added or Long.MIN_VALUE if there are none.
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+
+}
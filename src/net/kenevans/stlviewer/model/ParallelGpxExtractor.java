@@ -0,0 +1,263 @@
+package net.kenevans.stlviewer.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import javax.xml.stream.XMLStreamException;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * ParallelGpxExtractor finds the trk elements of a GPX file in one scan of the
+ * bytes, extracts each track with a GpxStreamExtractor on a ForkJoinPool, and
+ * appends the results to a TrackAccumulator in document order.<br>
+ * <br>
+ * Each track is parsed as a small document made of the bytes up to the end of
+ * the gpx start tag (so the namespace declarations are in scope), the bytes of
+ * the track, and a gpx end tag. Nothing is copied. If the file does not have
+ * the expected structure or has fewer than two tracks, it is extracted on the
+ * calling thread.
+ * 
+ * @author Kenneth Evans, Jr.
+ */
+public class ParallelGpxExtractor
+{
+    private static final byte[] TRK_START = "<trk".getBytes();
+    private static final byte[] TRK_END = "</trk>".getBytes();
+    private static final byte[] GPX_START = "<gpx".getBytes();
+    private static final byte[] GPX_END = "</gpx>".getBytes();
+    private static final byte[] COMMENT_START = "<!--".getBytes();
+    private static final byte[] COMMENT_END = "-->".getBytes();
+    private static final byte[] CDATA_START = "<![CDATA[".getBytes();
+    private static final byte[] CDATA_END = "]]>".getBytes();
+
+    private final TrackAccumulator acc;
+    private final ForkJoinPool pool;
+
+    /**
+     * ParallelGpxExtractor constructor that uses the common ForkJoinPool.
+     * 
+     * @param acc The TrackAccumulator to receive the values.
+     */
+    public ParallelGpxExtractor(TrackAccumulator acc) {
+        this(acc, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * ParallelGpxExtractor constructor.
+     * 
+     * @param acc The TrackAccumulator to receive the values.
+     * @param pool The pool to use for the tracks.
+     */
+    public ParallelGpxExtractor(TrackAccumulator acc, ForkJoinPool pool) {
+        this.acc = acc;
+        this.pool = pool;
+    }
+
+    /**
+     * Extracts the tracks from the given file.
+     * 
+     * @param file
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    public void extract(File file) throws IOException, XMLStreamException {
+        extract(Files.readAllBytes(file.toPath()));
+    }
+
+    /**
+     * Extracts the tracks from the given bytes.
+     * 
+     * @param bytes The contents of a GPX file.
+     * @throws XMLStreamException
+     */
+    public void extract(final byte[] bytes) throws XMLStreamException {
+        final int headerEnd = findHeaderEnd(bytes);
+        List<int[]> tracks = headerEnd < 0 ? null : findTracks(bytes,
+            headerEnd);
+        if(tracks == null || tracks.size() < 2) {
+            new GpxStreamExtractor(acc)
+                .extract(new ByteArrayInputStream(bytes));
+            return;
+        }
+
+        // The parts stop when the load is cancelled
+        final ModelLoader loader = acc.getLoader();
+        List<Future<TrackAccumulator>> futures = new ArrayList<Future<TrackAccumulator>>(
+            tracks.size());
+        for(final int[] track : tracks) {
+            futures.add(pool.submit(new Callable<TrackAccumulator>() {
+                public TrackAccumulator call() throws XMLStreamException {
+                    TrackAccumulator part = new TrackAccumulator(true);
+                    part.setCancelLoader(loader);
+                    InputStream in = new SequenceInputStream(
+                        new SequenceInputStream(
+                            new ByteArrayInputStream(bytes, 0, headerEnd),
+                            new ByteArrayInputStream(bytes, track[0],
+                                track[1] - track[0])),
+                        new ByteArrayInputStream(GPX_END));
+                    new GpxStreamExtractor(part).extract(in);
+                    return part;
+                }
+            }));
+        }
+        try {
+            for(Future<TrackAccumulator> future : futures) {
+                acc.append(future.get());
+            }
+        } catch(InterruptedException ex) {
+            for(Future<TrackAccumulator> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new XMLStreamException("Interrupted", ex);
+        } catch(CancellationException ex) {
+            // From appending to a ModelLoader that was cancelled
+            for(Future<TrackAccumulator> future : futures) {
+                future.cancel(true);
+            }
+            throw ex;
+        } catch(ExecutionException ex) {
+            for(Future<TrackAccumulator> future : futures) {
+                future.cancel(true);
+            }
+            Throwable cause = ex.getCause();
+            if(cause instanceof CancellationException) {
+                throw (CancellationException)cause;
+            }
+            if(cause instanceof XMLStreamException) {
+                throw (XMLStreamException)cause;
+            }
+            throw new XMLStreamException(cause);
+        }
+    }
+
+    /**
+     * Finds the end of the gpx start tag.
+     * 
+     * @param bytes
+     * @return The index after the closing &gt; or -1 if not found.
+     */
+    static int findHeaderEnd(byte[] bytes) {
+        int i = 0;
+        int len = bytes.length;
+        while(i < len) {
+            i = indexOf(bytes, (byte)'<', i);
+            if(i < 0) {
+                return -1;
+            }
+            if(startsWith(bytes, i, COMMENT_START)) {
+                i = skipPast(bytes, i, COMMENT_END);
+            } else if(i + 1 < len
+                && (bytes[i + 1] == '?' || bytes[i + 1] == '!')) {
+                // Declaration, processing instruction, or DOCTYPE
+                i = skipPast(bytes, i, new byte[] {'>'});
+            } else if(startsWith(bytes, i, GPX_START)
+                && isNameEnd(bytes, i + GPX_START.length)) {
+                int end = indexOf(bytes, (byte)'>', i);
+                return end < 0 ? -1 : end + 1;
+            } else {
+                // Some other root element
+                return -1;
+            }
+            if(i < 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the trk elements.
+     * 
+     * @param bytes
+     * @param start Where to start looking.
+     * @return A list of {start, end} where end is the index after the end tag,
+     *         or null if a trk element is not closed.
+     */
+    static List<int[]> findTracks(byte[] bytes, int start) {
+        List<int[]> tracks = new ArrayList<int[]>();
+        int i = start;
+        int trkStart = -1;
+        while(i >= 0 && i < bytes.length) {
+            i = indexOf(bytes, (byte)'<', i);
+            if(i < 0) {
+                break;
+            }
+            if(startsWith(bytes, i, COMMENT_START)) {
+                i = skipPast(bytes, i, COMMENT_END);
+            } else if(startsWith(bytes, i, CDATA_START)) {
+                i = skipPast(bytes, i, CDATA_END);
+            } else if(trkStart < 0 && startsWith(bytes, i, TRK_START)
+                && isNameEnd(bytes, i + TRK_START.length)) {
+                trkStart = i;
+                i += TRK_START.length;
+            } else if(trkStart >= 0 && startsWith(bytes, i, TRK_END)) {
+                i += TRK_END.length;
+                tracks.add(new int[] {trkStart, i});
+                trkStart = -1;
+            } else {
+                i++;
+            }
+        }
+        return trkStart < 0 ? tracks : null;
+    }
+
+    private static boolean isNameEnd(byte[] bytes, int i) {
+        if(i >= bytes.length) {
+            return false;
+        }
+        byte b = bytes[i];
+        return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\n'
+            || b == '\r';
+    }
+
+    private static int indexOf(byte[] bytes, byte b, int from) {
+        for(int i = from; i < bytes.length; i++) {
+            if(bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] bytes, int i, byte[] prefix) {
+        if(i + prefix.length > bytes.length) {
+            return false;
+        }
+        for(int j = 0; j < prefix.length; j++) {
+            if(bytes[i + j] != prefix[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The index after the next occurrence of end at or after i, or -1
+     *         if there is none.
+     */
+    private static int skipPast(byte[] bytes, int i, byte[] end) {
+        for(int j = i; j + end.length <= bytes.length; j++) {
+            if(startsWith(bytes, j, end)) {
+                return j + end.length;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,28 @@
+package net.kenevans.stlviewer.model;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * ParseMode specifies how an STLFileModel gets the values from a GPX file.
+ * 
+ * @author Kenneth Evans, Jr.
+ */
+public enum ParseMode {
+    /** Parse into a JAXB GpxType, then walk the tracks. */
+    JAXB,
+    /** Stream the tracks with StAX without building a GpxType. */
+    STREAMING,
+    /**
+     * Split the file at the trk elements and stream each track on a separate
+     * thread. This is for files with many tracks.
+     */
+    PARALLEL,
+    /**
+     * Read the file into a buffer and scan the bytes directly. Files the
+     * scanner does not handle are read as for STREAMING.
+     */
+    MAPPED,
+}
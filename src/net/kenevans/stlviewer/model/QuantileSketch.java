@@ -0,0 +1,318 @@
+package net.kenevans.stlviewer.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * QuantileSketch is a compact summary of a distribution of values from which
+ * quantiles, such as the median, can be found without keeping the values. The
+ * values are counted in bins whose bounds increase geometrically, so any
+ * quantile is found to within the relative accuracy of its true value. A HR
+ * from 40 to 220 needs about 170 bins at the default accuracy of 0.5%.<br>
+ * <br>
+ * Sketches with the same accuracy are merged by adding the counts, so merging
+ * is exact and associative and the sketch of many files is the same however
+ * it is built. They can be written to and read from bytes, as for a database,
+ * and are Serializable.<br>
+ * <br>
+ * NaN and negative values are not used. Values below MIN_INDEXABLE are counted
+ * as 0.
+ *
+ * @author Kenneth Evans, Jr.
+ */
+public class QuantileSketch implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+    /** The version of the bytes from toBytes. */
+    private static final int VERSION = 1;
+    /** The default relative accuracy of the quantiles. */
+    public static final double DEFAULT_RELATIVE_ACCURACY = .005;
+    /** The smallest value that is not counted as 0. */
+    public static final double MIN_INDEXABLE = 1e-3;
+
+    private final double relativeAccuracy;
+    /** The ratio of the bounds of a bin. */
+    private final double gamma;
+    private final double logGamma;
+
+    /** The bin index of counts[0]. */
+    private int offset;
+    private long[] counts;
+    private long zeroCount;
+    private long count;
+    private double min = Double.MAX_VALUE;
+    private double max = -Double.MAX_VALUE;
+
+    /**
+     * QuantileSketch constructor that uses DEFAULT_RELATIVE_ACCURACY.
+     */
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    /**
+     * QuantileSketch constructor.
+     *
+     * @param relativeAccuracy The relative accuracy of the quantiles, which
+     *            must be between 0 and 1.
+     */
+    public QuantileSketch(double relativeAccuracy) {
+        if(!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new IllegalArgumentException(
+                "Invalid relative accuracy: " + relativeAccuracy);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        logGamma = Math.log(gamma);
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param val
+     */
+    public void add(double val) {
+        if(!(val >= 0)) {
+            // NaN or negative
+            return;
+        }
+        count++;
+        if(val < min) {
+            min = val;
+        }
+        if(val > max) {
+            max = val;
+        }
+        if(val < MIN_INDEXABLE) {
+            zeroCount++;
+            return;
+        }
+        int index = (int)Math.ceil(Math.log(val) / logGamma);
+        ensureIndex(index);
+        counts[index - offset]++;
+    }
+
+    /**
+     * Adds the given values.
+     *
+     * @param vals
+     */
+    public void add(double[] vals) {
+        for(double val : vals) {
+            add(val);
+        }
+    }
+
+    /**
+     * Makes sure there is a bin for the given index.
+     *
+     * @param index
+     */
+    private void ensureIndex(int index) {
+        if(counts == null) {
+            offset = index;
+            counts = new long[16];
+            return;
+        }
+        if(index < offset) {
+            int grow = Math.max(offset - index, counts.length / 2);
+            long[] newCounts = new long[counts.length + grow];
+            System.arraycopy(counts, 0, newCounts, grow, counts.length);
+            counts = newCounts;
+            offset -= grow;
+        } else if(index - offset >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(index - offset + 1,
+                counts.length + counts.length / 2));
+        }
+    }
+
+    /**
+     * Merges the counts from the given QuantileSketch into this one.
+     *
+     * @param other
+     * @return This QuantileSketch.
+     * @throws IllegalArgumentException If the accuracies are not the same.
+     */
+    public QuantileSketch merge(QuantileSketch other) {
+        if(other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException(
+                "Cannot merge sketches with different accuracies");
+        }
+        if(other.count == 0) {
+            return this;
+        }
+        if(other.counts != null) {
+            ensureIndex(other.offset);
+            ensureIndex(other.offset + other.counts.length - 1);
+            int start = other.offset - offset;
+            for(int i = 0; i < other.counts.length; i++) {
+                counts[start + i] += other.counts[i];
+            }
+        }
+        zeroCount += other.zeroCount;
+        count += other.count;
+        if(other.min < min) {
+            min = other.min;
+        }
+        if(other.max > max) {
+            max = other.max;
+        }
+        return this;
+    }
+
+    /**
+     * Gets the value at the given quantile.
+     *
+     * @param q The quantile from 0 to 1, such as .5 for the median.
+     * @return The value or NaN if there are no values.
+     */
+    public double getQuantile(double q) {
+        if(count == 0) {
+            return Double.NaN;
+        }
+        if(q <= 0) {
+            return min;
+        }
+        if(q >= 1) {
+            return max;
+        }
+        long rank = (long)(q * (count - 1));
+        long n = zeroCount;
+        if(rank < n) {
+            return min;
+        }
+        double val = max;
+        if(counts != null) {
+            for(int i = 0; i < counts.length; i++) {
+                n += counts[i];
+                if(rank < n) {
+                    // The value with the same relative error to both bounds
+                    val = 2 * Math.exp((i + offset) * logGamma) / (gamma + 1);
+                    break;
+                }
+            }
+        }
+        return Math.max(min, Math.min(max, val));
+    }
+
+    /**
+     * Writes the sketch to bytes that can be read with fromBytes.
+     *
+     * @return
+     */
+    public byte[] toBytes() {
+        // Only the bins from the first to the last used one
+        int first = 0;
+        int last = -1;
+        if(counts != null) {
+            while(first < counts.length && counts[first] == 0) {
+                first++;
+            }
+            last = counts.length - 1;
+            while(last >= first && counts[last] == 0) {
+                last--;
+            }
+        }
+        int nBins = last - first + 1;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+            48 + 8 * Math.max(nBins, 0));
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(VERSION);
+            out.writeDouble(relativeAccuracy);
+            out.writeLong(count);
+            out.writeLong(zeroCount);
+            out.writeDouble(min);
+            out.writeDouble(max);
+            out.writeInt(offset + first);
+            out.writeInt(Math.max(nBins, 0));
+            for(int i = first; i <= last; i++) {
+                out.writeLong(counts[i]);
+            }
+            out.flush();
+        } catch(IOException ex) {
+            // Not thrown by a ByteArrayOutputStream
+            throw new IllegalStateException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a sketch from the bytes from toBytes.
+     *
+     * @param data
+     * @return The sketch.
+     * @throws IOException If the bytes are not a sketch.
+     */
+    public static QuantileSketch fromBytes(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+            data));
+        int version = in.readInt();
+        if(version != VERSION) {
+            throw new IOException("Unsupported QuantileSketch version "
+                + version);
+        }
+        QuantileSketch sketch;
+        try {
+            sketch = new QuantileSketch(in.readDouble());
+        } catch(IllegalArgumentException ex) {
+            throw new IOException("Invalid QuantileSketch", ex);
+        }
+        sketch.count = in.readLong();
+        sketch.zeroCount = in.readLong();
+        sketch.min = in.readDouble();
+        sketch.max = in.readDouble();
+        int offset = in.readInt();
+        int nBins = in.readInt();
+        if(nBins < 0 || nBins > data.length / 8) {
+            throw new IOException("Invalid QuantileSketch bin count " + nBins);
+        }
+        if(nBins > 0) {
+            sketch.offset = offset;
+            sketch.counts = new long[nBins];
+            for(int i = 0; i < nBins; i++) {
+                sketch.counts[i] = in.readLong();
+            }
+        }
+        return sketch;
+    }
+
+    /**
+     * @return The value of relativeAccuracy.
+     */
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    /**
+     * @return The number of values.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The minimum or NaN if there are no values.
+     */
+    public double getMin() {
+        return count > 0 ? min : Double.NaN;
+    }
+
+    /**
+     * @return The maximum or NaN if there are no values.
+     */
+    public double getMax() {
+        return count > 0 ? max : Double.NaN;
+    }
+
+}
@@ -2,20 +2,21 @@ package net.kenevans.stlviewer.model;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.GregorianCalendar;
 import java.util.List;
-import java.util.Locale;
-import java.util.TimeZone;
 
 import javax.xml.bind.Binder;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
+import javax.xml.datatype.DatatypeConstants;
 import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.stream.StreamSource;
 
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -30,7 +31,10 @@ import net.kenevans.gpxcombined.TrkType;
 import net.kenevans.gpxcombined.TrksegType;
 import net.kenevans.gpxcombined.WptType;
 import net.kenevans.gpxcombined.parser.GPXParser;
+import net.kenevans.stlviewer.utils.ArrayKernels;
 import net.kenevans.stlviewer.utils.GpxUtils;
+import net.kenevans.stlviewer.utils.IsoTimeParser;
+import net.kenevans.stlviewer.utils.MinMaxPyramid;
 
 /*
  * Created on Jul 8, 2014
@@ -38,164 +42,468 @@ import net.kenevans.stlviewer.utils.GpxUtils;
  */
 
 /**
- * STLFileModel is a model for STL data.
+ * STLFileModel is a model for STL data.<br>
+ * <br>
+ * The time, position, elevation, and HR values are stored when the file is
+ * read. The speed and elevation in ft are derived from them the first time
+ * they are asked for, so a channel that is never plotted costs nothing
+ * beyond the raw values. getInfo only summarizes the channels that have been
+ * derived.
  * 
  * @author Kenneth Evans, Jr.
  */
 public class STLFileModel implements IConstants
 {
+    /** The value refresh returns when all of the values were read again. */
+    public static final int REFRESH_ALL = -1;
+    /** The value refresh returns when the file could not be read. */
+    public static final int REFRESH_FAILED = -2;
+
+    /** The shared JAXBContext, created when first needed. */
+    private static JAXBContext jaxbContext;
+
     private String fileName;
+    private ParseMode parseMode;
     private GpxType gpx;
+    /** Whether the GpxType is released after the values are extracted. */
+    private boolean lean;
     private long[] hrTimeVals;
     private double[] hrVals;
     private long[] speedTimeVals;
     private double[] speedVals;
     private long[] timeVals;
     private double[] eleVals;
+    /** Latitude in deg, NaN at segment breaks. Released after deriveSpeed. */
+    private double[] latVals;
+    /** Longitude in deg, NaN at segment breaks. Released after deriveSpeed. */
+    private double[] lonVals;
+    /** Elevation in m, NaN at segment breaks. Released after deriveEle. */
+    private double[] eleMeterVals;
     private int nTracks;
     private int nSegments;
     private int nTrackPoints;
     private int nHrValues;
+    private int nMalformedBpmLines;
     private long startTime = Long.MAX_VALUE;
     private long endTime;
     private long startHrTime = Long.MAX_VALUE;
     private long endHrTime;
-    private double distance;
+    /** The distance in m or NaN if it has not been found. */
+    private double distance = Double.NaN;
+    /** The time at each HR, found when first used. */
+    private HrZoneTimes hrZoneTimes;
+    /** The distributions of the HR and speed, found when first used. */
+    private volatile QuantileSketch hrSketch;
+    private volatile QuantileSketch speedSketch;
+    /** The best HR and speed efforts, found when first used. */
+    private BestEfforts hrBestEfforts;
+    private BestEfforts speedBestEfforts;
+    /** The levels of detail for plotting, found when first used. */
+    private volatile MinMaxPyramid hrPyramid;
+    private volatile MinMaxPyramid speedPyramid;
+    private volatile MinMaxPyramid elePyramid;
+    /** Whether the values were read without error. */
+    private boolean loaded;
+    /** Whether the values came from the TrackCache. */
+    private boolean fromCache;
 
-    SimpleDateFormat oruxMapsBpmFormatter;
+    /** The state of the speed derivation, so it can be continued. */
+    private double prevSpeedTime = -1;
+    private double prevSpeedLat;
+    private double prevSpeedLon;
 
+    /**
+     * The TrackAccumulator and Checkpoint for refresh, or null if the file
+     * was not read with MappedGpxScanner.extractAppended.
+     */
+    private TrackAccumulator appendAcc;
+    private MappedGpxScanner.Checkpoint checkpoint;
+    /** The size and last-modified time when the file was last read. */
+    private long readSize;
+    private long readLastModified;
+    /** The error from the last refresh or null if it succeeded. */
+    private Exception refreshError;
+
+    /**
+     * STLFileModel constructor that uses ParseMode.JAXB.
+     * 
+     * @param fileName
+     */
     public STLFileModel(String fileName) {
+        this(fileName, ParseMode.JAXB);
+    }
+
+    /**
+     * STLFileModel constructor.
+     * 
+     * @param fileName
+     * @param parseMode How to get the values from the file.
+     */
+    public STLFileModel(String fileName, ParseMode parseMode) {
+        this(fileName, parseMode, false);
+    }
+
+    /**
+     * STLFileModel constructor.
+     * 
+     * @param fileName
+     * @param parseMode How to get the values from the file.
+     * @param lean Whether to release the GpxType once the values have been
+     *            extracted from it. getGpx and printTracks then parse the file
+     *            again when they are used. This only matters for
+     *            ParseMode.JAXB, since the other modes do not make a GpxType.
+     */
+    public STLFileModel(String fileName, ParseMode parseMode, boolean lean) {
         this.fileName = fileName;
+        this.parseMode = parseMode;
+        this.lean = lean;
         try {
-            this.gpx = openFile(fileName);
+            read(null);
         } catch(Exception ex) {
             ex.printStackTrace();
             Utils.excMsg("Error reading " + fileName, ex);
         }
 
-        // Create binder for marshalling
-        // net.kenevans.gpxtrackpointextensionv2.TrackPointExtensionT
-        Class<net.kenevans.gpxtrackpointextensionv2.TrackPointExtensionT> trackPointExtensionTClass = net.kenevans.gpxtrackpointextensionv2.TrackPointExtensionT.class;
-        Binder<Node> binder = null;
+        // // DEBUG
+        // dumpTimeArray("hrTimeVals", hrTimeVals);
+        // dumpTimeArray("speedTimeVals", hrTimeVals);
+        // dumpTimeArray("timeVals", hrTimeVals);
+        //
+        // dumpDoubleArray("hrVals", hrVals);
+        // dumpDoubleArray("speedVals", speedVals);
+        // dumpDoubleArray("eleVals", eleVals);
+    }
+
+    /**
+     * STLFileModel constructor used by a ModelLoader. Errors are thrown
+     * rather than shown.
+     * 
+     * @param fileName
+     * @param parseMode How to get the values from the file.
+     * @param lean Whether to release the GpxType.
+     * @param loader The ModelLoader that is notified of the progress and can
+     *            cancel the read.
+     * @throws Exception
+     * @throws java.util.concurrent.CancellationException If it was cancelled.
+     */
+    STLFileModel(String fileName, ParseMode parseMode, boolean lean,
+        ModelLoader loader) throws Exception {
+        this.fileName = fileName;
+        this.parseMode = parseMode;
+        this.lean = lean;
+        read(loader);
+    }
+
+    /**
+     * Reads the file with the ParseMode. The values that were extracted are
+     * set even if there is an error.
+     * 
+     * @param loader A ModelLoader to notify of the progress or null.
+     * @throws Exception
+     */
+    private void read(ModelLoader loader) throws Exception {
+        TrackAccumulator acc = newAccumulator(loader);
+        boolean compressed = GpxSource.isCompressed(fileName);
+        File dataFile = GpxSource.getFile(fileName);
+        readSize = dataFile.length();
+        readLastModified = dataFile.lastModified();
         try {
-            ObjectFactory objectFactory = new ObjectFactory();
-            JAXBContext jc = JAXBContext.newInstance(objectFactory.getClass());
-            binder = jc.createBinder();
-        } catch(JAXBException ex) {
-            binder = null;
+            switch(parseMode) {
+            case STREAMING:
+                extractStream(fileName, acc);
+                break;
+            case PARALLEL:
+                byte[] bytes = compressed ? GpxSource.readAllBytes(fileName)
+                    : Files.readAllBytes(new File(fileName).toPath());
+                if(loader != null) {
+                    loader.setBytesRead(bytes.length);
+                }
+                new ParallelGpxExtractor(acc).extract(bytes);
+                break;
+            case MAPPED:
+                // Compressed data cannot be scanned directly, so stream it
+                if(compressed) {
+                    extractStream(fileName, acc);
+                } else if(!new MappedGpxScanner(acc)
+                    .extract(new File(fileName))) {
+                    // It may be a file that is still being written
+                    acc = newAccumulator(loader);
+                    checkpoint = new MappedGpxScanner(acc)
+                        .extractAppended(new File(fileName), null);
+                    if(checkpoint != null) {
+                        appendAcc = acc;
+                    } else {
+                        // Use the full parser
+                        acc = newAccumulator(loader);
+                        extractStream(fileName, acc);
+                    }
+                }
+                break;
+            default:
+                GpxType gpxType = openFile(fileName);
+                if(loader != null) {
+                    loader.setBytesRead(readSize);
+                }
+                extractFromGpx(gpxType, acc);
+                if(!lean) {
+                    gpx = gpxType;
+                }
+                break;
+            }
+            loaded = true;
+        } finally {
+            acc.setLoader(null);
+            setFromAccumulator(acc);
+            if(appendAcc != null) {
+                appendAcc.clearColumns();
+            }
+        }
+    }
+
+    /**
+     * Makes a TrackAccumulator that notifies the given ModelLoader.
+     * 
+     * @param loader The ModelLoader or null.
+     * @return
+     */
+    private static TrackAccumulator newAccumulator(ModelLoader loader) {
+        TrackAccumulator acc = new TrackAccumulator();
+        if(loader != null) {
+            loader.restart();
+            acc.setLoader(loader);
+        }
+        return acc;
+    }
+
+    /**
+     * STLFileModel constructor that uses values that have already been
+     * extracted.
+     * 
+     * @param fileName
+     * @param acc
+     * @param fromCache
+     */
+    private STLFileModel(String fileName, TrackAccumulator acc,
+        boolean fromCache) {
+        this.fileName = fileName;
+        this.parseMode = ParseMode.STREAMING;
+        this.fromCache = fromCache;
+        this.loaded = true;
+        setFromAccumulator(acc);
+    }
+
+    /**
+     * Gets a model for the given file using the TrackCache if it is valid for
+     * the file and ParseMode.MAPPED otherwise. A newly parsed file is
+     * written to the cache.
+     * 
+     * @param fileName
+     * @return
+     */
+    public static STLFileModel load(String fileName) {
+        return load(fileName, ParseMode.MAPPED);
+    }
+
+    /**
+     * Gets a model for the given file using the TrackCache if it is valid for
+     * the file and the given ParseMode otherwise. A newly parsed file is
+     * written to the cache. Models read from the cache do not keep a
+     * GpxType.
+     * 
+     * @param fileName
+     * @param parseMode
+     * @return
+     */
+    public static STLFileModel load(String fileName, ParseMode parseMode) {
+        try {
+            return load(fileName, parseMode, null);
+        } catch(Exception ex) {
+            // Not thrown without a ModelLoader
+            return null;
+        }
+    }
+
+    /**
+     * Gets a model as for load(String, ParseMode). If there is a ModelLoader,
+     * errors are thrown rather than shown.
+     * 
+     * @param fileName
+     * @param parseMode
+     * @param loader A ModelLoader to notify of the progress or null.
+     * @return
+     * @throws Exception
+     */
+    static STLFileModel load(String fileName, ParseMode parseMode,
+        ModelLoader loader) throws Exception {
+        File file = new File(fileName);
+        // The zip file for a zip entry
+        File dataFile = GpxSource.getFile(fileName);
+        TrackAccumulator acc = new TrackAccumulator();
+        if(TrackCache.read(file, acc)) {
+            if(loader != null) {
+                loader.setBytesRead(dataFile.length());
+                loader.pointsAdded(acc.nTrackPoints);
+            }
+            return new STLFileModel(fileName, acc, true);
+        }
+        long size = dataFile.length();
+        long lastModified = dataFile.lastModified();
+        STLFileModel model = loader == null ? new STLFileModel(fileName,
+            parseMode) : new STLFileModel(fileName, parseMode, false, loader);
+        if(model.loaded) {
+            TrackCache.write(file, size, lastModified, model);
         }
+        return model;
+    }
+
+    /**
+     * Updates the values for a file that may have been appended to since it
+     * was read, as when it is still being recorded. If the file was read up
+     * to a Checkpoint and has only been appended to, only the new track
+     * points are parsed and added to the end of the values. Otherwise the
+     * whole file is read again, up to its last complete track point, so that
+     * later refreshes can append.
+     * 
+     * @return The number of track points added, REFRESH_ALL if all of the
+     *         values were read again and may have changed, or REFRESH_FAILED
+     *         if the file could not be read. Then the old values are kept and
+     *         the error is returned by getRefreshError.
+     */
+    public synchronized int refresh() {
+        refreshError = null;
+        File dataFile = GpxSource.getFile(fileName);
+        long size = dataFile.length();
+        long lastModified = dataFile.lastModified();
+        if(loaded && size == readSize && lastModified == readLastModified) {
+            return 0;
+        }
+        readSize = size;
+        readLastModified = lastModified;
+        if(checkpoint != null) {
+            try {
+                MappedGpxScanner.Checkpoint next = new MappedGpxScanner(
+                    appendAcc).extractAppended(new File(fileName),
+                        checkpoint);
+                if(next != null) {
+                    int nOld = nTrackPoints;
+                    appendFromAccumulator(appendAcc);
+                    checkpoint = next;
+                    return nTrackPoints - nOld;
+                }
+            } catch(IOException ex) {
+                // Read it again below
+            }
+        }
+
+        // Read it all again
+        gpx = null;
+        fromCache = false;
+        appendAcc = null;
+        checkpoint = null;
+        TrackAccumulator acc = new TrackAccumulator();
+        try {
+            if(!GpxSource.isCompressed(fileName)) {
+                checkpoint = new MappedGpxScanner(acc)
+                    .extractAppended(new File(fileName), null);
+            }
+            if(checkpoint != null) {
+                appendAcc = acc;
+            } else {
+                acc = new TrackAccumulator();
+                extractStream(fileName, acc);
+            }
+            loaded = true;
+        } catch(Exception ex) {
+            // Keep the old values, and try again on the next refresh
+            refreshError = ex;
+            checkpoint = null;
+            appendAcc = null;
+            readSize = -1;
+            return REFRESH_FAILED;
+        }
+        setFromAccumulator(acc);
+        if(appendAcc != null) {
+            appendAcc.clearColumns();
+        }
+        return REFRESH_ALL;
+    }
+
+    /**
+     * @return The error from the last refresh or null if it succeeded.
+     */
+    public synchronized Exception getRefreshError() {
+        return refreshError;
+    }
+
+    /**
+     * Extracts the tracks from the given file, which may be compressed, with
+     * a GpxStreamExtractor.
+     * 
+     * @param fileName
+     * @param acc
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    private static void extractStream(String fileName, TrackAccumulator acc)
+        throws IOException, XMLStreamException {
+        InputStream in = GpxSource.open(fileName);
+        if(acc.getLoader() != null) {
+            in = acc.getLoader().countBytes(in);
+        }
+        try {
+            new GpxStreamExtractor(acc).extract(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Walks the tracks in the given GpxType and passes the values to the
+     * given TrackAccumulator.
+     * 
+     * @param gpx
+     * @param acc
+     */
+    static void extractFromGpx(GpxType gpx, TrackAccumulator acc) {
+        // Only created if a TrackPointExtension cannot be decoded directly
+        Binder<Node> binder = null;
+        TrackPointExtensionDecoder tpeDecoder = new TrackPointExtensionDecoder();
 
-        ArrayList<Long> timeValsArray = new ArrayList<Long>();
-        ArrayList<Long> speedTimeValsArray = new ArrayList<Long>();
-        ArrayList<Double> speedValsArray = new ArrayList<Double>();
-        ArrayList<Double> eleValsArray = new ArrayList<Double>();
-        ArrayList<Long> hrTimeValsArray = new ArrayList<Long>();
-        ArrayList<Double> hrValsArray = new ArrayList<Double>();
         BigDecimal bdVal;
-        String bpm;
-        double val;
+        double ele, hr;
         long time;
         ExtensionsType extensions;
-
         Oruxmapsextensions oruxMapsExt;
-        boolean usingOruxMapBpm = false;
-        boolean res;
-        XMLGregorianCalendar xgcal;
-        GregorianCalendar gcal;
-
-        oruxMapsBpmFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'",
-            Locale.US);
-        oruxMapsBpmFormatter.setTimeZone(TimeZone.getTimeZone("GMT"));
 
         // Get the tracks
-        long lastTimeValue = -1;
         List<TrkType> tracks = gpx.getTrk();
         for(TrkType track : tracks) {
-            nTracks++;
+            acc.startTrack();
             // Check for an OruxMaps extension
-            usingOruxMapBpm = false;
             extensions = track.getExtensions();
             if(extensions != null) {
                 List<Object> objects = extensions.getAny();
                 for(Object object : objects) {
-                    oruxMapsExt = null;
                     if(object instanceof Oruxmapsextensions) {
                         oruxMapsExt = (Oruxmapsextensions)object;
-                        bpm = oruxMapsExt.getBpm();
-                        if(bpm != null && bpm.length() > 0) {
-                            res = getHrFromOruxMapsBpm(bpm, hrValsArray,
-                                hrTimeValsArray);
-                            if(res) {
-                                usingOruxMapBpm = true;
-                            }
-                        }
+                        acc.setOruxMapsBpm(oruxMapsExt.getBpm());
                         break;
                     }
                 }
             }
             List<TrksegType> trackSegments = track.getTrkseg();
             for(TrksegType trackSegment : trackSegments) {
-                nSegments++;
-                if(nSegments > 1) {
-                    // Use NaN to make a break between segments but don't count
-                    // as a HR value
-                    hrValsArray.add(Double.NaN);
-                    hrTimeValsArray.add(lastTimeValue);
-                    speedValsArray.add(Double.NaN);
-                    speedTimeValsArray.add(lastTimeValue);
-                    eleValsArray.add(Double.NaN);
-                    timeValsArray.add(lastTimeValue);
-                }
-                double deltaLength, speed;
-                double prevTime = -1;
-                double deltaTime;
-                double lat = 0, lon = 0, prevLat = 0, prevLon = 0;
+                acc.startSegment();
                 List<WptType> trackPoints = trackSegment.getTrkpt();
                 for(WptType tpt : trackPoints) {
-                    nTrackPoints++;
-                    xgcal = tpt.getTime();
-                    gcal = xgcal.toGregorianCalendar(
-                        TimeZone.getTimeZone("GMT"), null, null);
-                    // Consider gcal.getTimeInMillis()
-                    time = gcal.getTime().getTime();
-                    if(time < startTime) {
-                        startTime = time;
-                    }
-                    if(time > endTime) {
-                        endTime = time;
-                    }
-                    timeValsArray.add(time);
-                    // Speed
-                    lat = tpt.getLat().doubleValue();
-                    lon = tpt.getLon().doubleValue();
-                    if(prevTime != -1) {
-                        // Should be the second track point
-                        deltaLength = GpxUtils.greatCircleDistance(prevLat,
-                            prevLon, lat, lon);
-                        distance += deltaLength;
-                        deltaTime = time - prevTime;
-                        speed = deltaTime > 0 ? 1000. * deltaLength / deltaTime
-                            : 0;
-                        // Convert from m/sec to mi/hr
-                        speedValsArray
-                            .add(speed * GpxUtils.M2MI / GpxUtils.SEC2HR);
-                        speedTimeValsArray
-                            .add(time - Math.round(.5 * deltaTime));
-                    }
-                    prevTime = time;
-                    prevLat = lat;
-                    prevLon = lon;
+                    time = toMillis(tpt.getTime());
                     // Ele
                     bdVal = tpt.getEle();
-                    // Convert from m to ft
-                    if(bdVal != null) {
-                        eleValsArray.add(bdVal.doubleValue() * GpxUtils.M2FT);
-                    } else {
-                        eleValsArray.add(0.0);
-                    }
+                    ele = bdVal != null ? bdVal.doubleValue() : Double.NaN;
                     // Check extensions for HR
+                    hr = Double.NaN;
                     extensions = tpt.getExtensions();
-                    if(!usingOruxMapBpm && extensions != null) {
+                    if(!acc.isUsingOruxMapBpm() && extensions != null) {
                         List<Object> objects = extensions.getAny();
                         for(Object object : objects) {
                             // System.out.println(object + " class=" +
@@ -207,103 +515,334 @@ public class STLFileModel implements IConstants
                                     TrackPointExtensionT trackPointExt = (TrackPointExtensionT)element
                                         .getValue();
                                     if(trackPointExt != null) {
-                                        val = trackPointExt.getHr();
-                                        hrValsArray.add(val);
-                                        hrTimeValsArray.add(time);
-                                        lastTimeValue = time;
-                                        if(time < startHrTime) {
-                                            startHrTime = time;
-                                        }
-                                        if(time > endHrTime) {
-                                            endHrTime = time;
-                                        }
-                                        nHrValues++;
-                                        // System.out.println(val + " " +
-                                        // date.getTime());
+                                        hr = trackPointExt.getHr();
                                         break;
                                     }
                                 }
                             } else if(object instanceof Node) {
                                 Node node = (Node)object;
-                                if(node.getNodeName().contains(
-                                    "trackPointExtensionT") && binder != null) {
-                                    JAXBElement<net.kenevans.gpxtrackpointextensionv2.TrackPointExtensionT> element = null;
-                                    try {
-                                        element = binder.unmarshal(node,
-                                            trackPointExtensionTClass);
-                                    } catch(JAXBException ex) {
-                                        System.out.println("Cannot parse "
-                                            + node.getNodeName());
-                                    }
-                                    if(element != null) {
-                                        net.kenevans.gpxtrackpointextensionv2.TrackPointExtensionT trackPointExt = (net.kenevans.gpxtrackpointextensionv2.TrackPointExtensionT)element
-                                            .getValue();
-                                        if(trackPointExt != null) {
-                                            val = trackPointExt.getHr();
-                                            hrValsArray.add(val);
-                                            hrTimeValsArray.add(time);
-                                            lastTimeValue = time;
-                                            if(time < startHrTime) {
-                                                startHrTime = time;
-                                            }
-                                            if(time > endHrTime) {
-                                                endHrTime = time;
-                                            }
-                                            nHrValues++;
-                                            // System.out.println(val + " " +
-                                            // date.getTime());
-                                            break;
-                                        }
+                                if(TrackPointExtensionDecoder
+                                    .isTrackPointExtension(
+                                        TrackPointExtensionDecoder
+                                            .getLocalName(node))) {
+                                    // NaN if it has no hr
+                                    tpeDecoder.decode(node);
+                                    hr = tpeDecoder.getHr();
+                                } else if(node.getNodeName()
+                                    .contains("trackPointExtensionT")) {
+                                    // Not a name the decoder knows
+                                    if(binder == null) {
+                                        binder = createBinder();
                                     }
+                                    hr = unmarshalHr(binder, node);
+                                } else {
+                                    continue;
+                                }
+                                // Only use the first TrackPointExtension with
+                                // a HR
+                                if(!Double.isNaN(hr)) {
+                                    break;
                                 }
                             }
                         }
                     }
+                    acc.addTrackPoint(time, tpt.getLat().doubleValue(),
+                        tpt.getLon().doubleValue(), ele, hr);
                 }
-            } // if(extensions != null)
+            }
         }
-        hrVals = new double[hrValsArray.size()];
+    }
 
-        int index = 0;
-        for(Double dVal : hrValsArray) {
-            hrVals[index++] = dVal.doubleValue();
+    /**
+     * Gets the JAXBContext for the GPX classes. It is created the first time
+     * it is needed and then shared.
+     * 
+     * @return
+     * @throws JAXBException
+     */
+    static synchronized JAXBContext getJAXBContext() throws JAXBException {
+        if(jaxbContext == null) {
+            jaxbContext = JAXBContext.newInstance(ObjectFactory.class);
         }
-        hrTimeVals = new long[hrTimeValsArray.size()];
-        index = 0;
-        for(Long lVal : hrTimeValsArray) {
-            hrTimeVals[index++] = lVal.longValue();
+        return jaxbContext;
+    }
+
+    /**
+     * Creates a Binder for TrackPointExtension nodes with names that the
+     * TrackPointExtensionDecoder does not recognize.
+     * 
+     * @return The Binder or null if it cannot be created.
+     */
+    private static Binder<Node> createBinder() {
+        try {
+            return getJAXBContext().createBinder();
+        } catch(JAXBException ex) {
+            return null;
         }
-        // Speed
-        speedVals = new double[speedValsArray.size()];
-        index = 0;
-        for(Double dVal : speedValsArray) {
-            speedVals[index++] = dVal.doubleValue();
+    }
+
+    /**
+     * Gets the HR from a TrackPointExtension Node with JAXB.
+     * 
+     * @param binder
+     * @param node
+     * @return The HR or NaN if it cannot be found.
+     */
+    private static double unmarshalHr(Binder<Node> binder, Node node) {
+        if(binder == null) {
+            return Double.NaN;
         }
-        speedTimeVals = new long[speedTimeValsArray.size()];
-        index = 0;
-        for(Long lVal : speedTimeValsArray) {
-            speedTimeVals[index++] = lVal.longValue();
+        JAXBElement<net.kenevans.gpxtrackpointextensionv2.TrackPointExtensionT> element = null;
+        try {
+            element = binder.unmarshal(node,
+                net.kenevans.gpxtrackpointextensionv2.TrackPointExtensionT.class);
+        } catch(JAXBException ex) {
+            System.out.println("Cannot parse " + node.getNodeName());
         }
-        // Ele
-        eleVals = new double[eleValsArray.size()];
-        index = 0;
-        for(Double dVal : eleValsArray) {
-            eleVals[index++] = dVal.doubleValue();
+        if(element != null) {
+            net.kenevans.gpxtrackpointextensionv2.TrackPointExtensionT trackPointExt = element
+                .getValue();
+            if(trackPointExt != null && trackPointExt.getHr() != null) {
+                return trackPointExt.getHr();
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Converts an XMLGregorianCalendar to ms without creating a Calendar. A
+     * missing time zone is taken as GMT.
+     * 
+     * @param xgcal
+     * @return
+     */
+    static long toMillis(XMLGregorianCalendar xgcal) {
+        int millis = xgcal.getMillisecond();
+        if(millis == DatatypeConstants.FIELD_UNDEFINED) {
+            millis = 0;
         }
-        timeVals = new long[timeValsArray.size()];
-        index = 0;
-        for(Long lVal : timeValsArray) {
-            timeVals[index++] = lVal.longValue();
+        int offset = xgcal.getTimezone();
+        if(offset == DatatypeConstants.FIELD_UNDEFINED) {
+            offset = 0;
         }
+        return IsoTimeParser.toMillis(xgcal.getYear(), xgcal.getMonth(),
+            xgcal.getDay(), xgcal.getHour(), xgcal.getMinute(),
+            xgcal.getSecond(), millis, offset);
+    }
 
-        // // DEBUG
-        // dumpTimeArray("hrTimeVals", hrTimeVals);
-        // dumpTimeArray("speedTimeVals", hrTimeVals);
-        // dumpTimeArray("timeVals", hrTimeVals);
-        //
-        // dumpDoubleArray("hrVals", hrVals);
-        // dumpDoubleArray("speedVals", speedVals);
-        // dumpDoubleArray("eleVals", eleVals);
+    /**
+     * Sets the arrays and the totals from the given TrackAccumulator.
+     * 
+     * @param acc
+     */
+    private void setFromAccumulator(TrackAccumulator acc) {
+        // Nothing is derived yet
+        speedVals = null;
+        speedTimeVals = null;
+        eleVals = null;
+        distance = Double.NaN;
+        prevSpeedTime = -1;
+        hrZoneTimes = null;
+        hrSketch = null;
+        speedSketch = null;
+        hrBestEfforts = null;
+        speedBestEfforts = null;
+        hrPyramid = null;
+        speedPyramid = null;
+        elePyramid = null;
+        latVals = null;
+        lonVals = null;
+        eleMeterVals = null;
+        hrVals = acc.hrValsArray.trimToSize();
+        hrTimeVals = acc.hrTimeValsArray.trimToSize();
+        timeVals = acc.timeValsArray.trimToSize();
+        latVals = acc.latValsArray.trimToSize();
+        lonVals = acc.lonValsArray.trimToSize();
+        eleMeterVals = acc.eleValsArray.trimToSize();
+        nTracks = acc.nTracks;
+        nSegments = acc.nSegments;
+        nTrackPoints = acc.nTrackPoints;
+        nHrValues = acc.nHrValues;
+        nMalformedBpmLines = acc.nMalformedBpmLines;
+        startTime = acc.startTime;
+        endTime = acc.endTime;
+        startHrTime = acc.startHrTime;
+        endHrTime = acc.endHrTime;
+    }
+
+    /**
+     * Adds the values in the columns of the given TrackAccumulator to the end
+     * of the values and takes its totals, then clears its columns. Values
+     * that have already been derived are extended.
+     * 
+     * @param acc
+     */
+    private void appendFromAccumulator(TrackAccumulator acc) {
+        long[] newTimeVals = acc.timeValsArray.trimToSize();
+        double[] newLatVals = acc.latValsArray.trimToSize();
+        double[] newLonVals = acc.lonValsArray.trimToSize();
+        double[] newEleVals = acc.eleValsArray.trimToSize();
+        hrVals = concat(hrVals, acc.hrValsArray.trimToSize());
+        hrTimeVals = concat(hrTimeVals, acc.hrTimeValsArray.trimToSize());
+        hrZoneTimes = null;
+        hrSketch = null;
+        speedSketch = null;
+        hrBestEfforts = null;
+        speedBestEfforts = null;
+        hrPyramid = null;
+        speedPyramid = null;
+        elePyramid = null;
+        timeVals = concat(timeVals, newTimeVals);
+        if(speedVals != null) {
+            appendSpeed(newTimeVals, newLatVals, newLonVals);
+        } else {
+            latVals = concat(latVals, newLatVals);
+            lonVals = concat(lonVals, newLonVals);
+            distance = Double.NaN;
+        }
+        if(eleVals != null) {
+            appendEle(newEleVals);
+        } else {
+            eleMeterVals = concat(eleMeterVals, newEleVals);
+        }
+        nTracks = acc.nTracks;
+        nSegments = acc.nSegments;
+        nTrackPoints = acc.nTrackPoints;
+        nHrValues = acc.nHrValues;
+        nMalformedBpmLines = acc.nMalformedBpmLines;
+        startTime = acc.startTime;
+        endTime = acc.endTime;
+        startHrTime = acc.startHrTime;
+        endHrTime = acc.endHrTime;
+        acc.clearColumns();
+    }
+
+    /**
+     * Derives the speed values and the distance from the positions if it has
+     * not been done. The speed is assigned to the midpoint in time between
+     * two track points. There is a NaN at each segment break.
+     */
+    private synchronized void deriveSpeed() {
+        if(speedVals != null) {
+            return;
+        }
+        speedTimeVals = new long[0];
+        speedVals = new double[0];
+        distance = 0;
+        prevSpeedTime = -1;
+        appendSpeed(timeVals, latVals, lonVals);
+        latVals = null;
+        lonVals = null;
+    }
+
+    /**
+     * Derives the speed values for the given positions, continuing from the
+     * last ones, and adds them to the end of the speed values.
+     * 
+     * @param times
+     * @param lats
+     * @param lons
+     */
+    private void appendSpeed(long[] times, double[] lats, double[] lons) {
+        int len = times.length;
+        int nOld = speedVals.length;
+        long[] speedTimes = Arrays.copyOf(speedTimeVals, nOld + len);
+        double[] speeds = Arrays.copyOf(speedVals, nOld + len);
+        int nSpeed = nOld;
+        double dist = distance;
+        double prevTime = prevSpeedTime;
+        double prevLat = prevSpeedLat;
+        double prevLon = prevSpeedLon;
+        double lat, lon, deltaLength, deltaTime, speed;
+        long time;
+        // The distances between the new points, which may be vectorized
+        double[] deltaLengths = new double[len];
+        ArrayKernels.getInstance().consecutiveDistances(lats, lons,
+            deltaLengths);
+        for(int i = 0; i < len; i++) {
+            time = times[i];
+            lat = lats[i];
+            lon = lons[i];
+            if(Double.isNaN(lat)) {
+                // Segment break
+                speedTimes[nSpeed] = time;
+                speeds[nSpeed++] = Double.NaN;
+                prevTime = -1;
+                continue;
+            }
+            if(prevTime != -1) {
+                // The previous point is i - 1 unless it is from before
+                deltaLength = i > 0 ? deltaLengths[i]
+                    : GpxUtils.greatCircleDistance(prevLat, prevLon, lat,
+                        lon);
+                dist += deltaLength;
+                deltaTime = time - prevTime;
+                speed = deltaTime > 0 ? 1000. * deltaLength / deltaTime : 0;
+                // Convert from m/sec to mi/hr
+                speedTimes[nSpeed] = time - Math.round(.5 * deltaTime);
+                speeds[nSpeed++] = speed * GpxUtils.M2MI / GpxUtils.SEC2HR;
+            }
+            prevTime = time;
+            prevLat = lat;
+            prevLon = lon;
+        }
+        if(nSpeed != speeds.length) {
+            speedTimes = Arrays.copyOf(speedTimes, nSpeed);
+            speeds = Arrays.copyOf(speeds, nSpeed);
+        }
+        distance = dist;
+        prevSpeedTime = prevTime;
+        prevSpeedLat = prevLat;
+        prevSpeedLon = prevLon;
+        speedTimeVals = speedTimes;
+        speedVals = speeds;
+    }
+
+    /**
+     * Derives the elevation values in ft from those in m if it has not been
+     * done.
+     */
+    private synchronized void deriveEle() {
+        if(eleVals != null) {
+            return;
+        }
+        eleVals = new double[0];
+        appendEle(eleMeterVals);
+        eleMeterVals = null;
+    }
+
+    /**
+     * Converts the given elevation values in m to ft and adds them to the end
+     * of the elevation values.
+     * 
+     * @param meterVals
+     */
+    private void appendEle(double[] meterVals) {
+        int nOld = eleVals.length;
+        double[] vals = Arrays.copyOf(eleVals, nOld + meterVals.length);
+        for(int i = 0; i < meterVals.length; i++) {
+            // NaN stays NaN
+            vals[nOld + i] = meterVals[i] * GpxUtils.M2FT;
+        }
+        eleVals = vals;
+    }
+
+    private static long[] concat(long[] vals1, long[] vals2) {
+        if(vals2.length == 0) {
+            return vals1;
+        }
+        long[] vals = Arrays.copyOf(vals1, vals1.length + vals2.length);
+        System.arraycopy(vals2, 0, vals, vals1.length, vals2.length);
+        return vals;
+    }
+
+    private static double[] concat(double[] vals1, double[] vals2) {
+        if(vals2.length == 0) {
+            return vals1;
+        }
+        double[] vals = Arrays.copyOf(vals1, vals1.length + vals2.length);
+        System.arraycopy(vals2, 0, vals, vals1.length, vals2.length);
+        return vals;
     }
 
     // // DEBUG
@@ -341,58 +880,11 @@ public class STLFileModel implements IConstants
     // System.out.println(" Min: " + min + " Max: " + max);
     // }
 
-    /**
-     * Gets the HR values for a track from an OxuxMapsExtension.
-     * 
-     * @param bpm The bpm string in the OruxMapsExtyension
-     * @return
-     */
-    boolean getHrFromOruxMapsBpm(String bpm, ArrayList<Double> hrValsArray,
-        ArrayList<Long> hrTimeValsArray) {
-        boolean res = true;
-        double hr;
-        if(bpm == null || bpm.length() == 0) {
-            return false;
-        }
-
-        String[] tokens = bpm.split("\n");
-        String[] vals;
-        long time;
-        for(String token : tokens) {
-            vals = token.split(" ");
-            if(vals == null || vals.length != 2) {
-                continue;
-            }
-            // HR
-            try {
-                hr = Double.parseDouble(vals[0]);
-            } catch(NumberFormatException ex) {
-                hr = Double.NaN;
-            }
-            // Time
-            try {
-                time = oruxMapsBpmFormatter.parse(vals[1]).getTime();
-            } catch(Exception ex) {
-                res = false;
-                continue;
-            }
-            hrValsArray.add(hr);
-            hrTimeValsArray.add(time);
-            if(time < startHrTime) {
-                startHrTime = time;
-            }
-            if(time > endHrTime) {
-                endHrTime = time;
-            }
-            nHrValues++;
-        }
-        return res;
-    }
-
     /**
      * Prints information about the tracks.
      */
     public void printTracks() {
+        GpxType gpx = getGpx();
         if(gpx == null) {
             Utils.errMsg("The GpxType is not defined");
             return;
@@ -438,16 +930,26 @@ public class STLFileModel implements IConstants
     }
 
     /**
-     * Reads the file using a LittleEndianDataInputStream.
+     * Reads the file into a GpxType. Compressed files are unmarshalled from
+     * the decompressed stream.
      * 
      * @param fileName
-     * @return The bytes in the file.
+     * @return The GpxType.
      * @throws IOException
      * @throws JAXBException
      */
     public GpxType openFile(String fileName) throws IOException, JAXBException {
-        File file = new File(fileName);
-        return GPXParser.parse(file);
+        if(!GpxSource.isCompressed(fileName)) {
+            File file = new File(fileName);
+            return GPXParser.parse(file);
+        }
+        InputStream in = GpxSource.open(fileName);
+        try {
+            return getJAXBContext().createUnmarshaller()
+                .unmarshal(new StreamSource(in), GpxType.class).getValue();
+        } finally {
+            in.close();
+        }
     }
 
     /**
@@ -490,6 +992,19 @@ public class STLFileModel implements IConstants
      * @return
      */
     public String getInfo() {
+        return getInfo(null);
+    }
+
+    /**
+     * Gets info about this file. The speed and elevation statistics are only
+     * included if those channels have been derived, as when they are
+     * plotted, so getting the info does not derive them.
+     * 
+     * @param errors A List to which error messages are added rather than
+     *            shown, as when not on the EDT, or null to show them.
+     * @return
+     */
+    public String getInfo(List<String> errors) {
         String info = "";
         info += getFileName() + LS + LS;
         Date startDate = new Date(startTime);
@@ -509,98 +1024,144 @@ public class STLFileModel implements IConstants
         info += "Tracks: " + startDate + " to " + endDate + LS;
         info += String.format("Duration: %d hr %d min %d sec (%.0f sec)",
             durationHours, durationMin, durationSec, duration / 1000.) + LS;
+        double distance = getDistance();
         info += String.format("Distance: %.2f mi", distance * GpxUtils.M2MI)
             + LS;
         info += String.format("Simple Avg Speed: %.2f mi/hr",
             distance / duration * 1000 * GpxUtils.M2MI / GpxUtils.SEC2HR) + LS;
-        double[] stats = null, stats1 = null;
+        // Only summarize the channels that have been derived. Null if not.
+        double[] speedVals;
+        long[] speedTimeVals;
+        double[] eleVals;
+        synchronized(this) {
+            speedVals = this.speedVals;
+            speedTimeVals = this.speedTimeVals;
+            eleVals = this.eleVals;
+        }
+        // One pass per channel, which also makes the sketches if needed
+        ChannelStats stats = new ChannelStats();
         if(nHrValues != 0) {
             info += "HR: " + startHrDate + " to " + endHrDate + LS;
             info += String.format("HR Duration: %d hr %d min %d sec",
                 hrDurationHours, hrDurationMin, hrDurationSec) + LS;
-            stats = getTimeAverageStats(hrVals, hrTimeVals, -Double.MIN_VALUE);
-            if(stats != null) {
+            QuantileSketch sketch = hrSketch;
+            QuantileSketch newSketch = sketch == null ? new QuantileSketch()
+                : null;
+            if(computeStats(stats, hrVals, hrTimeVals, Double.NaN, newSketch,
+                errors) && stats.isValid()) {
+                if(newSketch != null) {
+                    sketch = hrSketch = newSketch;
+                }
                 info += String.format("HR Min=%.0f HR Max=%.0f HR Avg=%.1f",
-                    stats[0], stats[1], stats[2]) + LS;
-            } else {
-                // Get simple average
-                stats = getSimpleStats(hrVals, hrTimeVals, -Double.MIN_VALUE);
-                if(stats != null) {
-                    info += String.format("HR Min=%.0f HR Max=%.0f HR Avg=%.1f"
-                        + " (Simple Average)", stats[0], stats[1], stats[2])
-                        + LS;
+                    stats.getMin(), stats.getMax(), stats.getMean())
+                    + (stats.isTimeAverage() ? "" : " (Simple Average)") + LS;
+                if(sketch.getCount() > 0) {
+                    info += String.format("HR p50=%.0f p90=%.0f p99=%.0f",
+                        sketch.getQuantile(.5), sketch.getQuantile(.9),
+                        sketch.getQuantile(.99)) + LS;
                 }
             }
         }
-        if(speedVals.length != 0) {
-            stats = getTimeAverageStats(speedVals, speedTimeVals,
-                -Double.MIN_VALUE);
-            if(stats != null) {
-                info += String.format(
-                    "Speed Min=%.1f Speed Max=%.1f Speed Avg=%.1f mi/hr",
-                    stats[0], stats[1], stats[2]) + LS;
-            } else {
-                // Get simple average
-                stats = getSimpleStats(speedVals, speedTimeVals,
-                    -Double.MIN_VALUE);
-                if(stats != null) {
-                    info += String
-                        .format(
-                            "Speed Min=%.1f Speed Max=%.1f Speed Avg=%.1f mi/hr"
-                                + " (Simple Average)",
-                            stats[0], stats[1], stats[2])
-                        + LS;
-                }
-            }
+        if(speedVals != null && speedVals.length != 0) {
             // Moving average
             // Convert from m/sec to mi/hr
             double noMoveSpeed = D_SPEED_NOT_MOVING * GpxUtils.M2MI
                 / GpxUtils.SEC2HR;
-            stats = getTimeAverageStats(speedVals, speedTimeVals, noMoveSpeed);
-            if(stats != null) {
-                info += String.format("  Moving Speed Avg=%.1f mi/hr", stats[2])
-                    + LS;
-            } else {
-                // Get simple average
-                stats = getSimpleStats(speedVals, speedTimeVals, noMoveSpeed);
-                if(stats != null) {
+            QuantileSketch sketch = speedSketch;
+            QuantileSketch newSketch = sketch == null ? new QuantileSketch()
+                : null;
+            if(computeStats(stats, speedVals, speedTimeVals, noMoveSpeed,
+                newSketch, errors)) {
+                if(newSketch != null) {
+                    sketch = speedSketch = newSketch;
+                }
+                if(stats.isValid()) {
                     info += String.format(
-                        "  Moving Speed Avg=%.1f mi/hr" + " (Simple Average)",
-                        stats[2]) + LS;
+                        "Speed Min=%.1f Speed Max=%.1f Speed Avg=%.1f mi/hr",
+                        stats.getMin(), stats.getMax(), stats.getMean())
+                        + (stats.isTimeAverage() ? "" : " (Simple Average)")
+                        + LS;
+                }
+                if(sketch.getCount() > 0) {
+                    info += String.format(
+                        "Speed p50=%.1f p90=%.1f p99=%.1f mi/hr",
+                        sketch.getQuantile(.5), sketch.getQuantile(.9),
+                        sketch.getQuantile(.99)) + LS;
+                }
+                if(stats.isMovingValid()) {
+                    info += String.format("  Moving Speed Avg=%.1f mi/hr",
+                        stats.getMovingMean())
+                        + (stats.isMovingTimeAverage() ? ""
+                            : " (Simple Average)")
+                        + LS;
                 }
             }
 
         }
-        if(eleVals.length != 0) {
-            stats = getTimeAverageStats(eleVals, timeVals, -Double.MIN_VALUE);
-            stats1 = getEleStats(eleVals, timeVals);
-            if(stats != null) {
-                info += String.format("Ele Min=%.0f Ele Max=%.0f Ele Avg=%.0f ",
-                    stats[0], stats[1], stats[2]);
-            }
-            if(stats1 != null) {
-                info += String.format("Ele Gain=%.0f Ele Loss=%.0f ft",
-                    stats1[0], stats1[1]) + LS;
-            } else {
-                info += LS;
+        if(eleVals == null) {
+            // Not derived
+        } else if(eleVals.length != 0) {
+            if(computeStats(stats, eleVals, timeVals, Double.NaN, null,
+                errors)) {
+                if(stats.isTimeAverage()) {
+                    info += String.format(
+                        "Ele Min=%.0f Ele Max=%.0f Ele Avg=%.0f ",
+                        stats.getMin(), stats.getMax(), stats.getMean());
+                }
+                if(stats.isGainLossValid()) {
+                    info += String.format("Ele Gain=%.0f Ele Loss=%.0f ft",
+                        stats.getGain(), stats.getLoss()) + LS;
+                } else {
+                    info += LS;
+                }
             }
         } else {
-            // Get simple average
-            stats = getSimpleStats(eleVals, timeVals, -Double.MIN_VALUE);
-            if(stats != null) {
-                info += String
-                    .format("Ele Min=%.0f Ele Max=%.0f Ele Avg=%.1f ft"
-                        + " (Simple Average)", stats[0], stats[1], stats[2])
-                    + LS;
-            }
+            // No values, so the averages are 0
+            info += String.format("Ele Min=%.0f Ele Max=%.0f Ele Avg=%.1f ft"
+                + " (Simple Average)", 0., 0., 0.) + LS;
         }
         info += nTracks + " Tracks" + "        " + nSegments + " Segments:"
             + LS;
         info += nTrackPoints + " Track Points" + "        " + nHrValues
             + " HR Values:" + LS;
+        if(nMalformedBpmLines != 0) {
+            info += nMalformedBpmLines + " Malformed OruxMaps bpm Lines" + LS;
+        }
         return info;
     }
 
+    /**
+     * Computes the statistics for one channel into the given ChannelStats,
+     * omitting negative values as for getInfo.
+     * 
+     * @param stats
+     * @param vals
+     * @param timeVals
+     * @param movingOmitBelow The threshold for the moving mean or NaN.
+     * @param sketch A QuantileSketch to receive the values or null.
+     * @param errors A List for the error message or null to show it.
+     * @return False if the array sizes do not match.
+     */
+    private static boolean computeStats(ChannelStats stats, double[] vals,
+        long[] timeVals, double movingOmitBelow, QuantileSketch sketch,
+        List<String> errors) {
+        stats.setSketch(sketch);
+        boolean ok = stats.compute(vals, timeVals, -Double.MIN_VALUE,
+            movingOmitBelow);
+        stats.setSketch(null);
+        if(!ok) {
+            String msg = "getInfo: Array sizes (vals: " + vals.length
+                + ", timeVals: " + timeVals.length + ") do not match";
+            if(errors != null) {
+                errors.add(msg);
+            } else {
+                Utils.errMsg(msg);
+            }
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Gets the statistics from the given values and time values by averaging
      * over the values, not over the actual time.
@@ -612,45 +1173,26 @@ public class STLFileModel implements IConstants
      */
     public static double[] getSimpleStats(double[] vals, long[] timeVals,
         double omitBelow) {
-        // System.out.println("vals: " + vals.length + ", timeVals: "
-        // + timeVals.length);
-        if(vals.length != timeVals.length) {
+        ChannelStats stats = new ChannelStats();
+        if(!stats.compute(vals, timeVals, omitBelow, Double.NaN)) {
             Utils.errMsg("getSimpleStats: Array sizes (vals: " + vals.length
                 + ", timeVals: " + timeVals.length + ") do not match");
             return null;
         }
-        int len = vals.length;
-        if(len == 0) {
+        if(vals.length == 0) {
             return new double[] {0, 0, 0};
         }
-        double max = -Double.MAX_VALUE;
-        double min = Double.MAX_VALUE;
-        double sum = 0;
-        double val;
-        int nVals = 0;
-        for(int i = 0; i < len; i++) {
-            val = vals[i];
-            if(Double.isNaN(val)) continue;
-            if(val < omitBelow) continue;
-            nVals++;
-            sum += val;
-            if(val > max) {
-                max = val;
-            }
-            if(val < min) {
-                min = val;
-            }
-        }
-        if(nVals == 0) {
+        if(stats.getnUsed() == 0) {
             return null;
         }
-        sum /= nVals;
-        return new double[] {min, max, sum};
+        return new double[] {stats.getMin(), stats.getMax(),
+            stats.getSimpleMean()};
     }
 
     /**
      * Gets the statistics from the given values and time values by averaging
-     * over the values weighted by the time.
+     * over the values weighted by the time. A NaN value is a segment break, and
+     * the time between segments is not counted.
      * 
      * @param vals
      * @param timeVals
@@ -659,62 +1201,20 @@ public class STLFileModel implements IConstants
      */
     public static double[] getTimeAverageStats(double[] vals, long[] timeVals,
         double omitBelow) {
-        // System.out.println("vals: " + vals.length + ", timeVals: "
-        // + timeVals.length);
-        if(vals.length != timeVals.length) {
+        ChannelStats stats = new ChannelStats();
+        if(!stats.compute(vals, timeVals, omitBelow, Double.NaN)) {
             Utils
                 .errMsg("getTimeAverageStats: Array sizes (vals: " + vals.length
                     + ", timeVals: " + timeVals.length + ") do not match");
             return null;
         }
-        int len = vals.length;
-        if(len == 0) {
+        if(vals.length == 0) {
             return new double[] {0, 0, 0};
         }
-        if(len < 2) {
-            return new double[] {vals[0], vals[0], vals[0]};
-        }
-        double max = -Double.MAX_VALUE;
-        double min = Double.MAX_VALUE;
-        double sum = 0;
-        double val;
-        // Check for NaN
-        for(int i = 0; i < len; i++) {
-            val = vals[i];
-            if(Double.isNaN(val)) {
-                return null;
-            }
-        }
-
-        // Loop over values.
-        double totalWeight = 0;
-        double weight;
-        for(int i = 0; i < len; i++) {
-            val = vals[i];
-            if(Double.isNaN(val)) continue;
-            if(val < omitBelow) continue;
-            if(i == 0) {
-                weight = .5 * (timeVals[i + 1] - timeVals[i]);
-            } else if(i == len - 1) {
-                weight = .5 * (timeVals[i] - timeVals[i - 1]);
-            } else {
-                weight = .5 * (timeVals[i] - timeVals[i - 1]);
-            }
-            totalWeight += weight;
-            // Shoudn't happen
-            sum += val * weight;
-            if(val > max) {
-                max = val;
-            }
-            if(val < min) {
-                min = val;
-            }
-        }
-        if(totalWeight == 0) {
+        if(!stats.isTimeAverage()) {
             return null;
         }
-        sum /= (totalWeight);
-        return new double[] {min, max, sum};
+        return new double[] {stats.getMin(), stats.getMax(), stats.getMean()};
     }
 
     /**
@@ -727,35 +1227,19 @@ public class STLFileModel implements IConstants
      * @return {gain, loss} or null on error.
      */
     public static double[] getEleStats(double[] vals, long[] timeVals) {
-        // System.out.println("vals: " + vals.length + ", timeVals: "
-        // + timeVals.length);
-        if(vals.length != timeVals.length) {
+        ChannelStats stats = new ChannelStats();
+        if(!stats.compute(vals, timeVals, -Double.MIN_VALUE, Double.NaN)) {
             Utils.errMsg("getSimpleStats: Array sizes (vals: " + vals.length
                 + ", timeVals: " + timeVals.length + ") do not match");
             return null;
         }
-        int len = vals.length;
-        if(len == 0) {
+        if(vals.length == 0) {
             return new double[] {0, 0};
         }
-        double gain = 0;
-        double loss = 0;
-        double val;
-        int nVals = 0;
-        for(int i = 1; i < len; i++) {
-            val = vals[i] - vals[i - 1];
-            if(Double.isNaN(val)) continue;
-            nVals++;
-            if(val > 0) {
-                gain += val;
-            } else if(val < 0) {
-                loss += -val;
-            }
-        }
-        if(nVals == 0) {
+        if(!stats.isGainLossValid()) {
             return null;
         }
-        return new double[] {gain, loss};
+        return new double[] {stats.getGain(), stats.getLoss()};
     }
 
     /**
@@ -766,10 +1250,78 @@ public class STLFileModel implements IConstants
     }
 
     /**
-     * @return The value of gpx.
+     * @return The value of parseMode.
+     */
+    public ParseMode getParseMode() {
+        return parseMode;
+    }
+
+    /**
+     * @return Whether the values were read without error.
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return Whether the values came from the TrackCache.
+     */
+    public boolean isFromCache() {
+        return fromCache;
+    }
+
+    /**
+     * Gets the GpxType for the file. It is only kept when ParseMode.JAXB was
+     * used without lean. Otherwise the file is parsed again each time and the
+     * result is not kept.
+     * 
+     * @return The GpxType or null if the file cannot be parsed.
      */
     public GpxType getGpx() {
-        return gpx;
+        if(gpx != null) {
+            return gpx;
+        }
+        try {
+            return openFile(fileName);
+        } catch(Exception ex) {
+            Utils.excMsg("Error parsing " + fileName, ex);
+            return null;
+        }
+    }
+
+    /**
+     * @return Whether the GpxType is kept by this model.
+     */
+    public boolean isGpxRetained() {
+        return gpx != null;
+    }
+
+    /**
+     * @return The value of lean.
+     */
+    public boolean isLean() {
+        return lean;
+    }
+
+    /**
+     * Gets the number of bytes used by the value arrays held by this model,
+     * including the array headers. This does not include the GpxType.
+     * 
+     * @return
+     */
+    public long getValuesSize() {
+        return arraySize(hrTimeVals) + arraySize(hrVals)
+            + arraySize(timeVals) + arraySize(speedTimeVals)
+            + arraySize(speedVals) + arraySize(eleVals) + arraySize(latVals)
+            + arraySize(lonVals) + arraySize(eleMeterVals);
+    }
+
+    private static long arraySize(long[] array) {
+        return array == null ? 0 : 16 + 8L * array.length;
+    }
+
+    private static long arraySize(double[] array) {
+        return array == null ? 0 : 16 + 8L * array.length;
     }
 
     /**
@@ -787,16 +1339,18 @@ public class STLFileModel implements IConstants
     }
 
     /**
-     * @return The value of speedTimeVals.
+     * @return The value of speedTimeVals, which are derived on the first call.
      */
     public long[] getSpeedTimeVals() {
+        deriveSpeed();
         return speedTimeVals;
     }
 
     /**
-     * @return The value of speedVals.
+     * @return The value of speedVals, which are derived on the first call.
      */
     public double[] getSpeedVals() {
+        deriveSpeed();
         return speedVals;
     }
 
@@ -807,6 +1361,28 @@ public class STLFileModel implements IConstants
         return timeVals;
     }
 
+    /**
+     * @return The value of latVals, or null if the speed has been derived.
+     */
+    synchronized double[] getLatVals() {
+        return latVals;
+    }
+
+    /**
+     * @return The value of lonVals, or null if the speed has been derived.
+     */
+    synchronized double[] getLonVals() {
+        return lonVals;
+    }
+
+    /**
+     * @return The value of eleMeterVals, or null if the elevation has been
+     *         derived.
+     */
+    synchronized double[] getEleMeterVals() {
+        return eleMeterVals;
+    }
+
     /**
      * @return The value of timeVals.
      */
@@ -815,9 +1391,10 @@ public class STLFileModel implements IConstants
     }
 
     /**
-     * @return The value of eleVals.
+     * @return The value of eleVals, which are derived on the first call.
      */
     public double[] getEleVals() {
+        deriveEle();
         return eleVals;
     }
 
@@ -878,12 +1455,183 @@ public class STLFileModel implements IConstants
     }
 
     /**
-     * @return The value of distance.
+     * @return The number of lines in OruxMaps bpm text that were not used.
      */
-    public double getDistance() {
+    public int getnMalformedBpmLines() {
+        return nMalformedBpmLines;
+    }
+
+    /**
+     * Gets the distance. If the speed has not been derived, it is found from
+     * the positions without deriving the speed and kept until the positions
+     * change.
+     * 
+     * @return The value of distance in m.
+     */
+    public synchronized double getDistance() {
+        if(Double.isNaN(distance) && latVals == null) {
+            // Not loaded
+            return 0;
+        }
+        if(Double.isNaN(distance)) {
+            // Summed in the same order as by appendSpeed
+            double[] deltaLengths = new double[latVals.length];
+            ArrayKernels.getInstance().consecutiveDistances(latVals, lonVals,
+                deltaLengths);
+            double dist = 0;
+            for(double deltaLength : deltaLengths) {
+                if(!Double.isNaN(deltaLength)) {
+                    dist += deltaLength;
+                }
+            }
+            distance = dist;
+        }
         return distance;
     }
 
+    /**
+     * @return Whether the speed values have been derived.
+     */
+    public synchronized boolean isSpeedDerived() {
+        return speedVals != null;
+    }
+
+    /**
+     * @return Whether the elevation values in ft have been derived.
+     */
+    public synchronized boolean isEleDerived() {
+        return eleVals != null;
+    }
+
+    /**
+     * Gets the time at each HR for the whole file. It is found the first time
+     * and kept, so the times in zones for new zone values are found without
+     * going over the HR values again.
+     * 
+     * @return The HrZoneTimes.
+     */
+    public synchronized HrZoneTimes getHrZoneTimes() {
+        if(hrZoneTimes == null) {
+            hrZoneTimes = HrZoneTimes.compute(hrVals, hrTimeVals);
+        }
+        return hrZoneTimes;
+    }
+
+    /**
+     * Gets the distribution of the HR values. It is made the first time it or
+     * getInfo is used and then kept.
+     * 
+     * @return The QuantileSketch.
+     */
+    public synchronized QuantileSketch getHrSketch() {
+        QuantileSketch sketch = hrSketch;
+        if(sketch == null) {
+            sketch = new QuantileSketch();
+            sketch.add(hrVals);
+            hrSketch = sketch;
+        }
+        return sketch;
+    }
+
+    /**
+     * Gets the distribution of the speed values in mi/hr. It is made the first
+     * time it or getInfo is used and then kept.
+     * 
+     * @return The QuantileSketch.
+     */
+    public synchronized QuantileSketch getSpeedSketch() {
+        QuantileSketch sketch = speedSketch;
+        if(sketch == null) {
+            sketch = new QuantileSketch();
+            sketch.add(getSpeedVals());
+            speedSketch = sketch;
+        }
+        return sketch;
+    }
+
+    /**
+     * Gets the best HR efforts over BestEfforts.DEFAULT_WINDOWS. They are found
+     * the first time and kept.
+     * 
+     * @return The BestEfforts.
+     */
+    public synchronized BestEfforts getHrBestEfforts() {
+        if(hrBestEfforts == null) {
+            hrBestEfforts = BestEfforts.compute(hrVals, hrTimeVals, fileName);
+        }
+        return hrBestEfforts;
+    }
+
+    /**
+     * Gets the best speed efforts in mi/hr over BestEfforts.DEFAULT_WINDOWS.
+     * They are found the first time and kept.
+     * 
+     * @return The BestEfforts.
+     */
+    public synchronized BestEfforts getSpeedBestEfforts() {
+        if(speedBestEfforts == null) {
+            speedBestEfforts = BestEfforts.compute(getSpeedVals(),
+                getSpeedTimeVals(), fileName);
+        }
+        return speedBestEfforts;
+    }
+
+    /**
+     * Gets the levels of detail for plotting the HR. They are made the first
+     * time and then kept.
+     * 
+     * @return The MinMaxPyramid.
+     */
+    public synchronized MinMaxPyramid getHrPyramid() {
+        MinMaxPyramid pyramid = hrPyramid;
+        if(pyramid == null) {
+            pyramid = new MinMaxPyramid(hrTimeVals, hrVals);
+            hrPyramid = pyramid;
+        }
+        return pyramid;
+    }
+
+    /**
+     * Gets the levels of detail for plotting the speed. They are made the
+     * first time and then kept.
+     * 
+     * @return The MinMaxPyramid.
+     */
+    public synchronized MinMaxPyramid getSpeedPyramid() {
+        MinMaxPyramid pyramid = speedPyramid;
+        if(pyramid == null) {
+            pyramid = new MinMaxPyramid(getSpeedTimeVals(), getSpeedVals());
+            speedPyramid = pyramid;
+        }
+        return pyramid;
+    }
+
+    /**
+     * Gets the levels of detail for plotting the elevation. They are made the
+     * first time and then kept.
+     * 
+     * @return The MinMaxPyramid.
+     */
+    public synchronized MinMaxPyramid getElePyramid() {
+        MinMaxPyramid pyramid = elePyramid;
+        if(pyramid == null) {
+            pyramid = new MinMaxPyramid(getEleTimeVals(), getEleVals());
+            elePyramid = pyramid;
+        }
+        return pyramid;
+    }
+
+    /**
+     * Gets the time at each HR from startTime to endTime. This is not kept.
+     * 
+     * @param startTime
+     * @param endTime
+     * @return The HrZoneTimes.
+     */
+    public HrZoneTimes getHrZoneTimes(long startTime, long endTime) {
+        return HrZoneTimes.compute(hrVals, hrTimeVals, startTime, endTime);
+    }
+
     /**
      * @param args
      */
@@ -0,0 +1,387 @@
+package net.kenevans.stlviewer.model;
+
+import net.kenevans.stlviewer.utils.DoubleColumn;
+import net.kenevans.stlviewer.utils.LongColumn;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * TrackAccumulator collects the raw time, position, elevation, and HR values
+ * for an STLFileModel as the tracks, segments, and track points are delivered
+ * in document order. It does not care where they come from, so the JAXB
+ * GpxType walk and the streaming extractors produce the same values. The
+ * speed, distance, and elevation in ft are derived from the raw values by the
+ * STLFileModel when they are first needed.
+ * 
+ * @author Kenneth Evans, Jr.
+ */
+public class TrackAccumulator
+{
+    LongColumn timeValsArray = new LongColumn();
+    /** Latitude in deg, NaN for the segment separators. */
+    DoubleColumn latValsArray = new DoubleColumn();
+    /** Longitude in deg, NaN for the segment separators. */
+    DoubleColumn lonValsArray = new DoubleColumn();
+    /** Elevation in m, 0 if missing, NaN for the segment separators. */
+    DoubleColumn eleValsArray = new DoubleColumn();
+    LongColumn hrTimeValsArray = new LongColumn();
+    DoubleColumn hrValsArray = new DoubleColumn();
+
+    int nTracks;
+    int nSegments;
+    int nTrackPoints;
+    int nHrValues;
+    /** The number of malformed lines in OruxMaps bpm text. */
+    int nMalformedBpmLines;
+    long startTime = Long.MAX_VALUE;
+    long endTime;
+    long startHrTime = Long.MAX_VALUE;
+    long endHrTime;
+
+    /** The time of the last HR value, used for the segment separators. */
+    private long lastTimeValue = -1;
+    /** Whether the HR for the current track comes from an OruxMaps bpm. */
+    private boolean usingOruxMapBpm;
+    /** The ModelLoader to notify of each track point or null. */
+    private ModelLoader loader;
+    /**
+     * The ModelLoader to check for cancelling at each track point, for a
+     * part extracted on another thread, or null.
+     */
+    private ModelLoader cancelLoader;
+
+    /**
+     * Whether this accumulates only part of a file, to be merged into another
+     * TrackAccumulator with append().
+     */
+    private final boolean partial;
+    /**
+     * For a partial TrackAccumulator, the separators whose time is not known
+     * until it is merged because there has not been a HR value yet. There are
+     * two entries per separator: the indices in the HR and time columns.
+     */
+    private LongColumn pendingSeparators;
+
+    /**
+     * TrackAccumulator constructor for a whole file.
+     */
+    public TrackAccumulator() {
+        this(false);
+    }
+
+    /**
+     * TrackAccumulator constructor.
+     * 
+     * @param partial Whether this accumulates only part of a file, to be
+     *            merged into another TrackAccumulator with append().
+     */
+    public TrackAccumulator(boolean partial) {
+        this.partial = partial;
+        if(partial) {
+            pendingSeparators = new LongColumn(16);
+        }
+    }
+
+    /**
+     * Replaces the columns with empty ones, keeping the totals and the state
+     * of the current track. This is used after the values have been taken so
+     * that only those added afterward are in the columns. The old columns are
+     * not reused, since their arrays may now belong to an STLFileModel.
+     */
+    void clearColumns() {
+        timeValsArray = new LongColumn();
+        latValsArray = new DoubleColumn();
+        lonValsArray = new DoubleColumn();
+        eleValsArray = new DoubleColumn();
+        hrTimeValsArray = new LongColumn();
+        hrValsArray = new DoubleColumn();
+    }
+
+    /**
+     * Starts a new track.
+     */
+    public void startTrack() {
+        nTracks++;
+        usingOruxMapBpm = false;
+    }
+
+    /**
+     * Handles the bpm string from an OruxMaps track extension. If it is
+     * successfully parsed, the HR values of the track points in this track are
+     * ignored.
+     * 
+     * @param bpm The bpm string.
+     */
+    public void setOruxMapsBpm(String bpm) {
+        if(bpm != null && bpm.length() > 0) {
+            if(getHrFromOruxMapsBpm(bpm)) {
+                usingOruxMapBpm = true;
+            }
+        }
+    }
+
+    /**
+     * Gets an OruxMapsBpmDecoder that adds the HR values from the bpm text of
+     * an OruxMaps track extension to this TrackAccumulator. This is used to
+     * decode the text as it is read. Call endOruxMapsBpm with it when all of
+     * the text has been decoded.
+     * 
+     * @return
+     */
+    public OruxMapsBpmDecoder startOruxMapsBpm() {
+        return new OruxMapsBpmDecoder(hrValsArray, hrTimeValsArray);
+    }
+
+    /**
+     * Finishes the bpm text from an OruxMaps track extension, as for
+     * setOruxMapsBpm.
+     * 
+     * @param decoder The OruxMapsBpmDecoder from startOruxMapsBpm.
+     */
+    public void endOruxMapsBpm(OruxMapsBpmDecoder decoder) {
+        if(endOruxMapsBpmDecoder(decoder)) {
+            usingOruxMapBpm = true;
+        }
+    }
+
+    /**
+     * Finishes an OruxMapsBpmDecoder and updates the HR totals.
+     * 
+     * @param decoder
+     * @return If there was text and all of the times were valid.
+     */
+    private boolean endOruxMapsBpmDecoder(OruxMapsBpmDecoder decoder) {
+        decoder.finish();
+        if(decoder.isEmpty()) {
+            return false;
+        }
+        if(decoder.getnValues() > 0) {
+            startHrTime = Math.min(startHrTime, decoder.getStartTime());
+            endHrTime = Math.max(endHrTime, decoder.getEndTime());
+            nHrValues += decoder.getnValues();
+        }
+        nMalformedBpmLines += decoder.getnMalformed();
+        return decoder.getnInvalidTimes() == 0;
+    }
+
+    /**
+     * Starts a new segment. Segments after the first are separated from the
+     * previous ones by NaN values.
+     */
+    public void startSegment() {
+        nSegments++;
+        // A partial TrackAccumulator does not know whether this is the first
+        // segment in the file, so it always adds one and append() removes it
+        if(nSegments > 1 || partial) {
+            if(partial && lastTimeValue == -1) {
+                pendingSeparators.add(hrValsArray.size());
+                pendingSeparators.add(timeValsArray.size());
+            }
+            // Use NaN to make a break between segments but don't count
+            // as a HR value
+            hrValsArray.add(Double.NaN);
+            hrTimeValsArray.add(lastTimeValue);
+            timeValsArray.add(lastTimeValue);
+            latValsArray.add(Double.NaN);
+            lonValsArray.add(Double.NaN);
+            eleValsArray.add(Double.NaN);
+        }
+    }
+
+    /**
+     * Adds a track point to the current segment.
+     * 
+     * @param time The time in ms.
+     * @param lat The latitude in deg.
+     * @param lon The longitude in deg.
+     * @param ele The elevation in m or NaN if there is none.
+     * @param hr The HR or NaN if there is none.
+     */
+    public void addTrackPoint(long time, double lat, double lon, double ele,
+        double hr) {
+        if(loader != null) {
+            // May throw a CancellationException
+            loader.pointAdded();
+        } else if(cancelLoader != null) {
+            cancelLoader.checkCancelled();
+        }
+        nTrackPoints++;
+        if(time < startTime) {
+            startTime = time;
+        }
+        if(time > endTime) {
+            endTime = time;
+        }
+        timeValsArray.add(time);
+        latValsArray.add(lat);
+        lonValsArray.add(lon);
+        eleValsArray.add(Double.isNaN(ele) ? 0.0 : ele);
+        // HR
+        if(!usingOruxMapBpm && !Double.isNaN(hr)) {
+            hrValsArray.add(hr);
+            hrTimeValsArray.add(time);
+            lastTimeValue = time;
+            if(time < startHrTime) {
+                startHrTime = time;
+            }
+            if(time > endHrTime) {
+                endHrTime = time;
+            }
+            nHrValues++;
+        }
+    }
+
+    /**
+     * Appends the values from a partial TrackAccumulator that holds the
+     * tracks following those already in this one. The result is the same as
+     * if the tracks had been added to this one directly.
+     * 
+     * @param part
+     */
+    public void append(TrackAccumulator part) {
+        if(!part.partial) {
+            throw new IllegalArgumentException(
+                "Only a partial TrackAccumulator can be appended");
+        }
+        // The first pending separator is the one for the first segment in
+        // part, which is not needed if it is the first in the file
+        int nPending = part.pendingSeparators.size() / 2;
+        boolean dropFirst = nSegments == 0 && nPending > 0;
+        int hrDrop = dropFirst ? (int)part.pendingSeparators.get(0) : -1;
+        int timeDrop = dropFirst ? (int)part.pendingSeparators.get(1) : -1;
+        int hrBase = hrValsArray.size();
+        int timeBase = timeValsArray.size();
+
+        appendSkipping(hrValsArray, part.hrValsArray, hrDrop);
+        appendSkipping(hrTimeValsArray, part.hrTimeValsArray, hrDrop);
+        appendSkipping(timeValsArray, part.timeValsArray, timeDrop);
+        appendSkipping(latValsArray, part.latValsArray, timeDrop);
+        appendSkipping(lonValsArray, part.lonValsArray, timeDrop);
+        appendSkipping(eleValsArray, part.eleValsArray, timeDrop);
+
+        // Set the time of the pending separators to the last HR time so far
+        for(int i = dropFirst ? 1 : 0; i < nPending; i++) {
+            int hrIndex = (int)part.pendingSeparators.get(2 * i);
+            int timeIndex = (int)part.pendingSeparators.get(2 * i + 1);
+            if(dropFirst) {
+                hrIndex--;
+                timeIndex--;
+            }
+            hrTimeValsArray.set(hrBase + hrIndex, lastTimeValue);
+            timeValsArray.set(timeBase + timeIndex, lastTimeValue);
+        }
+
+        nTracks += part.nTracks;
+        nSegments += part.nSegments;
+        nTrackPoints += part.nTrackPoints;
+        nHrValues += part.nHrValues;
+        nMalformedBpmLines += part.nMalformedBpmLines;
+        startTime = Math.min(startTime, part.startTime);
+        endTime = Math.max(endTime, part.endTime);
+        startHrTime = Math.min(startHrTime, part.startHrTime);
+        endHrTime = Math.max(endHrTime, part.endHrTime);
+        if(part.lastTimeValue != -1) {
+            lastTimeValue = part.lastTimeValue;
+        }
+        if(loader != null) {
+            loader.pointsAdded(part.nTrackPoints);
+        }
+    }
+
+    /**
+     * Appends src to dst, leaving out the value at the given index.
+     * 
+     * @param dst
+     * @param src
+     * @param skip The index to leave out or -1 for none.
+     */
+    private static void appendSkipping(LongColumn dst, LongColumn src,
+        int skip) {
+        if(skip < 0) {
+            dst.addAll(src);
+            return;
+        }
+        long[] vals = src.trimToSize();
+        for(int i = 0; i < vals.length; i++) {
+            if(i != skip) {
+                dst.add(vals[i]);
+            }
+        }
+    }
+
+    /**
+     * Appends src to dst, leaving out the value at the given index.
+     * 
+     * @param dst
+     * @param src
+     * @param skip The index to leave out or -1 for none.
+     */
+    private static void appendSkipping(DoubleColumn dst, DoubleColumn src,
+        int skip) {
+        if(skip < 0) {
+            dst.addAll(src);
+            return;
+        }
+        double[] vals = src.trimToSize();
+        for(int i = 0; i < vals.length; i++) {
+            if(i != skip) {
+                dst.add(vals[i]);
+            }
+        }
+    }
+
+    /**
+     * @return The ModelLoader to notify of each track point or null.
+     */
+    ModelLoader getLoader() {
+        return loader;
+    }
+
+    /**
+     * Sets the ModelLoader to notify of each track point. It can cancel
+     * adding a track point by throwing a CancellationException.
+     * 
+     * @param loader The ModelLoader or null.
+     */
+    void setLoader(ModelLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Sets the ModelLoader to check for cancelling at each track point. Use
+     * for a part extracted on a thread other than that of the load, which
+     * cannot be notified of the progress.
+     * 
+     * @param cancelLoader The ModelLoader or null.
+     */
+    void setCancelLoader(ModelLoader cancelLoader) {
+        this.cancelLoader = cancelLoader;
+    }
+
+    /**
+     * @return Whether the HR for the current track comes from an OruxMaps bpm,
+     *         in which case the track point HR values are not used.
+     */
+    boolean isUsingOruxMapBpm() {
+        return usingOruxMapBpm;
+    }
+
+    /**
+     * Gets the HR values for a track from an OxuxMapsExtension.
+     * 
+     * @param bpm The bpm string in the OruxMapsExtyension
+     * @return
+     */
+    boolean getHrFromOruxMapsBpm(String bpm) {
+        if(bpm == null || bpm.length() == 0) {
+            return false;
+        }
+        OruxMapsBpmDecoder decoder = startOruxMapsBpm();
+        decoder.decode(bpm);
+        return endOruxMapsBpmDecoder(decoder);
+    }
+
+}
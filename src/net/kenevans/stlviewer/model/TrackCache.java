@@ -0,0 +1,284 @@
+package net.kenevans.stlviewer.model;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import net.kenevans.stlviewer.utils.DoubleColumn;
+import net.kenevans.stlviewer.utils.LongColumn;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * TrackCache stores the values extracted from a GPX file in a binary sidecar
+ * file in CACHE_DIR so that opening the file again does not have to parse the
+ * XML. The sidecar is read into a heap ByteBuffer with one bulk read, so
+ * reading it is mostly a copy from the page cache. It is not mapped, since
+ * on Windows a mapped file cannot be replaced until the mapping is garbage
+ * collected. Only the raw values are stored. The speed,
+ * distance, and elevation in ft are derived when they are first needed, as
+ * for a parsed file.<br>
+ * <br>
+ * The format is a header followed by the columns:
+ * 
+ * <pre>
+ * int magic, int version
+ * long gpxSize, long gpxLastModified
+ * int pathLength, byte[pathLength] path (UTF-8), padded to 8 bytes
+ * int nTracks, int nSegments, int nTrackPoints, int nHrValues
+ * long startTime, long endTime, long startHrTime, long endHrTime
+ * int nTimeVals, int nHrVals, int nMalformedBpmLines, padded to 8 bytes
+ * long[nTimeVals] timeVals
+ * double[nTimeVals] latVals, double[nTimeVals] lonVals (deg)
+ * double[nTimeVals] eleVals (m)
+ * long[nHrVals] hrTimeVals, double[nHrVals] hrVals
+ * </pre>
+ * 
+ * The path, size, and last-modified time of the GPX file are the key. If any
+ * of them do not match, the sidecar is ignored and is replaced on the next
+ * write.
+ * 
+ * @author Kenneth Evans, Jr.
+ */
+public class TrackCache implements IConstants
+{
+    private static final int MAGIC = 0x53544C43; // STLC
+    private static final int VERSION = 3;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Gets the sidecar file for the given GPX file.
+     * 
+     * @param gpxFile
+     * @return
+     */
+    public static File getCacheFile(File gpxFile) {
+        String path = gpxFile.getAbsolutePath();
+        return new File(CACHE_DIR, gpxFile.getName() + "-"
+            + Integer.toHexString(path.hashCode()) + CACHE_EXT);
+    }
+
+    /**
+     * Reads the values for the given GPX file from its sidecar into the
+     * given TrackAccumulator. For a compressed file or zip entry, the size and
+     * last-modified time are those of the file that contains it.
+     * 
+     * @param gpxFile
+     * @param acc
+     * @return If the sidecar exists and is valid for the current GPX file.
+     */
+    static boolean read(File gpxFile, TrackAccumulator acc) {
+        File cacheFile = getCacheFile(gpxFile);
+        File dataFile = GpxSource.getFile(gpxFile.getPath());
+        if(!cacheFile.exists() || !dataFile.exists()) {
+            return false;
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(cacheFile, "r");
+            ByteBuffer buf = MappedGpxScanner.read(raf.getChannel());
+            if(buf == null) {
+                return false;
+            }
+            if(buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                return false;
+            }
+            if(buf.getLong() != dataFile.length()
+                || buf.getLong() != dataFile.lastModified()) {
+                return false;
+            }
+            int pathLength = buf.getInt();
+            if(pathLength < 0 || pathLength > buf.remaining()) {
+                return false;
+            }
+            byte[] pathBytes = new byte[pathLength];
+            buf.get(pathBytes);
+            if(!new String(pathBytes, UTF8)
+                .equals(gpxFile.getAbsolutePath())) {
+                return false;
+            }
+            align(buf);
+            acc.nTracks = buf.getInt();
+            acc.nSegments = buf.getInt();
+            acc.nTrackPoints = buf.getInt();
+            acc.nHrValues = buf.getInt();
+            acc.startTime = buf.getLong();
+            acc.endTime = buf.getLong();
+            acc.startHrTime = buf.getLong();
+            acc.endHrTime = buf.getLong();
+            int nTimeVals = buf.getInt();
+            int nHrVals = buf.getInt();
+            acc.nMalformedBpmLines = buf.getInt();
+            align(buf);
+            if(nTimeVals < 0 || nHrVals < 0 || 8L
+                * (4L * nTimeVals + 2L * nHrVals) != buf.remaining()) {
+                return false;
+            }
+            acc.timeValsArray = new LongColumn(getLongs(buf, nTimeVals));
+            acc.latValsArray = new DoubleColumn(getDoubles(buf, nTimeVals));
+            acc.lonValsArray = new DoubleColumn(getDoubles(buf, nTimeVals));
+            acc.eleValsArray = new DoubleColumn(getDoubles(buf, nTimeVals));
+            acc.hrTimeValsArray = new LongColumn(getLongs(buf, nHrVals));
+            acc.hrValsArray = new DoubleColumn(getDoubles(buf, nHrVals));
+            return true;
+        } catch(Exception ex) {
+            // Truncated or otherwise bad, parse the GPX instead
+            return false;
+        } finally {
+            if(raf != null) {
+                try {
+                    raf.close();
+                } catch(IOException ex) {
+                    // Do nothing
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the raw values in the given model to the sidecar for the given
+     * GPX file. This must be done before the speed or elevation is derived,
+     * since the model does not keep the positions and the elevations in m
+     * after that. The sidecar is written to a temporary file and then renamed,
+     * so a partially written sidecar is never read. The size and
+     * last-modified time should be those from before the GPX file was parsed,
+     * so a change during the parse invalidates the sidecar.
+     * 
+     * @param gpxFile
+     * @param gpxSize
+     * @param gpxLastModified
+     * @param model
+     * @return If the write succeeded. If not, the GPX file is parsed again
+     *         the next time it is opened.
+     */
+    static boolean write(File gpxFile, long gpxSize, long gpxLastModified,
+        STLFileModel model) {
+        File cacheFile = getCacheFile(gpxFile);
+        File tmpFile = new File(cacheFile.getPath() + ".tmp");
+        byte[] pathBytes = gpxFile.getAbsolutePath().getBytes(UTF8);
+        long[] timeVals = model.getTimeVals();
+        long[] hrTimeVals = model.getHrTimeVals();
+        double[] hrVals = model.getHrVals();
+        double[] latVals = model.getLatVals();
+        double[] lonVals = model.getLonVals();
+        double[] eleMeterVals = model.getEleMeterVals();
+        if(latVals == null || lonVals == null || eleMeterVals == null) {
+            // Already derived
+            return false;
+        }
+        int headerSize = 8 + 16 + 4 + pathBytes.length;
+        headerSize += pad(headerSize) + 16 + 32 + 12;
+        headerSize += pad(headerSize);
+        long size = headerSize
+            + 8L * (4 * timeVals.length + 2 * hrVals.length);
+        if(size > Integer.MAX_VALUE) {
+            return false;
+        }
+        FileOutputStream out = null;
+        try {
+            File dir = cacheFile.getParentFile();
+            if(!dir.exists() && !dir.mkdirs()) {
+                return false;
+            }
+            // Not mapped, so the file can be renamed as soon as it is closed
+            ByteBuffer buf = ByteBuffer.allocate((int)size);
+            buf.putInt(MAGIC);
+            buf.putInt(VERSION);
+            buf.putLong(gpxSize);
+            buf.putLong(gpxLastModified);
+            buf.putInt(pathBytes.length);
+            buf.put(pathBytes);
+            align(buf);
+            buf.putInt(model.getnTracks());
+            buf.putInt(model.getnSegments());
+            buf.putInt(model.getnTrackPoints());
+            buf.putInt(model.getnHrValues());
+            buf.putLong(model.getStartTime());
+            buf.putLong(model.getEndTime());
+            buf.putLong(model.getStartHrTime());
+            buf.putLong(model.getEndHrTime());
+            buf.putInt(timeVals.length);
+            buf.putInt(hrVals.length);
+            buf.putInt(model.getnMalformedBpmLines());
+            align(buf);
+            putLongs(buf, timeVals);
+            putDoubles(buf, latVals);
+            putDoubles(buf, lonVals);
+            putDoubles(buf, eleMeterVals);
+            putLongs(buf, hrTimeVals);
+            putDoubles(buf, hrVals);
+            buf.flip();
+            out = new FileOutputStream(tmpFile);
+            FileChannel channel = out.getChannel();
+            while(buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            out.close();
+            out = null;
+            Files.move(tmpFile.toPath(), cacheFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch(Exception ex) {
+            return false;
+        } finally {
+            if(out != null) {
+                try {
+                    out.close();
+                } catch(IOException ex) {
+                    // Do nothing
+                }
+            }
+            if(tmpFile.exists()) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    /**
+     * @return The number of bytes needed to pad n to a multiple of 8.
+     */
+    private static int pad(int n) {
+        return (8 - n % 8) % 8;
+    }
+
+    /**
+     * Advances the position of the buffer to a multiple of 8.
+     */
+    private static void align(ByteBuffer buf) {
+        buf.position(buf.position() + pad(buf.position()));
+    }
+
+    private static long[] getLongs(ByteBuffer buf, int n) {
+        long[] vals = new long[n];
+        buf.asLongBuffer().get(vals);
+        buf.position(buf.position() + 8 * n);
+        return vals;
+    }
+
+    private static double[] getDoubles(ByteBuffer buf, int n) {
+        double[] vals = new double[n];
+        buf.asDoubleBuffer().get(vals);
+        buf.position(buf.position() + 8 * n);
+        return vals;
+    }
+
+    private static void putLongs(ByteBuffer buf, long[] vals) {
+        buf.asLongBuffer().put(vals);
+        buf.position(buf.position() + 8 * vals.length);
+    }
+
+    private static void putDoubles(ByteBuffer buf, double[] vals) {
+        buf.asDoubleBuffer().put(vals);
+        buf.position(buf.position() + 8 * vals.length);
+    }
+
+}
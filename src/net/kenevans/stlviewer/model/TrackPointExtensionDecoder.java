@@ -0,0 +1,186 @@
+package net.kenevans.stlviewer.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.w3c.dom.Node;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * TrackPointExtensionDecoder reads the values of a Garmin TrackPointExtension
+ * (v1 or v2) directly from a DOM Node or from the names and texts of the
+ * elements as they are streamed, without JAXB. The fields are found with a
+ * lookup table of the local names, which are the same in v1 and v2, so the
+ * namespace does not matter. Fields that are missing or are not numbers are
+ * NaN.<br>
+ * <br>
+ * An element is taken to be a TrackPointExtension if its local name starts
+ * with "trackpointextension", ignoring case, as is done by the streaming
+ * extractors.
+ *
+ * @author Kenneth Evans, Jr.
+ */
+public class TrackPointExtensionDecoder
+{
+    public static final int HR = 0;
+    public static final int CAD = 1;
+    public static final int ATEMP = 2;
+    public static final int WTEMP = 3;
+    public static final int DEPTH = 4;
+    public static final int SPEED = 5;
+    public static final int COURSE = 6;
+    public static final int BEARING = 7;
+    public static final int N_FIELDS = 8;
+
+    /** The local names of the fields, indexed by field. */
+    private static final String[] FIELD_NAMES = {"hr", "cad", "atemp",
+        "wtemp", "depth", "speed", "course", "bearing"};
+    /** Lookup table from local name to field. */
+    private static final Map<String, Integer> FIELDS = new HashMap<String, Integer>();
+    static {
+        for(int i = 0; i < FIELD_NAMES.length; i++) {
+            FIELDS.put(FIELD_NAMES[i], i);
+        }
+    }
+
+    private final double[] values = new double[N_FIELDS];
+    private int nFound;
+
+    /**
+     * TrackPointExtensionDecoder constructor.
+     */
+    public TrackPointExtensionDecoder() {
+        clear();
+    }
+
+    /**
+     * Gets whether an element with the given local name is a
+     * TrackPointExtension.
+     *
+     * @param localName
+     * @return
+     */
+    public static boolean isTrackPointExtension(String localName) {
+        return localName != null && localName.toLowerCase(Locale.US)
+            .startsWith("trackpointextension");
+    }
+
+    /**
+     * Gets the field for the given local name.
+     *
+     * @param localName
+     * @return The field or -1 if it is not one.
+     */
+    public static int getField(String localName) {
+        Integer field = FIELDS.get(localName);
+        return field == null ? -1 : field;
+    }
+
+    /**
+     * Gets the local name of the given Node, whether or not it was created
+     * with namespaces.
+     *
+     * @param node
+     * @return
+     */
+    public static String getLocalName(Node node) {
+        String name = node.getLocalName();
+        if(name == null) {
+            name = node.getNodeName();
+            int colon = name.indexOf(':');
+            if(colon >= 0) {
+                name = name.substring(colon + 1);
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Sets all the fields to NaN.
+     */
+    public void clear() {
+        Arrays.fill(values, Double.NaN);
+        nFound = 0;
+    }
+
+    /**
+     * Sets the value of a field from its text, as for each field element when
+     * streaming.
+     *
+     * @param localName The local name of the element.
+     * @param text The text of the element.
+     * @return If the name is that of a field.
+     */
+    public boolean setField(String localName, String text) {
+        int field = getField(localName);
+        if(field < 0) {
+            return false;
+        }
+        values[field] = parse(text);
+        nFound++;
+        return true;
+    }
+
+    /**
+     * Decodes the fields from the child elements of the given
+     * TrackPointExtension Node.
+     *
+     * @param node
+     * @return The number of fields found.
+     */
+    public int decode(Node node) {
+        clear();
+        for(Node child = node.getFirstChild(); child != null; child = child
+            .getNextSibling()) {
+            if(child.getNodeType() == Node.ELEMENT_NODE) {
+                setField(getLocalName(child), child.getTextContent());
+            }
+        }
+        return nFound;
+    }
+
+    /**
+     * @return The text as a double or NaN if it is not a number.
+     */
+    private static double parse(String text) {
+        if(text == null) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(text.trim());
+        } catch(NumberFormatException ex) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Gets the value of the given field.
+     *
+     * @param field One of HR, CAD, etc.
+     * @return The value or NaN if it is missing.
+     */
+    public double getValue(int field) {
+        return values[field];
+    }
+
+    /**
+     * @return The HR or NaN if it is missing.
+     */
+    public double getHr() {
+        return values[HR];
+    }
+
+    /**
+     * @return The number of fields that have been found since the last clear.
+     */
+    public int getnFound() {
+        return nFound;
+    }
+
+}
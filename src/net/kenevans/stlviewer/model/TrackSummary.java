@@ -0,0 +1,348 @@
+package net.kenevans.stlviewer.model;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import net.kenevans.stlviewer.utils.GpxUtils;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * TrackSummary holds the totals, the HR, speed, and elevation ChannelStats,
+ * the HrZoneTimes, and the HR and speed QuantileSketches and BestEfforts for
+ * one or more files, as for a weekly, monthly, or yearly summary. The values
+ * of a file are added once and the model can then be discarded. Summaries can
+ * be merged in any order and are Serializable, so partial summaries can be
+ * saved and updated as files are added. The BestEfforts rank the best efforts
+ * of the files.<br>
+ * <br>
+ * The speeds are in mi/hr and the elevations in ft, as in STLFileModel. The
+ * moving mean of the speed omits speeds below D_SPEED_NOT_MOVING.
+ *
+ * @author Kenneth Evans, Jr.
+ */
+public class TrackSummary implements Serializable, IConstants
+{
+    private static final long serialVersionUID = 1L;
+    /** The number of files below which a SummaryTask does not split. */
+    private static final int SPLIT_THRESHOLD = 4;
+    /** The speed below which the speed is not moving in mi/hr. */
+    private static final double NO_MOVE_SPEED = D_SPEED_NOT_MOVING
+        * GpxUtils.M2MI / GpxUtils.SEC2HR;
+
+    private int nFiles;
+    private int nErrors;
+    private int nTrackPoints;
+    private int nHrValues;
+    private double distance;
+    private long duration;
+    private long startTime = Long.MAX_VALUE;
+    private long endTime = Long.MIN_VALUE;
+    private final ChannelStats hrStats = new ChannelStats();
+    private final ChannelStats speedStats = new ChannelStats();
+    private final ChannelStats eleStats = new ChannelStats();
+    private final HrZoneTimes hrZoneTimes = new HrZoneTimes();
+    private final QuantileSketch hrSketch = new QuantileSketch();
+    private final QuantileSketch speedSketch = new QuantileSketch();
+    private final BestEfforts hrBestEfforts = new BestEfforts(
+        BestEfforts.DEFAULT_WINDOWS, BestEfforts.DEFAULT_MAX_ENTRIES);
+    private final BestEfforts speedBestEfforts = new BestEfforts(
+        BestEfforts.DEFAULT_WINDOWS, BestEfforts.DEFAULT_MAX_ENTRIES);
+
+    /**
+     * TrackSummary constructor for an empty summary.
+     */
+    public TrackSummary() {
+        hrStats.reset(-Double.MIN_VALUE, Double.NaN);
+        speedStats.reset(-Double.MIN_VALUE, NO_MOVE_SPEED);
+        eleStats.reset(-Double.MIN_VALUE, Double.NaN);
+    }
+
+    /**
+     * Adds the values from the given model.
+     *
+     * @param model
+     * @return False if the arrays in the model do not match, in which case it
+     *         is counted as an error.
+     */
+    public boolean add(STLFileModel model) {
+        ChannelStats hr = new ChannelStats();
+        hr.reset(-Double.MIN_VALUE, Double.NaN);
+        ChannelStats speed = new ChannelStats();
+        speed.reset(-Double.MIN_VALUE, NO_MOVE_SPEED);
+        ChannelStats ele = new ChannelStats();
+        ele.reset(-Double.MIN_VALUE, Double.NaN);
+        if(!hr.add(model.getHrVals(), model.getHrTimeVals())
+            || !speed.add(model.getSpeedVals(), model.getSpeedTimeVals())
+            || !ele.add(model.getEleVals(), model.getTimeVals())) {
+            nErrors++;
+            return false;
+        }
+        nFiles++;
+        nTrackPoints += model.getnTrackPoints();
+        nHrValues += model.getnHrValues();
+        distance += model.getDistance();
+        long start = model.getStartTime();
+        long end = model.getEndTime();
+        if(start != Long.MAX_VALUE && end != Long.MIN_VALUE) {
+            duration += end - start;
+            if(start < startTime) {
+                startTime = start;
+            }
+            if(end > endTime) {
+                endTime = end;
+            }
+        }
+        hrStats.merge(hr);
+        speedStats.merge(speed);
+        eleStats.merge(ele);
+        hrZoneTimes.merge(model.getHrZoneTimes());
+        hrSketch.merge(model.getHrSketch());
+        speedSketch.merge(model.getSpeedSketch());
+        hrBestEfforts.merge(model.getHrBestEfforts());
+        speedBestEfforts.merge(model.getSpeedBestEfforts());
+        return true;
+    }
+
+    /**
+     * Loads the given file without showing errors and adds its values.
+     *
+     * @param fileName
+     * @param parseMode The ParseMode to use if it is not in the cache.
+     * @param useCache Whether to use and update the TrackCache.
+     * @return False if it could not be loaded, in which case it is counted as
+     *         an error.
+     */
+    public boolean add(String fileName, ParseMode parseMode,
+        boolean useCache) {
+        ModelLoader loader = new ModelLoader(fileName, parseMode, useCache,
+            null);
+        loader.run();
+        STLFileModel model = loader.getModel();
+        if(model == null) {
+            nErrors++;
+            return false;
+        }
+        return add(model);
+    }
+
+    /**
+     * Merges the given TrackSummary into this one.
+     *
+     * @param other
+     * @return This TrackSummary.
+     */
+    public TrackSummary merge(TrackSummary other) {
+        nFiles += other.nFiles;
+        nErrors += other.nErrors;
+        nTrackPoints += other.nTrackPoints;
+        nHrValues += other.nHrValues;
+        distance += other.distance;
+        duration += other.duration;
+        if(other.startTime < startTime) {
+            startTime = other.startTime;
+        }
+        if(other.endTime > endTime) {
+            endTime = other.endTime;
+        }
+        hrStats.merge(other.hrStats);
+        speedStats.merge(other.speedStats);
+        eleStats.merge(other.eleStats);
+        hrZoneTimes.merge(other.hrZoneTimes);
+        hrSketch.merge(other.hrSketch);
+        speedSketch.merge(other.speedSketch);
+        hrBestEfforts.merge(other.hrBestEfforts);
+        speedBestEfforts.merge(other.speedBestEfforts);
+        return this;
+    }
+
+    /**
+     * Summarizes the given files on the common ForkJoinPool.
+     *
+     * @param fileNames
+     * @param parseMode The ParseMode to use for files not in the cache.
+     * @param useCache Whether to use and update the TrackCache.
+     * @return The summary of all the files.
+     */
+    public static TrackSummary summarize(List<String> fileNames,
+        ParseMode parseMode, boolean useCache) {
+        return summarize(fileNames, parseMode, useCache,
+            ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Summarizes the given files on the given ForkJoinPool. The list is split
+     * in halves until the parts are small, and the parts are merged as they
+     * finish.
+     *
+     * @param fileNames
+     * @param parseMode The ParseMode to use for files not in the cache.
+     * @param useCache Whether to use and update the TrackCache.
+     * @param pool
+     * @return The summary of all the files.
+     */
+    public static TrackSummary summarize(List<String> fileNames,
+        ParseMode parseMode, boolean useCache, ForkJoinPool pool) {
+        return pool.invoke(new SummaryTask(fileNames, 0, fileNames.size(),
+            parseMode, useCache));
+    }
+
+    /**
+     * SummaryTask summarizes part of a list of files.
+     */
+    private static class SummaryTask extends RecursiveTask<TrackSummary>
+    {
+        private static final long serialVersionUID = 1L;
+        private final List<String> fileNames;
+        private final int start;
+        private final int end;
+        private final ParseMode parseMode;
+        private final boolean useCache;
+
+        SummaryTask(List<String> fileNames, int start, int end,
+            ParseMode parseMode, boolean useCache) {
+            this.fileNames = fileNames;
+            this.start = start;
+            this.end = end;
+            this.parseMode = parseMode;
+            this.useCache = useCache;
+        }
+
+        @Override
+        protected TrackSummary compute() {
+            if(end - start <= SPLIT_THRESHOLD) {
+                TrackSummary summary = new TrackSummary();
+                for(int i = start; i < end; i++) {
+                    summary.add(fileNames.get(i), parseMode, useCache);
+                }
+                return summary;
+            }
+            int mid = (start + end) >>> 1;
+            SummaryTask left = new SummaryTask(fileNames, start, mid,
+                parseMode, useCache);
+            left.fork();
+            TrackSummary right = new SummaryTask(fileNames, mid, end,
+                parseMode, useCache).compute();
+            // Keep the files in order
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * @return The number of files that were added.
+     */
+    public int getnFiles() {
+        return nFiles;
+    }
+
+    /**
+     * @return The number of files that could not be added.
+     */
+    public int getnErrors() {
+        return nErrors;
+    }
+
+    /**
+     * @return The value of nTrackPoints.
+     */
+    public int getnTrackPoints() {
+        return nTrackPoints;
+    }
+
+    /**
+     * @return The value of nHrValues.
+     */
+    public int getnHrValues() {
+        return nHrValues;
+    }
+
+    /**
+     * @return The total distance in m.
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * @return The sum of the durations of the files in ms.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return The earliest start time or Long.MAX_VALUE if there is none.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return The latest end time or Long.MIN_VALUE if there is none.
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * @return The value of hrStats.
+     */
+    public ChannelStats getHrStats() {
+        return hrStats;
+    }
+
+    /**
+     * @return The value of speedStats.
+     */
+    public ChannelStats getSpeedStats() {
+        return speedStats;
+    }
+
+    /**
+     * @return The value of eleStats.
+     */
+    public ChannelStats getEleStats() {
+        return eleStats;
+    }
+
+    /**
+     * @return The value of hrZoneTimes.
+     */
+    public HrZoneTimes getHrZoneTimes() {
+        return hrZoneTimes;
+    }
+
+    /**
+     * @return The value of hrSketch.
+     */
+    public QuantileSketch getHrSketch() {
+        return hrSketch;
+    }
+
+    /**
+     * @return The value of speedSketch.
+     */
+    public QuantileSketch getSpeedSketch() {
+        return speedSketch;
+    }
+
+    /**
+     * @return The value of hrBestEfforts.
+     */
+    public BestEfforts getHrBestEfforts() {
+        return hrBestEfforts;
+    }
+
+    /**
+     * @return The value of speedBestEfforts.
+     */
+    public BestEfforts getSpeedBestEfforts() {
+        return speedBestEfforts;
+    }
+
+}
@@ -20,6 +20,7 @@ import javax.swing.JTextField;
 
 import net.kenevans.core.utils.Utils;
 import net.kenevans.stlviewer.model.IConstants;
+import net.kenevans.stlviewer.model.STLFileModel;
 import net.kenevans.stlviewer.ui.STLViewer;
 
 /**
@@ -52,6 +53,9 @@ public class PreferencesDialog extends JDialog implements IConstants
     JTextField hrRavCountText;
     JTextField speedRavCountText;
     JTextField eleRavCountText;
+    JCheckBox hrRavSecondsCheck;
+    JCheckBox speedRavSecondsCheck;
+    JCheckBox eleRavSecondsCheck;
 
     JTextField zone1ValText;
     JTextField zone2ValText;
@@ -71,6 +75,7 @@ public class PreferencesDialog extends JDialog implements IConstants
     JTextField restHrText;
     JTextField ageText;
     JCheckBox useKorvonenCheck;
+    JLabel zoneTimesLabel;
 
     /**
      * Constructor
@@ -230,7 +235,7 @@ public class PreferencesDialog extends JDialog implements IConstants
         hrGroup.add(hrVisibileCheck, gbc);
 
         // Running average
-        String toolTip = "Number of data points to average over.  "
+        String toolTip = "Number of data points or seconds to average over.  "
             + "0->Don't average.  " + "Negative->Omit raw values.";
         label = new JLabel("Running Average Count:");
         label.setToolTipText(toolTip);
@@ -247,11 +252,18 @@ public class PreferencesDialog extends JDialog implements IConstants
         gbc.weightx = 100;
         hrGroup.add(hrRavCountText, gbc);
 
+        hrRavSecondsCheck = new JCheckBox("Seconds");
+        hrRavSecondsCheck.setToolTipText("Whether the running average "
+            + "count is in seconds rather than data points.");
+        gbc = (GridBagConstraints)gbcDefault.clone();
+        gbc.gridx = 3;
+        hrGroup.add(hrRavSecondsCheck, gbc);
+
         // Zones visible
         hrZonesVisibileCheck = new JCheckBox("Zones Visible");
         hrZonesVisibileCheck.setToolTipText("Whether HR zones are visible.");
         gbc = (GridBagConstraints)gbcDefault.clone();
-        gbc.gridx = 3;
+        gbc.gridx = 4;
         hrGroup.add(hrZonesVisibileCheck, gbc);
 
         // Speed Group //////////////////////////////////////////////////////
@@ -276,7 +288,7 @@ public class PreferencesDialog extends JDialog implements IConstants
         speedGroup.add(speedVisibileCheck, gbc);
 
         // Running average
-        toolTip = "Number of data points to average over.  "
+        toolTip = "Number of data points or seconds to average over.  "
             + "0->Don't average.  " + "Negative->Omit raw values.";
         label = new JLabel("Running Average Count:");
         label.setToolTipText(toolTip);
@@ -293,6 +305,13 @@ public class PreferencesDialog extends JDialog implements IConstants
         gbc.weightx = 100;
         speedGroup.add(speedRavCountText, gbc);
 
+        speedRavSecondsCheck = new JCheckBox("Seconds");
+        speedRavSecondsCheck.setToolTipText("Whether the running average "
+            + "count is in seconds rather than data points.");
+        gbc = (GridBagConstraints)gbcDefault.clone();
+        gbc.gridx = 3;
+        speedGroup.add(speedRavSecondsCheck, gbc);
+
         // Elevation Group //////////////////////////////////////////////////
         JPanel eleGroup = new JPanel();
         eleGroup.setBorder(BorderFactory.createCompoundBorder(
@@ -315,7 +334,7 @@ public class PreferencesDialog extends JDialog implements IConstants
         eleGroup.add(eleVisibileCheck, gbc);
 
         // Running average
-        toolTip = "Number of data points to average over.  "
+        toolTip = "Number of data points or seconds to average over.  "
             + "0->Don't average.  " + "Negative->Omit raw values.";
         label = new JLabel("Running Average Count:");
         label.setToolTipText(toolTip);
@@ -332,6 +351,13 @@ public class PreferencesDialog extends JDialog implements IConstants
         gbc.weightx = 100;
         eleGroup.add(eleRavCountText, gbc);
 
+        eleRavSecondsCheck = new JCheckBox("Seconds");
+        eleRavSecondsCheck.setToolTipText("Whether the running average "
+            + "count is in seconds rather than data points.");
+        gbc = (GridBagConstraints)gbcDefault.clone();
+        gbc.gridx = 3;
+        eleGroup.add(eleRavSecondsCheck, gbc);
+
         // Zone Group ///////////////////////////////////////////////////////
         JPanel zoneGroup = new JPanel();
         zoneGroup.setBorder(BorderFactory.createCompoundBorder(
@@ -734,6 +760,17 @@ public class PreferencesDialog extends JDialog implements IConstants
         gbc.gridy = zoneGridy;
         zoneGroup.add(button, gbc);
 
+        // Time in zones
+        zoneGridy++;
+        zoneTimesLabel = new JLabel(" ");
+        zoneTimesLabel.setToolTipText("Time in the calculated zones for the "
+            + "current file.");
+        gbc = (GridBagConstraints)gbcDefault.clone();
+        gbc.gridx = 0;
+        gbc.gridy = zoneGridy;
+        gbc.gridwidth = 5;
+        zoneGroup.add(zoneTimesLabel, gbc);
+
         // // Dummy Group
         // JPanel dummyGroup = new JPanel();
         // dummyGroup.setBorder(BorderFactory.createCompoundBorder(
@@ -922,6 +959,14 @@ public class PreferencesDialog extends JDialog implements IConstants
             Utils.excMsg("Invalid value for max Hr or resting HR", ex);
             return;
         }
+        // The times at each HR are kept in the model, so this is fast
+        STLFileModel model = viewer.getModel();
+        if(model != null && model.getnHrValues() > 0) {
+            zoneTimesLabel.setText(model.getHrZoneTimes()
+                .getZoneTimesInfo(zoneVals));
+        } else {
+            zoneTimesLabel.setText(" ");
+        }
     }
 
     /**
@@ -996,6 +1041,16 @@ public class PreferencesDialog extends JDialog implements IConstants
             eleRavCountText.setText(Integer.toString(settings
                 .getEleRollingAvgCount()));
         }
+        if(hrRavSecondsCheck != null) {
+            hrRavSecondsCheck.setSelected(settings.getHrRollingAvgSeconds());
+        }
+        if(speedRavSecondsCheck != null) {
+            speedRavSecondsCheck.setSelected(settings
+                .getSpeedRollingAvgSeconds());
+        }
+        if(eleRavSecondsCheck != null) {
+            eleRavSecondsCheck.setSelected(settings.getEleRollingAvgSeconds());
+        }
 
         if(zone1ValText != null) {
             zone1ValText.setText(Integer.toString(settings.getZone1Val()));
@@ -1076,6 +1131,10 @@ public class PreferencesDialog extends JDialog implements IConstants
                 .parseInt((speedRavCountText.getText())));
             settings.setEleRollingAvgCount(Integer.parseInt((eleRavCountText
                 .getText())));
+            settings.setHrRollingAvgSeconds(hrRavSecondsCheck.isSelected());
+            settings.setSpeedRollingAvgSeconds(speedRavSecondsCheck
+                .isSelected());
+            settings.setEleRollingAvgSeconds(eleRavSecondsCheck.isSelected());
 
             settings.setZone1Val(Integer.parseInt(zone1ValText.getText()));
             settings.setZone2Val(Integer.parseInt(zone2ValText.getText()));
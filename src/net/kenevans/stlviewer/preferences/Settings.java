@@ -30,6 +30,9 @@ public class Settings implements IConstants
     private int hrRollingAvgCount = D_HR_ROLLING_AVG_COUNT;
     private int speedRollingAvgCount = D_SPEED_ROLLING_AVG_COUNT;
     private int eleRollingAvgCount = D_ELE_ROLLING_AVG_COUNT;
+    private boolean hrRollingAvgSeconds = D_HR_ROLLING_AVG_SECONDS;
+    private boolean speedRollingAvgSeconds = D_SPEED_ROLLING_AVG_SECONDS;
+    private boolean eleRollingAvgSeconds = D_ELE_ROLLING_AVG_SECONDS;
 
     private int zone1Val = D_ZONE_1_VAL;
     private int zone2Val = D_ZONE_2_VAL;
@@ -70,6 +73,12 @@ public class Settings implements IConstants
             D_SPEED_ROLLING_AVG_COUNT);
         eleRollingAvgCount = prefs.getInt(P_ELE_ROLLING_AVG_COUNT,
             D_ELE_ROLLING_AVG_COUNT);
+        hrRollingAvgSeconds = prefs.getBoolean(P_HR_ROLLING_AVG_SECONDS,
+            D_HR_ROLLING_AVG_SECONDS);
+        speedRollingAvgSeconds = prefs.getBoolean(P_SPEED_ROLLING_AVG_SECONDS,
+            D_SPEED_ROLLING_AVG_SECONDS);
+        eleRollingAvgSeconds = prefs.getBoolean(P_ELE_ROLLING_AVG_SECONDS,
+            D_ELE_ROLLING_AVG_SECONDS);
 
         zone1Val = prefs.getInt(P_ZONE_1_VAL, D_ZONE_1_VAL);
         zone2Val = prefs.getInt(P_ZONE_2_VAL, D_ZONE_2_VAL);
@@ -116,6 +125,10 @@ public class Settings implements IConstants
             prefs.putInt(P_HR_ROLLING_AVG_COUNT, hrRollingAvgCount);
             prefs.putInt(P_SPEED_ROLLING_AVG_COUNT, speedRollingAvgCount);
             prefs.putInt(P_ELE_ROLLING_AVG_COUNT, eleRollingAvgCount);
+            prefs.putBoolean(P_HR_ROLLING_AVG_SECONDS, hrRollingAvgSeconds);
+            prefs.putBoolean(P_SPEED_ROLLING_AVG_SECONDS,
+                speedRollingAvgSeconds);
+            prefs.putBoolean(P_ELE_ROLLING_AVG_SECONDS, eleRollingAvgSeconds);
 
             prefs.putInt(P_ZONE_1_VAL, zone1Val);
             prefs.putInt(P_ZONE_2_VAL, zone2Val);
@@ -227,6 +240,9 @@ public class Settings implements IConstants
         this.hrRollingAvgCount = settings.hrRollingAvgCount;
         this.speedRollingAvgCount = settings.speedRollingAvgCount;
         this.eleRollingAvgCount = settings.eleRollingAvgCount;
+        this.hrRollingAvgSeconds = settings.hrRollingAvgSeconds;
+        this.speedRollingAvgSeconds = settings.speedRollingAvgSeconds;
+        this.eleRollingAvgSeconds = settings.eleRollingAvgSeconds;
 
         this.zone1Val = settings.zone1Val;
         this.zone2Val = settings.zone2Val;
@@ -374,6 +390,48 @@ public class Settings implements IConstants
         this.eleRollingAvgCount = eleRollingAvgCount;
     }
 
+    /**
+     * @return The value of hrRollingAvgSeconds.
+     */
+    public boolean getHrRollingAvgSeconds() {
+        return hrRollingAvgSeconds;
+    }
+
+    /**
+     * @param hrRollingAvgSeconds The new value for hrRollingAvgSeconds.
+     */
+    public void setHrRollingAvgSeconds(boolean hrRollingAvgSeconds) {
+        this.hrRollingAvgSeconds = hrRollingAvgSeconds;
+    }
+
+    /**
+     * @return The value of speedRollingAvgSeconds.
+     */
+    public boolean getSpeedRollingAvgSeconds() {
+        return speedRollingAvgSeconds;
+    }
+
+    /**
+     * @param speedRollingAvgSeconds The new value for speedRollingAvgSeconds.
+     */
+    public void setSpeedRollingAvgSeconds(boolean speedRollingAvgSeconds) {
+        this.speedRollingAvgSeconds = speedRollingAvgSeconds;
+    }
+
+    /**
+     * @return The value of eleRollingAvgSeconds.
+     */
+    public boolean getEleRollingAvgSeconds() {
+        return eleRollingAvgSeconds;
+    }
+
+    /**
+     * @param eleRollingAvgSeconds The new value for eleRollingAvgSeconds.
+     */
+    public void setEleRollingAvgSeconds(boolean eleRollingAvgSeconds) {
+        this.eleRollingAvgSeconds = eleRollingAvgSeconds;
+    }
+
     /**
      * @return The value of zone1Val.
      */
@@ -0,0 +1,576 @@
+package net.kenevans.stlviewer.ui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.xy.AbstractIntervalXYDataset;
+
+import net.kenevans.stlviewer.utils.DoubleColumn;
+import net.kenevans.stlviewer.utils.LongColumn;
+import net.kenevans.stlviewer.utils.MinMaxDownsampler;
+import net.kenevans.stlviewer.utils.MinMaxPyramid;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * ArrayXYDataset is a read-only IntervalXYDataset whose series are the time
+ * and value arrays of the model, which are used as they are and not copied.
+ * The times are in ms and are expected to be in order, though those at segment
+ * breaks may not be, in which case the domain order is NONE rather than
+ * ASCENDING. A series with one value has that value at every time, as for
+ * the HR zone boundaries. The intervals have no
+ * width, as for a TimeSeriesCollection of FixedMilliseconds. A NaN value is a
+ * gap.<br>
+ * <br>
+ * The values of a series can be replaced, as when values are appended to the
+ * model, but not changed in place. The bounds of each series and whether its
+ * times are in order are found when first needed and kept, so the plot does
+ * not go over the values each time it finds the axis ranges. The bounds are
+ * for the values that are not NaN, so the times of the segment breaks do not
+ * extend the time axis.<br>
+ * <br>
+ * When a domain view is set, a series with more points in the view than
+ * MinMaxDownsampler.POINTS_PER_BUCKET per pixel gives the downsampled points
+ * for the view as its items, so the time to draw it does not depend on the
+ * length of the recording. The view is set again when the domain axis
+ * changes, so the detail appears on zooming in. The bounds are always those
+ * of all the values. If a series has been given a MinMaxPyramid for its
+ * values, it is used for the downsampling, which then takes a time
+ * proportional to the width rather than to the number of points.
+ *
+ * @author Kenneth Evans, Jr.
+ */
+public class ArrayXYDataset extends AbstractIntervalXYDataset implements
+    DomainInfo, RangeInfo
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Series holds the arrays for a series.
+     */
+    private static class Series
+    {
+        private Comparable<?> key;
+        private long[] xVals;
+        private double[] yVals;
+        /** Whether the bounds and order have been found. */
+        private boolean boundsFound;
+        /** The bounds of the items that are not NaN, or null if none. */
+        private Range xRange;
+        private Range yRange;
+        /** Whether the times are in order. */
+        private boolean ascending;
+        /** The downsampled points for the domain view, or null to use all. */
+        private long[] viewXVals;
+        private double[] viewYVals;
+        /** The levels of detail for the values, or null if there are none. */
+        private MinMaxPyramid pyramid;
+
+        /**
+         * Series constructor.
+         *
+         * @param key
+         * @param xVals
+         * @param yVals
+         */
+        private Series(Comparable<?> key, long[] xVals, double[] yVals) {
+            this.key = key;
+            this.xVals = xVals;
+            this.yVals = yVals;
+        }
+
+        /**
+         * @param item
+         * @return The y value for the given item.
+         */
+        private double getY(int item) {
+            if(viewYVals != null) {
+                return viewYVals[item];
+            }
+            return yVals.length == 1 ? yVals[0] : yVals[item];
+        }
+
+        /**
+         * @param item
+         * @return The x value for the given item.
+         */
+        private long getX(int item) {
+            return viewXVals != null ? viewXVals[item] : xVals[item];
+        }
+
+        /**
+         * @return The number of items.
+         */
+        private int getItemCount() {
+            return viewXVals != null ? viewXVals.length : xVals.length;
+        }
+
+        /**
+         * Finds the bounds of the items that are not NaN and whether the
+         * times are in order, if they have not been found.
+         */
+        private void findBounds() {
+            if(boundsFound) {
+                return;
+            }
+            long xMin = Long.MAX_VALUE;
+            long xMax = Long.MIN_VALUE;
+            double yMin = Double.POSITIVE_INFINITY;
+            double yMax = Double.NEGATIVE_INFINITY;
+            int nItems = xVals.length;
+            ascending = true;
+            long x;
+            double y;
+            for(int i = 0; i < nItems; i++) {
+                x = xVals[i];
+                if(i > 0 && x < xVals[i - 1]) {
+                    // The times of the segment breaks may not be in order
+                    ascending = false;
+                }
+                y = yVals.length == 1 ? yVals[0] : yVals[i];
+                if(Double.isNaN(y)) {
+                    continue;
+                }
+                if(x < xMin) {
+                    xMin = x;
+                }
+                if(x > xMax) {
+                    xMax = x;
+                }
+                if(y < yMin) {
+                    yMin = y;
+                }
+                if(y > yMax) {
+                    yMax = y;
+                }
+            }
+            xRange = xMin <= xMax ? new Range(xMin, xMax) : null;
+            yRange = yMin <= yMax ? new Range(yMin, yMax) : null;
+            boundsFound = true;
+        }
+    }
+
+    private List<Series> seriesList = new ArrayList<Series>();
+    /** The domain view, used when viewWidth is greater than 0. */
+    private double viewLower;
+    private double viewUpper;
+    private int viewWidth;
+
+    /**
+     * Adds a series.
+     *
+     * @param key The key for the series.
+     * @param xVals The times in ms.
+     * @param yVals The values, which must be as long as the times or of
+     *            length 1 for a constant value.
+     * @return The index of the series.
+     */
+    public int addSeries(Comparable<?> key, long[] xVals, double[] yVals) {
+        checkLengths(xVals, yVals);
+        Series s = new Series(key, xVals, yVals);
+        updateView(s);
+        seriesList.add(s);
+        fireDatasetChanged();
+        return seriesList.size() - 1;
+    }
+
+    /**
+     * Replaces the values of the given series.
+     *
+     * @param series The index of the series.
+     * @param xVals The times in ms.
+     * @param yVals The values, which must be as long as the times or of
+     *            length 1 for a constant value.
+     */
+    public void setSeriesValues(int series, long[] xVals, double[] yVals) {
+        checkLengths(xVals, yVals);
+        Series s = seriesList.get(series);
+        s.xVals = xVals;
+        s.yVals = yVals;
+        s.boundsFound = false;
+        s.pyramid = null;
+        updateView(s);
+        fireDatasetChanged();
+    }
+
+    /**
+     * Sets the levels of detail to use for downsampling the given series. They
+     * are only used if they were made for the same arrays as the series has
+     * now.
+     *
+     * @param series The index of the series.
+     * @param pyramid
+     * @return If they were used.
+     */
+    public boolean setPyramid(int series, MinMaxPyramid pyramid) {
+        if(series >= seriesList.size()) {
+            return false;
+        }
+        Series s = seriesList.get(series);
+        if(pyramid.getXVals() != s.xVals || pyramid.getYVals() != s.yVals) {
+            return false;
+        }
+        // The downsampled points are the same, so the view is not changed
+        s.pyramid = pyramid;
+        return true;
+    }
+
+    /**
+     * Gets the levels of detail used for downsampling the given series.
+     *
+     * @param series The index of the series.
+     * @return The MinMaxPyramid or null if there is none.
+     */
+    public MinMaxPyramid getPyramid(int series) {
+        return seriesList.get(series).pyramid;
+    }
+
+    /**
+     * Sets the domain view, downsampling the series that have more points in
+     * it than can be seen. Nothing is done if it has not changed.
+     *
+     * @param lower The start of the domain.
+     * @param upper The end of the domain.
+     * @param width The width in pixels or 0 to use all the points.
+     */
+    public void setDomainView(double lower, double upper, int width) {
+        if(lower == viewLower && upper == viewUpper && width == viewWidth) {
+            return;
+        }
+        viewLower = lower;
+        viewUpper = upper;
+        viewWidth = width;
+        for(Series s : seriesList) {
+            updateView(s);
+        }
+        fireDatasetChanged();
+    }
+
+    /**
+     * Finds the downsampled points for the domain view for the given series
+     * if it is needed.
+     *
+     * @param s
+     */
+    private void updateView(Series s) {
+        s.viewXVals = null;
+        s.viewYVals = null;
+        if(viewWidth <= 0 || s.yVals.length == 1) {
+            return;
+        }
+        s.findBounds();
+        int maxPoints = MinMaxDownsampler.POINTS_PER_BUCKET * viewWidth;
+        int nPoints = s.ascending ? MinMaxDownsampler.countInDomain(s.xVals,
+            viewLower, viewUpper) : s.xVals.length;
+        if(nPoints <= maxPoints) {
+            // The renderer only uses the points in the domain when they are
+            // in order, so all of them can be used
+            return;
+        }
+        LongColumn xOut = new LongColumn(maxPoints + 16);
+        DoubleColumn yOut = new DoubleColumn(maxPoints + 16);
+        if(s.pyramid != null && s.ascending) {
+            s.pyramid.downsample(viewLower, viewUpper, viewWidth, xOut, yOut);
+        } else {
+            MinMaxDownsampler.downsample(s.xVals, s.yVals, s.ascending,
+                viewLower, viewUpper, viewWidth, xOut, yOut);
+        }
+        s.viewXVals = xOut.trimToSize();
+        s.viewYVals = yOut.trimToSize();
+    }
+
+    /**
+     * Removes all the series.
+     */
+    public void removeAllSeries() {
+        seriesList.clear();
+        fireDatasetChanged();
+    }
+
+    /**
+     * Checks that the lengths of the given arrays can be used for a series.
+     *
+     * @param xVals
+     * @param yVals
+     * @throws IllegalArgumentException If they cannot.
+     */
+    private static void checkLengths(long[] xVals, double[] yVals) {
+        if(yVals.length != 1 && yVals.length != xVals.length) {
+            throw new IllegalArgumentException("Got " + yVals.length
+                + " values for " + xVals.length + " times");
+        }
+    }
+
+    /**
+     * Gets the time values of the given series. These are the array that was
+     * given, not a copy.
+     *
+     * @param series The index of the series.
+     * @return
+     */
+    public long[] getXVals(int series) {
+        return seriesList.get(series).xVals;
+    }
+
+    /**
+     * Gets the values of the given series. These are the array that was
+     * given, not a copy.
+     *
+     * @param series The index of the series.
+     * @return
+     */
+    public double[] getYVals(int series) {
+        return seriesList.get(series).yVals;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.jfree.data.general.AbstractSeriesDataset#getSeriesCount()
+     */
+    @Override
+    public int getSeriesCount() {
+        return seriesList.size();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.jfree.data.general.AbstractSeriesDataset#getSeriesKey(int)
+     */
+    @SuppressWarnings("rawtypes")
+    @Override
+    public Comparable getSeriesKey(int series) {
+        return seriesList.get(series).key;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.jfree.data.xy.AbstractXYDataset#getDomainOrder()
+     */
+    @Override
+    public DomainOrder getDomainOrder() {
+        for(Series s : seriesList) {
+            s.findBounds();
+            if(!s.ascending) {
+                return DomainOrder.NONE;
+            }
+        }
+        return DomainOrder.ASCENDING;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.jfree.data.xy.XYDataset#getItemCount(int)
+     */
+    @Override
+    public int getItemCount(int series) {
+        return seriesList.get(series).getItemCount();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.jfree.data.xy.AbstractXYDataset#getXValue(int, int)
+     */
+    @Override
+    public double getXValue(int series, int item) {
+        return seriesList.get(series).getX(item);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.jfree.data.xy.AbstractXYDataset#getYValue(int, int)
+     */
+    @Override
+    public double getYValue(int series, int item) {
+        return seriesList.get(series).getY(item);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.jfree.data.xy.XYDataset#getX(int, int)
+     */
+    @Override
+    public Number getX(int series, int item) {
+        return Long.valueOf(seriesList.get(series).getX(item));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.jfree.data.xy.XYDataset#getY(int, int)
+     */
+    @Override
+    public Number getY(int series, int item) {
+        return Double.valueOf(seriesList.get(series).getY(item));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.jfree.data.xy.AbstractIntervalXYDataset#getStartXValue(int,
+     * int)
+     */
+    @Override
+    public double getStartXValue(int series, int item) {
+        return getXValue(series, item);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.jfree.data.xy.AbstractIntervalXYDataset#getEndXValue(int, int)
+     */
+    @Override
+    public double getEndXValue(int series, int item) {
+        return getXValue(series, item);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.jfree.data.xy.AbstractIntervalXYDataset#getStartYValue(int,
+     * int)
+     */
+    @Override
+    public double getStartYValue(int series, int item) {
+        return getYValue(series, item);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.jfree.data.xy.AbstractIntervalXYDataset#getEndYValue(int, int)
+     */
+    @Override
+    public double getEndYValue(int series, int item) {
+        return getYValue(series, item);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.jfree.data.xy.IntervalXYDataset#getStartX(int, int)
+     */
+    @Override
+    public Number getStartX(int series, int item) {
+        return getX(series, item);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.jfree.data.xy.IntervalXYDataset#getEndX(int, int)
+     */
+    @Override
+    public Number getEndX(int series, int item) {
+        return getX(series, item);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.jfree.data.xy.IntervalXYDataset#getStartY(int, int)
+     */
+    @Override
+    public Number getStartY(int series, int item) {
+        return getY(series, item);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.jfree.data.xy.IntervalXYDataset#getEndY(int, int)
+     */
+    @Override
+    public Number getEndY(int series, int item) {
+        return getY(series, item);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.jfree.data.DomainInfo#getDomainBounds(boolean)
+     */
+    @Override
+    public Range getDomainBounds(boolean includeInterval) {
+        Range range = null;
+        for(Series s : seriesList) {
+            s.findBounds();
+            range = Range.combine(range, s.xRange);
+        }
+        return range;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.jfree.data.DomainInfo#getDomainLowerBound(boolean)
+     */
+    @Override
+    public double getDomainLowerBound(boolean includeInterval) {
+        Range range = getDomainBounds(includeInterval);
+        return range == null ? Double.NaN : range.getLowerBound();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.jfree.data.DomainInfo#getDomainUpperBound(boolean)
+     */
+    @Override
+    public double getDomainUpperBound(boolean includeInterval) {
+        Range range = getDomainBounds(includeInterval);
+        return range == null ? Double.NaN : range.getUpperBound();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.jfree.data.RangeInfo#getRangeBounds(boolean)
+     */
+    @Override
+    public Range getRangeBounds(boolean includeInterval) {
+        Range range = null;
+        for(Series s : seriesList) {
+            s.findBounds();
+            range = Range.combine(range, s.yRange);
+        }
+        return range;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.jfree.data.RangeInfo#getRangeLowerBound(boolean)
+     */
+    @Override
+    public double getRangeLowerBound(boolean includeInterval) {
+        Range range = getRangeBounds(includeInterval);
+        return range == null ? Double.NaN : range.getLowerBound();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.jfree.data.RangeInfo#getRangeUpperBound(boolean)
+     */
+    @Override
+    public double getRangeUpperBound(boolean includeInterval) {
+        Range range = getRangeBounds(includeInterval);
+        return range == null ? Double.NaN : range.getUpperBound();
+    }
+
+}
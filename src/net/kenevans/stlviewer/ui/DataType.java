@@ -1,18 +1,15 @@
 package net.kenevans.stlviewer.ui;
 
 import java.awt.Paint;
-import java.util.Date;
+import java.util.Arrays;
 
 import net.kenevans.stlviewer.model.IConstants;
 import net.kenevans.stlviewer.preferences.Settings;
+import net.kenevans.stlviewer.utils.RunningAverage;
 
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.AbstractXYItemRenderer;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
-import org.jfree.data.time.FixedMillisecond;
-import org.jfree.data.time.MovingAverage;
-import org.jfree.data.time.TimeSeries;
-import org.jfree.data.time.TimeSeriesCollection;
 
 /*
  * Created on Jul 17, 2014
@@ -33,10 +30,18 @@ public class DataType implements IConstants
     protected Paint paint;
     protected boolean visible;
     protected int movingAvgCount;
+    /** Whether movingAvgCount is in seconds rather than points. */
+    protected boolean movingAvgSeconds;
 
     protected XYPlot plot;
-    protected TimeSeriesCollection dataset;
+    protected ArrayXYDataset dataset;
     protected AbstractXYItemRenderer renderer;
+    /** The index of the unaveraged series or -1 if it is not in the dataset. */
+    protected int dataSeriesIndex = -1;
+    /** The index of the moving average series or -1 if there is none. */
+    protected int mavSeriesIndex = -1;
+    /** The number of values in the dataset, used for appending. */
+    protected int nValues;
 
     protected Settings settings;
 
@@ -49,11 +54,13 @@ public class DataType implements IConstants
      * @param paint
      * @param visible
      * @param movingAvgCount
+     * @param movingAvgSeconds Whether movingAvgCount is in seconds rather
+     *            than points.
      */
     public DataType(XYPlot plot, String name, int datasetIndex, Paint paint,
-        boolean visible, int movingAvgCount) {
+        boolean visible, int movingAvgCount, boolean movingAvgSeconds) {
         this(plot, name, datasetIndex, datasetIndex, paint, visible,
-            movingAvgCount);
+            movingAvgCount, movingAvgSeconds);
     }
 
     /**
@@ -66,9 +73,12 @@ public class DataType implements IConstants
      * @param paint
      * @param visible
      * @param movingAvgCount
+     * @param movingAvgSeconds Whether movingAvgCount is in seconds rather
+     *            than points.
      */
     public DataType(XYPlot plot, String name, int datasetIndex, int axisIndex,
-        Paint paint, boolean visible, int movingAvgCount) {
+        Paint paint, boolean visible, int movingAvgCount,
+        boolean movingAvgSeconds) {
         this.plot = plot;
         this.name = name;
         this.datasetIndex = datasetIndex;
@@ -76,22 +86,62 @@ public class DataType implements IConstants
         this.paint = paint;
         this.visible = visible;
         this.movingAvgCount = movingAvgCount;
+        this.movingAvgSeconds = movingAvgSeconds;
     }
 
     /**
-     * Creates a dataset for the given model for this data type.
+     * Creates a dataset for the given model for this data type. The dataset
+     * uses the given arrays without copying them.
      * 
      * @param model
      * @return
      */
-    public TimeSeriesCollection createDataset(long[] timeVals, double[] yVals) {
-        dataset = new TimeSeriesCollection();
+    public ArrayXYDataset createDataset(long[] timeVals, double[] yVals) {
+        dataset = new ArrayXYDataset();
         renderer = new XYLineAndShapeRenderer();
 
         addSeries(dataset, name, paint, timeVals, yVals, movingAvgCount);
+        // The unaveraged series is first and the moving average last
+        dataSeriesIndex = movingAvgCount < 2 ? 0 : -1;
+        mavSeriesIndex = Math.abs(movingAvgCount) > 1
+            ? dataset.getSeriesCount() - 1 : -1;
+        nValues = timeVals.length;
         return dataset;
     }
 
+    /**
+     * Adds the values after those already in the dataset to it. The given
+     * arrays are all of the values, as for createDataset, and must begin with
+     * the ones already added. The series uses the new arrays. Only the moving
+     * average for the new values is calculated.
+     * 
+     * @param timeVals
+     * @param yVals
+     * @return If the values were added. If false, use createDataset.
+     */
+    public boolean appendToDataset(long[] timeVals, double[] yVals) {
+        if(dataset == null || (dataSeriesIndex < 0 && mavSeriesIndex < 0)
+            || timeVals.length < nValues) {
+            return false;
+        }
+        int nPoints = timeVals.length;
+        if(nPoints == nValues) {
+            return true;
+        }
+        if(dataSeriesIndex >= 0) {
+            dataset.setSeriesValues(dataSeriesIndex, timeVals, yVals);
+        }
+        if(mavSeriesIndex >= 0) {
+            // The earlier averages do not change
+            double[] mavVals = Arrays.copyOf(
+                dataset.getYVals(mavSeriesIndex), nPoints);
+            movingAverage(timeVals, yVals, nValues, mavVals);
+            dataset.setSeriesValues(mavSeriesIndex, timeVals, mavVals);
+        }
+        nValues = nPoints;
+        return true;
+    }
+
     /**
      * Adds a series to the given dataset.
      * 
@@ -99,31 +149,17 @@ public class DataType implements IConstants
      * @param seriesName Name of the series.
      * @param paint Paint (color) to use for the series.
      * @param timeVals Array of time values.
-     * @param yVals Array of data values.
+     * @param yVals Array of data values or an array of one value for a
+     *            constant.
      * @param movingAvgCount The movingAverageCount. Use 0 for the zone
      *            boundaries.
      */
-    protected void addSeries(TimeSeriesCollection dataset, String seriesName,
+    protected void addSeries(ArrayXYDataset dataset, String seriesName,
         Paint paint, long[] timeVals, double[] yVals, int movingAvgCount) {
-        int nPoints = timeVals.length;
-        int nDataPoints = yVals.length;
-        TimeSeries series = new TimeSeries(seriesName);
-
-        for(int n = 0; n < nPoints; n++) {
-            if(nDataPoints == 1) {
-                series.addOrUpdate(new FixedMillisecond(new Date(timeVals[n])),
-                    yVals[0]);
-            } else {
-                series.addOrUpdate(new FixedMillisecond(new Date(timeVals[n])),
-                    yVals[n]);
-            }
-        }
-
         // Plot the unaveraged data if the movingAvgCount in negative or 0 or 1
         // (in which case the moving average is the same as the unaveraged data)
         if(movingAvgCount < 2) {
-            dataset.addSeries(series);
-            int seriesIndex = dataset.indexOf(series);
+            int seriesIndex = dataset.addSeries(seriesName, timeVals, yVals);
             renderer.setSeriesPaint(seriesIndex, paint);
             renderer.setSeriesVisible(seriesIndex, visible);
         }
@@ -132,15 +168,36 @@ public class DataType implements IConstants
         // nMaV must be 1 or greater, 1 is the same as no average
         int absMovingAvgCount = Math.abs(movingAvgCount);
         if(absMovingAvgCount > 1) {
-            TimeSeries mavSeries = MovingAverage.createMovingAverage(series,
-                seriesName + " (" + movingAvgCount + " pt MA)",
-                absMovingAvgCount, 0);
-            dataset.addSeries(mavSeries);
-            int mavSeriesIndex = dataset.indexOf(mavSeries);
+            double[] mavVals = new double[timeVals.length];
+            movingAverage(timeVals, yVals, 0, mavVals);
+            int mavSeriesIndex = dataset.addSeries(seriesName + " ("
+                + movingAvgCount + (movingAvgSeconds ? " s MA)" : " pt MA)"),
+                timeVals, mavVals);
             renderer.setSeriesPaint(mavSeriesIndex, paint);
         }
     }
 
+    /**
+     * Calculates the moving average over the absolute value of movingAvgCount
+     * points or seconds with RunningAverage. The average starts over after
+     * each NaN.
+     * 
+     * @param timeVals
+     * @param yVals
+     * @param start The index of the first average to calculate.
+     * @param mavVals The array for the averages.
+     */
+    protected void movingAverage(long[] timeVals, double[] yVals, int start,
+        double[] mavVals) {
+        int count = Math.abs(movingAvgCount);
+        if(movingAvgSeconds) {
+            RunningAverage.timeAverage(timeVals, yVals, 1000L * count, start,
+                mavVals);
+        } else {
+            RunningAverage.pointAverage(yVals, count, start, mavVals);
+        }
+    }
+
     /**
      * @return The value of name.
      */
@@ -169,6 +226,14 @@ public class DataType implements IConstants
         this.datasetIndex = datasetIndex;
     }
 
+    /**
+     * @return The value of dataSeriesIndex, which is -1 if the unaveraged
+     *         series is not in the dataset.
+     */
+    public int getDataSeriesIndex() {
+        return dataSeriesIndex;
+    }
+
     /**
      * @return The value of axisIndex.
      */
@@ -221,10 +286,19 @@ public class DataType implements IConstants
     /**
      * @return The value of dataset.
      */
-    public TimeSeriesCollection getDataset() {
+    public ArrayXYDataset getDataset() {
         return dataset;
     }
 
+    /**
+     * Discards the dataset so it will be created again when needed.
+     */
+    public void clearDataset() {
+        dataset = null;
+        dataSeriesIndex = -1;
+        mavSeriesIndex = -1;
+    }
+
     /**
      * @return The value of renderer.
      */
@@ -7,7 +7,6 @@ import net.kenevans.stlviewer.preferences.Settings;
 
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYAreaRenderer;
-import org.jfree.data.time.TimeSeriesCollection;
 
 /*
  * Created on Jul 17, 2014
@@ -36,7 +35,7 @@ public class HrDataType extends DataType
      */
     public HrDataType(XYPlot plot, String name, int datasetIndex, Paint paint,
         boolean visible, int movingAvgCount) {
-        super(plot, name, datasetIndex, paint, visible, movingAvgCount);
+        super(plot, name, datasetIndex, paint, visible, movingAvgCount, false);
     }
 
     /**
@@ -54,7 +53,7 @@ public class HrDataType extends DataType
     public HrDataType(XYPlot plot, String name, int datasetIndex,
         int axisIndex, Paint paint, boolean visible, int movingAvgCount) {
         super(plot, name, datasetIndex, axisIndex, paint, visible,
-            movingAvgCount);
+            movingAvgCount, false);
     }
 
     /*
@@ -63,8 +62,8 @@ public class HrDataType extends DataType
      * @see net.kenevans.stlviewer.ui.DataType#createDataset(long[], double[])
      */
     @Override
-    public TimeSeriesCollection createDataset(long[] timeVals, double[] yVals) {
-        dataset = new TimeSeriesCollection();
+    public ArrayXYDataset createDataset(long[] timeVals, double[] yVals) {
+        dataset = new ArrayXYDataset();
         renderer = new XYAreaRenderer();
         String key;
 
@@ -88,10 +87,9 @@ public class HrDataType extends DataType
         if(nPoints > 2 && timeVals[0] != timeVals[nPoints - 1]) {
             int nZones = zoneVals.length;
             long[] zoneTimeVals = {timeVals[0], timeVals[nPoints - 1]};
-            // Only need an array of one since the value is constant
-            double[] zoneVal = new double[1];
             for(int i = 0; i < nZones; i++) {
-                zoneVal[0] = zoneVals[i];
+                // Only need an array of one since the value is constant
+                double[] zoneVal = {zoneVals[i]};
                 key = String.format(BOUNDARY_SERIES_NAME_PREFIX + "%.0f",
                     zoneVals[i]);
                 // Use 0 to not do a moving average
@@ -99,7 +97,22 @@ public class HrDataType extends DataType
             }
         }
 
+        dataSeriesIndex = -1;
+        mavSeriesIndex = -1;
+        nValues = timeVals.length;
         return dataset;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see net.kenevans.stlviewer.ui.DataType#appendToDataset(long[],
+     * double[])
+     */
+    @Override
+    public boolean appendToDataset(long[] timeVals, double[] yVals) {
+        // Only the end time of the zones changes, so recreate them
+        return false;
+    }
+
 }
@@ -4,11 +4,20 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JMenuItem;
 import javax.swing.JPopupMenu;
 import javax.swing.JSeparator;
+import javax.swing.SwingUtilities;
 
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
@@ -16,17 +25,20 @@ import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.DateAxis;
 import org.jfree.chart.axis.NumberAxis;
 import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.event.AxisChangeEvent;
+import org.jfree.chart.event.AxisChangeListener;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.AbstractXYItemRenderer;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.chart.title.TextTitle;
-import org.jfree.data.general.Series;
-import org.jfree.data.time.TimeSeriesCollection;
+import org.jfree.data.Range;
+import org.jfree.data.xy.XYDataset;
 
 import net.kenevans.core.utils.Utils;
 import net.kenevans.stlviewer.model.IConstants;
 import net.kenevans.stlviewer.model.STLFileModel;
 import net.kenevans.stlviewer.preferences.Settings;
+import net.kenevans.stlviewer.utils.MinMaxPyramid;
 
 /*
  * Created on Jul 29, 2012
@@ -40,6 +52,43 @@ import net.kenevans.stlviewer.preferences.Settings;
  */
 public class STLPlot implements IConstants
 {
+    /**
+     * PyramidJob holds a series for which a MinMaxPyramid is to be made in the
+     * background.
+     */
+    private static class PyramidJob
+    {
+        private ArrayXYDataset dataset;
+        private int series;
+        /** The dataset index of the data type. */
+        private int datasetIndex;
+        /** Whether the series is the unaveraged channel of the model. */
+        private boolean isData;
+        private long[] xVals;
+        private double[] yVals;
+        private MinMaxPyramid pyramid;
+    }
+
+    /**
+     * PlotState is the state of the plot that createDatasets needs. It is
+     * taken on the EDT with getPlotState and does not change, so
+     * createDatasets can use it on another thread.
+     */
+    public static class PlotState
+    {
+        private final XYPlot plot;
+        /** The visibilities of the data types or null if there are none. */
+        private final boolean[] visibilities;
+        /** The width of the domain views. */
+        private final int viewWidth;
+
+        private PlotState(XYPlot plot, boolean[] visibilities, int viewWidth) {
+            this.plot = plot;
+            this.visibilities = visibilities;
+            this.viewWidth = viewWidth;
+        }
+    }
+
     // /** Default value for the range maximum. */
     // private static final double YMAX = 160;
     // /** Value for the domain maximum. */
@@ -50,6 +99,21 @@ public class STLPlot implements IConstants
     // /** Used to retain the range limits for resetting the plot. */
     // private double defaultYMax;
 
+    /**
+     * The thread that makes the MinMaxPyramids, shared so there is only one
+     * build at a time.
+     */
+    private static final ExecutorService pyramidExecutor = Executors
+        .newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Pyramid Builder");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    /** The current MinMaxPyramid build or null. Used only on the EDT. */
+    private Future<?> pyramidFuture;
+
     /** Whether to show markers in the plot. */
     private boolean showMarkers = false;
 
@@ -65,6 +129,16 @@ public class STLPlot implements IConstants
     /** The array of types */
     private DataType[] dataTypes;
 
+    /** The last width used for the domain views. */
+    private int viewWidth = FRAME_WIDTH;
+
+    /** Sets the domain views of the datasets when the domain axis changes. */
+    private AxisChangeListener domainAxisListener = new AxisChangeListener() {
+        public void axisChanged(AxisChangeEvent ev) {
+            updateDomainViews();
+        }
+    };
+
     private JCheckBoxMenuItem hrVisibleItem;
     private JCheckBoxMenuItem hrZonesVisibleItem;
     private JCheckBoxMenuItem speedVisibleItem;
@@ -107,30 +181,54 @@ public class STLPlot implements IConstants
         // Add to the popup menu
         extendPopupMenu();
 
+        // Downsample again for the new width when resized
+        chartPanel.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent ev) {
+                updateDomainViews();
+            }
+        });
+
         XYPlot plot = chart.getXYPlot();
-        Settings settings = getSettings();
+        plot.getDomainAxis().addChangeListener(domainAxisListener);
 
         // Makes the grid lines easier to see
         plot.setRangeGridlinePaint(Color.BLACK);
         plot.setDomainGridlinePaint(Color.BLACK);
 
-        dataTypes = new DataType[] {
+        dataTypes = createDataTypes(plot, getSettings());
+
+        return chart;
+    }
+
+    /**
+     * Creates the data types for the given plot from the given settings. They
+     * have no datasets.
+     * 
+     * @param plot
+     * @param settings
+     * @return
+     */
+    private static DataType[] createDataTypes(XYPlot plot,
+        Settings settings) {
+        return new DataType[] {
             // Don't use Boolean.getBoolean. It gets a system value with that
             // name
             new DataType(plot, D_HR_NAME, HR_INDEX, Color.decode(D_HR_COLOR),
-                settings.getHrVisible(), settings.getHrRollingAvgCount()),
+                settings.getHrVisible(), settings.getHrRollingAvgCount(),
+                settings.getHrRollingAvgSeconds()),
             new DataType(plot, D_SPEED_NAME, SPEED_INDEX,
                 Color.decode(D_SPEED_COLOR), settings.getSpeedVisible(),
-                settings.getSpeedRollingAvgCount()),
+                settings.getSpeedRollingAvgCount(),
+                settings.getSpeedRollingAvgSeconds()),
             new DataType(plot, D_ELE_NAME, ELE_INDEX, Color.decode(D_ELE_COLOR),
-                settings.getEleVisible(), settings.getEleRollingAvgCount()),
+                settings.getEleVisible(), settings.getEleRollingAvgCount(),
+                settings.getEleRollingAvgSeconds()),
             new HrDataType(plot, D_HR_ZONES_NAME, HR_ZONES_INDEX,
                 Color.decode(D_HR_ZONES_COLOR), settings.getHrZonesVisible(),
                 0),
             // Comment to keep brace on a separate line
         };
-
-        return chart;
     }
 
     /**
@@ -198,14 +296,7 @@ public class STLPlot implements IConstants
             public void actionPerformed(ActionEvent ae) {
                 boolean selected = ((JCheckBoxMenuItem)ae.getSource())
                     .isSelected();
-                int datasetIndex = HR_INDEX;
-                DataType type = dataTypes[datasetIndex];
-                int axisIndex = type.getDatasetIndex();
-                type.setVisible(selected);
-                XYPlot plot = type.getPlot();
-                plot.getRangeAxis(axisIndex).setVisible(selected);
-                plot.setDataset(datasetIndex,
-                    selected ? type.getDataset() : null);
+                setTypeVisible(HR_INDEX, selected);
             }
         });
         menu.add(hrVisibleItem);
@@ -216,14 +307,7 @@ public class STLPlot implements IConstants
             public void actionPerformed(ActionEvent ae) {
                 boolean selected = ((JCheckBoxMenuItem)ae.getSource())
                     .isSelected();
-                int datasetIndex = HR_ZONES_INDEX;
-                DataType type = dataTypes[datasetIndex];
-                int axisIndex = type.getDatasetIndex();
-                type.setVisible(selected);
-                XYPlot plot = type.getPlot();
-                plot.getRangeAxis(axisIndex).setVisible(selected);
-                plot.setDataset(datasetIndex,
-                    selected ? type.getDataset() : null);
+                setTypeVisible(HR_ZONES_INDEX, selected);
             }
         });
         menu.add(hrZonesVisibleItem);
@@ -234,14 +318,7 @@ public class STLPlot implements IConstants
             public void actionPerformed(ActionEvent ae) {
                 boolean selected = ((JCheckBoxMenuItem)ae.getSource())
                     .isSelected();
-                int datasetIndex = SPEED_INDEX;
-                DataType type = dataTypes[datasetIndex];
-                int axisIndex = type.getDatasetIndex();
-                type.setVisible(selected);
-                XYPlot plot = type.getPlot();
-                plot.getRangeAxis(axisIndex).setVisible(selected);
-                plot.setDataset(datasetIndex,
-                    selected ? type.getDataset() : null);
+                setTypeVisible(SPEED_INDEX, selected);
             }
         });
         menu.add(speedVisibleItem);
@@ -252,14 +329,7 @@ public class STLPlot implements IConstants
             public void actionPerformed(ActionEvent ae) {
                 boolean selected = ((JCheckBoxMenuItem)ae.getSource())
                     .isSelected();
-                int datasetIndex = ELE_INDEX;
-                DataType type = dataTypes[datasetIndex];
-                int axisIndex = type.getDatasetIndex();
-                type.setVisible(selected);
-                XYPlot plot = type.getPlot();
-                plot.getRangeAxis(axisIndex).setVisible(selected);
-                plot.setDataset(datasetIndex,
-                    selected ? type.getDataset() : null);
+                setTypeVisible(ELE_INDEX, selected);
             }
         });
         menu.add(eleVisibleItem);
@@ -277,6 +347,37 @@ public class STLPlot implements IConstants
         menu.add(item);
     }
 
+    /**
+     * Shows or hides the given data type. A data type that was hidden when
+     * the model was added has no dataset, so it is created from the current
+     * model the first time it is shown.
+     * 
+     * @param datasetIndex
+     * @param selected
+     */
+    private void setTypeVisible(int datasetIndex, boolean selected) {
+        DataType type = dataTypes[datasetIndex];
+        int axisIndex = type.getDatasetIndex();
+        type.setVisible(selected);
+        XYPlot plot = type.getPlot();
+        plot.getRangeAxis(axisIndex).setVisible(selected);
+        if(selected && type.getDataset() == null && viewer != null
+            && viewer.getModel() != null) {
+            try {
+                addDatasetToPlot(type, viewer.getModel());
+                setAllMarkers();
+                buildPyramids(viewer.getModel());
+                // The info has the statistics for a newly derived channel
+                viewer.updateInfoText(viewer.getModel());
+            } catch(Exception ex) {
+                Utils.excMsg("Error adding data to plot", ex);
+                ex.printStackTrace();
+            }
+            return;
+        }
+        plot.setDataset(datasetIndex, selected ? type.getDataset() : null);
+    }
+
     // public String info() {
     // String info = "Plot info" + LS;
     // XYPlot plot = chartPanel.getChart().getXYPlot();
@@ -309,6 +410,7 @@ public class STLPlot implements IConstants
             ValueAxis timeAxis = new DateAxis("Time");
             timeAxis.setLowerMargin(0.02); // Reduce the default margins
             timeAxis.setUpperMargin(0.02);
+            timeAxis.addChangeListener(domainAxisListener);
             plot.setDomainAxis(timeAxis);
             NumberAxis valueAxis = new NumberAxis("HR");
             valueAxis.setAutoRangeIncludesZero(false); // Override default
@@ -317,12 +419,12 @@ public class STLPlot implements IConstants
         if(dataTypes == null) {
             return;
         }
-        TimeSeriesCollection dataset;
+        ArrayXYDataset dataset;
         for(DataType type : dataTypes) {
             dataset = type.getDataset();
             if(dataset != null) {
                 try {
-                    ((TimeSeriesCollection)dataset).removeAllSeries();
+                    dataset.removeAllSeries();
                 } catch(Exception ex) {
                     Utils.excMsg("Error clearing plot", ex);
                 }
@@ -339,15 +441,13 @@ public class STLPlot implements IConstants
     }
 
     /**
-     * Resets the plot.
+     * Resets the plot from the settings and leaves it empty. The model is put
+     * back with createDatasets and setDatasets, so the datasets can be made
+     * off the EDT.
      */
     public void reset() {
         // Clear the plot
         clearPlot();
-        STLFileModel model = null;
-        if(viewer != null) {
-            model = viewer.getModel();
-        }
 
         // Reset the context menu
         Settings settings = getSettings();
@@ -362,26 +462,7 @@ public class STLPlot implements IConstants
 
         // Recreate the data types
         XYPlot plot = chartPanel.getChart().getXYPlot();
-        dataTypes = new DataType[] {
-            // Don't use Boolean.getBoolean. It gets a system value with that
-            // name
-            new DataType(plot, D_HR_NAME, HR_INDEX, Color.decode(D_HR_COLOR),
-                settings.getHrVisible(), settings.getHrRollingAvgCount()),
-            new DataType(plot, D_SPEED_NAME, SPEED_INDEX,
-                Color.decode(D_SPEED_COLOR), settings.getSpeedVisible(),
-                settings.getSpeedRollingAvgCount()),
-            new DataType(plot, D_ELE_NAME, ELE_INDEX, Color.decode(D_ELE_COLOR),
-                settings.getEleVisible(), settings.getEleRollingAvgCount()),
-            new HrDataType(plot, D_HR_ZONES_NAME, HR_ZONES_INDEX,
-                Color.decode(D_HR_ZONES_COLOR), settings.getHrZonesVisible(),
-                0),
-            // Comment to keep brace on a separate line
-        };
-
-        // Add the model to the chart which causes it to recalculate
-        if(model != null) {
-            addModelToChart(model);
-        }
+        dataTypes = createDataTypes(plot, getSettings());
     }
 
     /**
@@ -391,7 +472,7 @@ public class STLPlot implements IConstants
         if(dataTypes == null) {
             return;
         }
-        TimeSeriesCollection dataset;
+        ArrayXYDataset dataset;
         AbstractXYItemRenderer renderer;
         for(DataType type : dataTypes) {
             dataset = type.getDataset();
@@ -399,7 +480,7 @@ public class STLPlot implements IConstants
             if(dataset != null) {
                 try {
                     if(renderer instanceof XYLineAndShapeRenderer) {
-                        setSeriesMarkers((TimeSeriesCollection)dataset,
+                        setSeriesMarkers(dataset,
                             (XYLineAndShapeRenderer)renderer, showMarkers);
                     }
                 } catch(Exception ex) {
@@ -415,7 +496,7 @@ public class STLPlot implements IConstants
      * @param dataset
      * @param showMarkers
      */
-    public void setSeriesMarkers(TimeSeriesCollection dataset,
+    public void setSeriesMarkers(ArrayXYDataset dataset,
         XYLineAndShapeRenderer renderer, boolean showMarkers) {
         int nSeries = dataset.getSeriesCount();
         if(nSeries == 0) {
@@ -424,7 +505,7 @@ public class STLPlot implements IConstants
         // Change for the series that are not boundaries
         // String seriesName;
         for(int i = 0; i < nSeries; i++) {
-            // seriesName = (String)dataset.getSeries(i).getKey();
+            // seriesName = (String)dataset.getSeriesKey(i);
             // if(!seriesName.startsWith(BOUNDARY_SERIES_NAME_PREFIX)) {
             renderer.setSeriesShapesVisible(i, showMarkers);
             // }
@@ -432,7 +513,9 @@ public class STLPlot implements IConstants
     }
 
     /**
-     * Fills in the chart with the data from the given model.
+     * Fills in the chart with the data from the given model. Only the visible
+     * data types get a dataset, so the values for a channel that is not shown
+     * are not derived or copied into the chart.
      * 
      * @param model
      */
@@ -442,16 +525,134 @@ public class STLPlot implements IConstants
             return;
         }
         try {
+            setDatasets(model,
+                createDatasets(model, getPlotState(), getSettings()));
+        } catch(Exception ex) {
+            Utils.excMsg("Error adding data to plot", ex);
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Gets the state of the plot for use with createDatasets. Call on the
+     * EDT.
+     * 
+     * @return The PlotState, which has the visibilities of the current data
+     *         types, or those from the settings if there are none.
+     */
+    public PlotState getPlotState() {
+        boolean[] visibilities = null;
+        if(dataTypes != null) {
+            visibilities = new boolean[dataTypes.length];
+            for(int i = 0; i < dataTypes.length; i++) {
+                visibilities[i] = dataTypes[i].getVisible();
+            }
+        }
+        return new PlotState(chartPanel.getChart().getXYPlot(), visibilities,
+            viewWidth);
+    }
+
+    /**
+     * Creates new data types from the given settings with the visibilities
+     * in the given PlotState and creates the datasets for the visible ones
+     * from the given model. Only the arguments are used and the plot is not
+     * changed, so this may be done off the event dispatch thread if the
+     * settings are not changed meanwhile. Use setDatasets to put them in the
+     * plot.
+     * 
+     * @param model
+     * @param state The PlotState as from getPlotState.
+     * @param settings
+     * @return The data types.
+     */
+    public static DataType[] createDatasets(STLFileModel model,
+        PlotState state, Settings settings) {
+        DataType[] types = createDataTypes(state.plot, settings);
+        boolean[] visibilities = state.visibilities;
+        int datasetIndex;
+        long[] timeVals;
+        double[] yVals;
+        for(int i = 0; i < types.length; i++) {
+            DataType type = types[i];
+            type.setSettings(settings);
+            if(visibilities != null && i < visibilities.length) {
+                type.setVisible(visibilities[i]);
+            }
+            if(!type.getVisible()) {
+                continue;
+            }
+            datasetIndex = type.getDatasetIndex();
+            timeVals = getTimeVals(datasetIndex, model);
+            yVals = getYVals(datasetIndex, model);
+            if(timeVals == null || yVals == null) {
+                throw new IllegalArgumentException(
+                    "Invalid data set datasetIndex:" + datasetIndex);
+            }
+            type.createDataset(timeVals, yVals);
+            // Find the bounds here rather than when it is in the plot
+            type.getDataset().getRangeBounds(false);
+        }
+        // Downsample to the whole domain as setDatasets will
+        Range domain = getDomain(types);
+        if(domain != null) {
+            setDomainViews(types, domain.getLowerBound(),
+                domain.getUpperBound(), state.viewWidth);
+        }
+        return types;
+    }
+
+    /**
+     * Makes the MinMaxPyramids for the datasets of the given data types in
+     * this thread, taking those for the model channels from the model. Use
+     * only for data types that are not in the plot yet, as from
+     * createDatasets.
+     * 
+     * @param types
+     * @param model
+     */
+    public static void setPyramids(DataType[] types, STLFileModel model) {
+        ArrayXYDataset dataset;
+        for(DataType type : types) {
+            dataset = type.getDataset();
+            if(dataset == null) {
+                continue;
+            }
+            for(int i = 0; i < dataset.getSeriesCount(); i++) {
+                if(dataset.getYVals(i).length == 1) {
+                    // Constant
+                    continue;
+                }
+                dataset.setPyramid(i, getPyramid(model,
+                    type.getDatasetIndex(), i == type.getDataSeriesIndex(),
+                    dataset.getXVals(i), dataset.getYVals(i)));
+            }
+        }
+    }
+
+    /**
+     * Puts the given data types, as from createDatasets, and their datasets
+     * in the plot in place of the current ones. Sets up the range axes.
+     * 
+     * @param model The model the datasets were made from.
+     * @param types
+     */
+    public void setDatasets(STLFileModel model, DataType[] types) {
+        dataTypes = types;
+        try {
+            // Downsample to the whole domain first, so the axes are fitted
+            // to the views rather than to all the points. Nothing is done if
+            // createDatasets did it for the same width.
+            Range domain = getDomain(dataTypes);
+            if(domain != null) {
+                setDomainViews(domain.getLowerBound(), domain.getUpperBound());
+            }
             JFreeChart chart = chartPanel.getChart();
             chart.removeSubtitle(subTitle);
             subTitle.setText(model.getFileName());
             chart.addSubtitle(subTitle);
             int datasetIndex, axisIndex;
-            long[] timeVals;
-            double[] yVals;
             XYPlot plot;
             for(DataType type : dataTypes) {
-                type.setSettings(getSettings());
                 plot = type.getPlot();
                 datasetIndex = type.getDatasetIndex();
                 if(datasetIndex == HR_ZONES_INDEX) {
@@ -472,60 +673,311 @@ public class STLPlot implements IConstants
                 }
                 // type.getPlot().setRangeAxisLocation(datasetIndex,
                 // AxisLocation.BOTTOM_OR_LEFT);
-                switch(datasetIndex) {
-                case HR_INDEX:
-                    timeVals = model.getHrTimeVals();
-                    yVals = model.getHrVals();
-                    type.createDataset(timeVals, yVals);
-                    plot.setDataset(datasetIndex, type.getDataset());
-                    plot.mapDatasetToRangeAxis(datasetIndex, axisIndex);
-                    plot.setRenderer(datasetIndex, type.getRenderer());
-                    break;
-                case HR_ZONES_INDEX:
-                    timeVals = model.getHrTimeVals();
-                    yVals = model.getHrVals();
-                    type.createDataset(timeVals, yVals);
-                    plot.setDataset(datasetIndex, type.getDataset());
-                    plot.mapDatasetToRangeAxis(datasetIndex, axisIndex);
-                    plot.setRenderer(datasetIndex, type.getRenderer());
-                    break;
-                case SPEED_INDEX:
-                    timeVals = model.getSpeedTimeVals();
-                    yVals = model.getSpeedVals();
-                    type.createDataset(timeVals, yVals);
-                    plot.setDataset(datasetIndex, type.getDataset());
-                    plot.mapDatasetToRangeAxis(datasetIndex, axisIndex);
-                    plot.setRenderer(datasetIndex, type.getRenderer());
-                    break;
-                case ELE_INDEX:
-                    timeVals = model.getEleTimeVals();
-                    yVals = model.getEleVals();
-                    // yVals = MathUtils.medianFilter(yVals, 10);
-                    type.createDataset(timeVals, yVals);
+                if(type.getVisible() && type.getDataset() != null) {
                     plot.setDataset(datasetIndex, type.getDataset());
                     plot.mapDatasetToRangeAxis(datasetIndex, axisIndex);
                     plot.setRenderer(datasetIndex, type.getRenderer());
-                    break;
-                default:
-                    Utils.errMsg(
-                        "Invalid data set datasetIndex:" + datasetIndex);
-                    break;
-                }
-                // Set the visibility
-                if(!type.getVisible()) {
+                } else {
+                    type.clearDataset();
                     if(datasetIndex != HR_ZONES_INDEX) {
                         plot.getRangeAxis(axisIndex).setVisible(false);
                     }
                     plot.setDataset(datasetIndex, null);
                 }
             }
+            // The domain axis may have changed without notifying
+            updateDomainViews();
             setAllMarkers();
+            buildPyramids(model);
         } catch(Exception ex) {
             Utils.excMsg("Error adding data to plot", ex);
             ex.printStackTrace();
         }
     }
 
+    /**
+     * Adds the values that have been appended to the given model since it was
+     * added with addModelToChart to the existing datasets. The axes and
+     * markers are kept. Types that cannot append are recreated.
+     * 
+     * @param model
+     */
+    public void appendModelToChart(STLFileModel model) {
+        if(dataTypes == null) {
+            Utils.errMsg("No data types defined");
+            return;
+        }
+        try {
+            int datasetIndex;
+            long[] timeVals;
+            double[] yVals;
+            for(DataType type : dataTypes) {
+                if(!type.getVisible() || type.getDataset() == null) {
+                    continue;
+                }
+                datasetIndex = type.getDatasetIndex();
+                timeVals = getTimeVals(datasetIndex, model);
+                yVals = getYVals(datasetIndex, model);
+                if(timeVals == null || yVals == null) {
+                    Utils.errMsg("Invalid data set datasetIndex:"
+                        + datasetIndex);
+                    continue;
+                }
+                if(!type.appendToDataset(timeVals, yVals)) {
+                    addDatasetToPlot(type, model);
+                }
+            }
+            // The domain axis may have been extended without notifying
+            updateDomainViews();
+            buildPyramids(model);
+        } catch(Exception ex) {
+            Utils.excMsg("Error appending data to plot", ex);
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Creates the dataset for the given data type from the given model and
+     * sets it in the plot.
+     * 
+     * @param type
+     * @param model
+     */
+    private void addDatasetToPlot(DataType type, STLFileModel model) {
+        XYPlot plot = type.getPlot();
+        int datasetIndex = type.getDatasetIndex();
+        int axisIndex;
+        if(datasetIndex == HR_ZONES_INDEX) {
+            // Use the HR axis
+            axisIndex = dataTypes[HR_INDEX].getAxisIndex();
+        } else {
+            axisIndex = type.getAxisIndex();
+        }
+        long[] timeVals = getTimeVals(datasetIndex, model);
+        double[] yVals = getYVals(datasetIndex, model);
+        if(timeVals == null || yVals == null) {
+            Utils.errMsg("Invalid data set datasetIndex:" + datasetIndex);
+            return;
+        }
+        type.createDataset(timeVals, yVals);
+        plot.setDataset(datasetIndex, type.getDataset());
+        plot.mapDatasetToRangeAxis(datasetIndex, axisIndex);
+        plot.setRenderer(datasetIndex, type.getRenderer());
+        // The domain axis may have changed without notifying
+        updateDomainViews();
+    }
+
+    /**
+     * Sets the domain view of each dataset to the range of the domain axis
+     * and the width of the data area, so that only the points that can be
+     * seen are drawn.
+     */
+    private void updateDomainViews() {
+        if(dataTypes == null || chartPanel == null) {
+            return;
+        }
+        ValueAxis axis = chartPanel.getChart().getXYPlot().getDomainAxis();
+        if(axis == null) {
+            return;
+        }
+        setDomainViews(axis.getLowerBound(), axis.getUpperBound());
+    }
+
+    /**
+     * Sets the domain view of each dataset to the given domain and the width
+     * of the data area.
+     * 
+     * @param lower
+     * @param upper
+     */
+    private void setDomainViews(double lower, double upper) {
+        // The data area is not known until the chart is drawn
+        int width = (int)chartPanel.getScreenDataArea().getWidth();
+        if(width <= 0) {
+            width = chartPanel.getWidth();
+        }
+        if(width <= 0) {
+            width = FRAME_WIDTH;
+        }
+        viewWidth = width;
+        setDomainViews(dataTypes, lower, upper, width);
+    }
+
+    /**
+     * Sets the domain view of each dataset of the given data types to the
+     * given domain and width.
+     * 
+     * @param types
+     * @param lower
+     * @param upper
+     * @param width
+     */
+    private static void setDomainViews(DataType[] types, double lower,
+        double upper, int width) {
+        ArrayXYDataset dataset;
+        for(DataType type : types) {
+            dataset = type.getDataset();
+            if(dataset != null) {
+                dataset.setDomainView(lower, upper, width);
+            }
+        }
+    }
+
+    /**
+     * Gets the domain of the visible datasets of the given data types.
+     * 
+     * @param types
+     * @return The domain or null if there are none.
+     */
+    private static Range getDomain(DataType[] types) {
+        Range domain = null;
+        for(DataType type : types) {
+            if(type.getVisible() && type.getDataset() != null) {
+                domain = Range.combine(domain,
+                    type.getDataset().getDomainBounds(false));
+            }
+        }
+        return domain;
+    }
+
+    /**
+     * Makes the MinMaxPyramids for the series of the datasets on the
+     * pyramidExecutor and gives them to the datasets when done. Those for the
+     * model channels are kept in the model. Until they are given, the
+     * datasets downsample from all the points. A build that is still running
+     * is cancelled, and the series it had not finished are in the new one.
+     * 
+     * @param model
+     */
+    private void buildPyramids(final STLFileModel model) {
+        if(pyramidFuture != null) {
+            pyramidFuture.cancel(true);
+            pyramidFuture = null;
+        }
+        final List<PyramidJob> jobs = new ArrayList<PyramidJob>();
+        ArrayXYDataset dataset;
+        for(DataType type : dataTypes) {
+            dataset = type.getDataset();
+            if(dataset == null) {
+                continue;
+            }
+            for(int i = 0; i < dataset.getSeriesCount(); i++) {
+                if(dataset.getYVals(i).length == 1
+                    || dataset.getPyramid(i) != null) {
+                    // Constant or already has them
+                    continue;
+                }
+                PyramidJob job = new PyramidJob();
+                job.dataset = dataset;
+                job.series = i;
+                job.datasetIndex = type.getDatasetIndex();
+                job.isData = i == type.getDataSeriesIndex();
+                job.xVals = dataset.getXVals(i);
+                job.yVals = dataset.getYVals(i);
+                jobs.add(job);
+            }
+        }
+        if(jobs.isEmpty()) {
+            return;
+        }
+        final Future<?>[] future = new Future<?>[1];
+        future[0] = pyramidExecutor.submit(new Runnable() {
+            public void run() {
+                for(PyramidJob job : jobs) {
+                    if(Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    job.pyramid = getPyramid(model, job.datasetIndex,
+                        job.isData, job.xVals, job.yVals);
+                }
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        if(pyramidFuture != future[0]) {
+                            // Stale
+                            return;
+                        }
+                        pyramidFuture = null;
+                        for(PyramidJob job : jobs) {
+                            job.dataset.setPyramid(job.series, job.pyramid);
+                        }
+                    }
+                });
+            }
+        });
+        pyramidFuture = future[0];
+    }
+
+    /**
+     * Gets the MinMaxPyramid for the given values, which is kept in the model
+     * if they are the unaveraged channel for the dataset index and made
+     * otherwise.
+     * 
+     * @param model
+     * @param datasetIndex
+     * @param isData Whether the values are the unaveraged channel.
+     * @param xVals
+     * @param yVals
+     * @return
+     */
+    private static MinMaxPyramid getPyramid(STLFileModel model,
+        int datasetIndex, boolean isData, long[] xVals, double[] yVals) {
+        if(isData) {
+            switch(datasetIndex) {
+            case HR_INDEX:
+                return model.getHrPyramid();
+            case SPEED_INDEX:
+                return model.getSpeedPyramid();
+            case ELE_INDEX:
+                return model.getElePyramid();
+            }
+        }
+        // A moving average
+        return new MinMaxPyramid(xVals, yVals);
+    }
+
+    /**
+     * Gets the time values for the given dataset index from the model.
+     * 
+     * @param datasetIndex
+     * @param model
+     * @return The values or null if the index is invalid.
+     */
+    private static long[] getTimeVals(int datasetIndex, STLFileModel model) {
+        switch(datasetIndex) {
+        case HR_INDEX:
+        case HR_ZONES_INDEX:
+            return model.getHrTimeVals();
+        case SPEED_INDEX:
+            return model.getSpeedTimeVals();
+        case ELE_INDEX:
+            return model.getEleTimeVals();
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Gets the y values for the given dataset index from the model.
+     * 
+     * @param datasetIndex
+     * @param model
+     * @return The values or null if the index is invalid.
+     */
+    private static double[] getYVals(int datasetIndex, STLFileModel model) {
+        switch(datasetIndex) {
+        case HR_INDEX:
+        case HR_ZONES_INDEX:
+            return model.getHrVals();
+        case SPEED_INDEX:
+            return model.getSpeedVals();
+        case ELE_INDEX:
+            // return MathUtils.medianFilter(model.getEleVals(), 10);
+            return model.getEleVals();
+        default:
+            return null;
+        }
+    }
+
     /**
      * Generated information about the given plot.
      * 
@@ -538,10 +990,9 @@ public class STLPlot implements IConstants
         int nDatasets = plot.getDatasetCount();
         info += "nDatasets=" + nDatasets + LS;
         int nSeries = 0;
-        TimeSeriesCollection dataset;
-        Series series;
+        XYDataset dataset;
         for(int i = 0; i < nDatasets; i++) {
-            dataset = (TimeSeriesCollection)plot.getDataset(i);
+            dataset = plot.getDataset(i);
             if(dataset == null) {
                 info += "Dataset " + i + ":  null" + LS;
                 continue;
@@ -549,9 +1000,8 @@ public class STLPlot implements IConstants
             nSeries = dataset.getSeriesCount();
             info += "Dataset " + i + ":  nSeries=" + nSeries + LS;
             for(int j = 0; j < nSeries; j++) {
-                series = dataset.getSeries(j);
-                info += "  Series " + j + ": \"" + series.getKey()
-                    + "\" nItems=" + series.getItemCount() + LS;
+                info += "  Series " + j + ": \"" + dataset.getSeriesKey(j)
+                    + "\" nItems=" + dataset.getItemCount(j) + LS;
             }
         }
         return info;
@@ -9,12 +9,20 @@ import java.awt.Frame;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
 import java.sql.Connection;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.prefs.Preferences;
 
 import javax.swing.BorderFactory;
@@ -45,7 +53,11 @@ import net.kenevans.core.utils.AboutBoxPanel;
 import net.kenevans.core.utils.ImageUtils;
 import net.kenevans.core.utils.Utils;
 import net.kenevans.stlviewer.database.STLDatabase;
+import net.kenevans.stlviewer.model.GpxSource;
 import net.kenevans.stlviewer.model.IConstants;
+import net.kenevans.stlviewer.model.ModelLoader;
+import net.kenevans.stlviewer.model.ParseMode;
+import net.kenevans.stlviewer.model.QuantileSketch;
 import net.kenevans.stlviewer.model.STLFileModel;
 import net.kenevans.stlviewer.preferences.PreferencesDialog;
 import net.kenevans.stlviewer.preferences.Settings;
@@ -84,6 +96,18 @@ public class STLViewer extends JFrame implements IConstants
     /** The stlPlot for this user interface. */
     private STLPlot stlPlot;
 
+    /** Runs the FileLoadJobs. */
+    private final ExecutorService loadExecutor = Executors
+        .newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "File Loader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    /** The FileLoadJob in progress or null. Only used on the EDT. */
+    private FileLoadJob loadJob;
+
     // User interface controls (Many do not need to be global)
     private Container contentPane = this.getContentPane();
     private JPanel listPanel = new JPanel();
@@ -114,7 +138,8 @@ public class STLViewer extends JFrame implements IConstants
     }
 
     /**
-     * Fills the fileNames array with GPX files in the given directory.
+     * Fills the fileNames array with GPX files in the given directory. These
+     * include gzip-compressed GPX files and the GPX entries in zip files.
      * 
      * @param dir The directory in which to look for GPX files.
      */
@@ -133,11 +158,8 @@ public class STLViewer extends JFrame implements IConstants
                 if(file.isDirectory()) {
                     return false;
                 }
-                String ext = Utils.getExtension(file);
-                if(ext == null) {
-                    return false;
-                }
-                return ext.toLowerCase().equals("gpx");
+                String name = file.getName();
+                return GpxSource.isGpxName(name) || GpxSource.isZipName(name);
             }
         });
 
@@ -154,15 +176,27 @@ public class STLViewer extends JFrame implements IConstants
         // Re-populate the array
         files = sortedList.toArray(files);
 
-        // Make the list of file names
-        int nFiles = files.length;
-        fileNames = new String[nFiles];
+        // Make the list of file names, expanding the zip files
+        List<String> names = new ArrayList<String>(files.length);
+        for(File file : files) {
+            if(!GpxSource.isZipName(file.getName())) {
+                names.add(file.getPath());
+                continue;
+            }
+            try {
+                List<String> entries = GpxSource.listEntries(file);
+                // Reverse order, as for the files
+                Collections.sort(entries, Collections.reverseOrder());
+                names.addAll(entries);
+            } catch(IOException ex) {
+                Utils.excMsg("Error reading " + file.getPath(), ex);
+            }
+        }
+        int nFiles = names.size();
+        fileNames = names.toArray(new String[nFiles]);
         if(nFiles <= 0) {
             curFileName = null;
         } else {
-            for(int i = 0; i < nFiles; i++) {
-                fileNames[i] = files[i].getPath();
-            }
             curFileName = fileNames[0];
         }
 
@@ -296,6 +330,16 @@ public class STLViewer extends JFrame implements IConstants
         });
         menu.add(menuItem);
 
+        // Refresh File
+        menuItem = new JMenuItem();
+        menuItem.setText("Refresh File");
+        menuItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent ae) {
+                refreshFile();
+            }
+        });
+        menu.add(menuItem);
+
         JSeparator separator = new JSeparator();
         menu.add(separator);
 
@@ -332,6 +376,24 @@ public class STLViewer extends JFrame implements IConstants
         });
         menu.add(menuItem);
 
+        menuItem = new JMenuItem();
+        menuItem.setText("Save Distributions to Database");
+        menuItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent ae) {
+                saveSketchesToDatabase();
+            }
+        });
+        menu.add(menuItem);
+
+        menuItem = new JMenuItem();
+        menuItem.setText("Distributions from Database...");
+        menuItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent ae) {
+                showSketchesFromDatabase();
+            }
+        });
+        menu.add(menuItem);
+
         separator = new JSeparator();
         menu.add(separator);
 
@@ -476,29 +538,105 @@ public class STLViewer extends JFrame implements IConstants
             Utils.errMsg("File is null");
             return;
         }
+        loadFile(file.getPath());
+    }
 
-        // Needs to be done this way to allow the text to change before reading
-        // the image.
-        SwingUtilities.invokeLater(new Runnable() {
-            public void run() {
-                Cursor oldCursor = getCursor();
-                try {
-                    setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-                    model = new STLFileModel(file.getPath());
-                    stlPlot.clearPlot();
-                    stlPlot.addModelToChart(model);
-                    updateInfoText(model);
-                } catch(Exception ex) {
-                    String msg = "Error loading file: " + file.getPath();
-                    Utils.excMsg(msg, ex);
-                } catch(Error err) {
-                    String msg = "Error loading file: " + file.getPath();
-                    Utils.excMsg(msg, err);
-                } finally {
-                    setCursor(oldCursor);
-                }
+    /**
+     * Loads a new file. The name may be that of a compressed file or a zip
+     * entry as used by GpxSource. The file is loaded by a FileLoadJob on a
+     * worker thread. Any load in progress is cancelled.
+     * 
+     * @param fileName
+     */
+    private void loadFile(final String fileName) {
+        startJob(new FileLoadJob(fileName));
+    }
+
+    /**
+     * Cancels any FileLoadJob in progress and starts the given one.
+     * 
+     * @param job
+     */
+    private void startJob(FileLoadJob job) {
+        cancelLoad();
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        try {
+            loadJob = job;
+            loadExecutor.execute(loadJob);
+        } catch(Exception ex) {
+            loadJob = null;
+            setCursor(Cursor.getDefaultCursor());
+            Utils.excMsg(job.getErrorMessage(), ex);
+        }
+    }
+
+    /**
+     * Cancels the FileLoadJob in progress, if any. Nothing from it will be
+     * shown.
+     */
+    private void cancelLoad() {
+        if(loadJob != null) {
+            loadJob.cancel();
+            loadJob = null;
+            setCursor(Cursor.getDefaultCursor());
+        }
+    }
+
+    /**
+     * Shows the model, datasets, and info text from the given FileLoadJob,
+     * then any errors it collected. Called on the EDT. Nothing is done if it
+     * is no longer the current job.
+     * 
+     * @param job
+     */
+    private void onLoadDone(FileLoadJob job) {
+        if(job != loadJob) {
+            return;
+        }
+        loadJob = null;
+        setCursor(Cursor.getDefaultCursor());
+        if(job.error != null) {
+            // For a refresh, the old values are kept, so leave the plot
+            Utils.excMsg(job.getErrorMessage(), job.error);
+            return;
+        }
+        model = job.model;
+        if(job.types != null) {
+            stlPlot.clearPlot();
+            stlPlot.setDatasets(model, job.types);
+        } else if(job.nNew > 0) {
+            // Only the new values are averaged
+            stlPlot.appendModelToChart(model);
+        }
+        infoTextArea.setText(job.info);
+        infoTextArea.setCaretPosition(0);
+        if(!job.errors.isEmpty()) {
+            String msg = "";
+            for(String error : job.errors) {
+                msg += error + LS;
             }
-        });
+            Utils.errMsg(msg);
+        }
+    }
+
+    /**
+     * Reads any points that have been added to the current file since it was
+     * loaded, as for a file that is still being recorded. The file is read by
+     * a FileLoadJob on a worker thread, and new points are appended to the
+     * plot if possible. Nothing is done if a FileLoadJob for it is already
+     * running.
+     */
+    private void refreshFile() {
+        if(model == null) {
+            Utils.errMsg("No file loaded");
+            return;
+        }
+        if(loadJob != null && loadJob.oldModel == model) {
+            // Cancelling it could lose the points a refresh has appended or
+            // the datasets after a reset
+            return;
+        }
+        startJob(new FileLoadJob(model, true));
     }
 
     /**
@@ -530,15 +668,19 @@ public class STLViewer extends JFrame implements IConstants
             // clear selection.
             return;
         }
-        File file = new File(fileName);
-        if(!file.exists()) {
+        if(!GpxSource.exists(fileName)) {
             Utils.errMsg("Does not exist: " + fileName);
             return;
         }
         curFileName = fileName;
 
         list.clearSelection();
-        loadFile(file);
+        if(model != null && fileName.equals(model.getFileName())) {
+            // Selecting the current file again reads any new points
+            refreshFile();
+        } else {
+            loadFile(fileName);
+        }
     }
 
     /**
@@ -585,6 +727,77 @@ public class STLViewer extends JFrame implements IConstants
         }
     }
 
+    /**
+     * Saves the HR and speed distributions of the current file to the
+     * database.
+     */
+    public void saveSketchesToDatabase() {
+        if(model == null) {
+            Utils.errMsg("No file is loaded");
+            return;
+        }
+        Connection conn = STLDatabase
+            .getConnection(DATABASE_URL_PREFIX + settings.getDatabase());
+        if(conn == null) {
+            return;
+        }
+        if(STLDatabase.putSketches(conn, model)) {
+            Utils.infoMsg("Saved the distributions for " + LS
+                + model.getFileName());
+        }
+        STLDatabase.closeConnection(conn);
+    }
+
+    /**
+     * Prompts for a range of dates and shows the HR and speed percentiles
+     * for the files in the database that start in the range.
+     */
+    public void showSketchesFromDatabase() {
+        SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
+        long startTime, endTime;
+        try {
+            String start = JOptionPane.showInputDialog(this,
+                "Start date (yyyy-MM-dd):", "2014-01-01");
+            if(start == null) {
+                return;
+            }
+            String end = JOptionPane.showInputDialog(this,
+                "End date (yyyy-MM-dd), inclusive:",
+                formatter.format(new Date()));
+            if(end == null) {
+                return;
+            }
+            startTime = formatter.parse(start.trim()).getTime();
+            // Through the end of the last day
+            endTime = formatter.parse(end.trim()).getTime() + 86400000L;
+        } catch(ParseException ex) {
+            Utils.excMsg("Invalid date", ex);
+            return;
+        }
+        Connection conn = STLDatabase
+            .getConnection(DATABASE_URL_PREFIX + settings.getDatabase());
+        if(conn == null) {
+            return;
+        }
+        QuantileSketch hrSketch = STLDatabase.getMergedSketch(conn,
+            SKETCH_CHANNEL_HR, startTime, endTime);
+        QuantileSketch speedSketch = STLDatabase.getMergedSketch(conn,
+            SKETCH_CHANNEL_SPEED, startTime, endTime);
+        STLDatabase.closeConnection(conn);
+        if(hrSketch == null || speedSketch == null) {
+            return;
+        }
+        String info = "";
+        info += String.format("HR (%d values): p50=%.0f p90=%.0f p99=%.0f",
+            hrSketch.getCount(), hrSketch.getQuantile(.5),
+            hrSketch.getQuantile(.9), hrSketch.getQuantile(.99)) + LS;
+        info += String.format(
+            "Speed (%d values): p50=%.1f p90=%.1f p99=%.1f mi/hr",
+            speedSketch.getCount(), speedSketch.getQuantile(.5),
+            speedSketch.getQuantile(.9), speedSketch.getQuantile(.99)) + LS;
+        scrolledTextMsg(this, info, "Distributions", 600, 200);
+    }
+
     /**
      * Shows model information.
      */
@@ -636,6 +849,15 @@ public class STLViewer extends JFrame implements IConstants
         // Copy from the given settings.
         this.settings.copyFrom(settings);
         stlPlot.reset();
+        if(loadJob != null && loadJob.oldModel == null) {
+            // Start it again with the new settings
+            loadFile(loadJob.fileName);
+        } else if(model != null) {
+            // Make the datasets and the info text, in which the zone values
+            // may have changed, again. This also has any points a cancelled
+            // refresh appended.
+            startJob(new FileLoadJob(model, false));
+        }
         if(!this.settings.getDefaultDirectory().equals(defaultDirectoryOld)) {
             findFileNames(settings.getDefaultDirectory());
         }
@@ -690,13 +912,55 @@ public class STLViewer extends JFrame implements IConstants
      * @param model
      */
     public void updateInfoText(STLFileModel model) {
+        String info = getInfoText(model);
+        info += getDataBaseInfo(model == null ? null : model.getFileName());
+        infoTextArea.setText(info);
+        infoTextArea.setCaretPosition(0);
+    }
+
+    /**
+     * Gets the info text for the given model without the database info.
+     * 
+     * @param model
+     * @return
+     */
+    public String getInfoText(STLFileModel model) {
+        return getInfoText(model, settings, null);
+    }
+
+    /**
+     * Gets the info text for the given model without the database info.
+     * 
+     * @param model
+     * @param settings The Settings to use, which should not be changed
+     *            meanwhile.
+     * @param errors A List to which error messages are added rather than
+     *            shown, as when not on the EDT, or null to show them.
+     * @return
+     */
+    public static String getInfoText(STLFileModel model, Settings settings,
+        List<String> errors) {
         String info = "";
         if(model != null) {
-            info += model.getInfo() + LS;
+            info += model.getInfo(errors);
+            if(model.getnHrValues() > 0) {
+                int[] zoneVals = {settings.getZone1Val(),
+                    settings.getZone2Val(), settings.getZone3Val(),
+                    settings.getZone4Val(), settings.getZone5Val(),
+                    settings.getZone6Val()};
+                info += "HR Zones: "
+                    + model.getHrZoneTimes().getZoneTimesInfo(zoneVals) + LS;
+            }
+            if(model.getnHrValues() > 0) {
+                info += model.getHrBestEfforts().getInfo("HR", "%.0f");
+            }
+            if(model.getnTrackPoints() > 0 && model.isSpeedDerived()) {
+                info += model.getSpeedBestEfforts().getInfo("Speed",
+                    "%.1f");
+            }
+            info += LS;
         }
-        info += getDataBaseInfo(model.getFileName());
-        infoTextArea.setText(info);
-        infoTextArea.setCaretPosition(0);
+        return info;
     }
 
     /**
@@ -707,10 +971,28 @@ public class STLViewer extends JFrame implements IConstants
      * @return
      */
     public String getDataBaseInfo(String fileName) {
+        return getDataBaseInfo(fileName, settings, null);
+    }
+
+    /**
+     * Gets info for the row in the database.
+     * 
+     * @param fileName The filename, which should contain the id for the
+     *            database row.
+     * @param settings The Settings to use, which should not be changed
+     *            meanwhile.
+     * @param errors A List to which error messages are added rather than
+     *            shown, as when not on the EDT, or null to show them.
+     * @return
+     */
+    public static String getDataBaseInfo(String fileName, Settings settings,
+        List<String> errors) {
         String info = "";
         if(fileName == null) {
             return info;
         }
+        // Without a .gz extension or zip file
+        fileName = GpxSource.getGpxName(fileName);
         int start = fileName.lastIndexOf('-');
         int end = fileName.lastIndexOf('.');
         if(start == -1 || end == -1 || end <= start) {
@@ -719,7 +1001,7 @@ public class STLViewer extends JFrame implements IConstants
         }
         String id = fileName.substring(start + 1, end);
         String url = DATABASE_URL_PREFIX + settings.getDatabase();
-        info += STLDatabase.getInfoForId(id, url);
+        info += STLDatabase.getInfoForId(id, url, errors);
         return info;
     }
 
@@ -767,6 +1049,208 @@ public class STLViewer extends JFrame implements IConstants
         this.settings = settings;
     }
 
+    /**
+     * FileLoadJob loads a file on a worker thread in stages: parse, derive
+     * the channels, build the datasets, make the info text, and look up the
+     * database info. For a model that is already loaded, the parse is
+     * replaced by a refresh or skipped. Only the swap of the results into the
+     * viewer is done on the EDT, by onLoadDone, and errors are collected to be
+     * shown there. Cancelling stops it at the next stage, or at the next check
+     * of the ModelLoader while parsing, and nothing from it is shown.
+     */
+    private class FileLoadJob implements Runnable
+    {
+        private final String fileName;
+        /** The state of the plot when the job was made. */
+        private final STLPlot.PlotState plotState;
+        /** A copy of the settings when the job was made. */
+        private final Settings settings;
+        /** The ModelLoader for a new file or null. */
+        private final ModelLoader loader;
+        /** The model that is already loaded or null for a new file. */
+        private final STLFileModel oldModel;
+        /** Whether to read any new points into oldModel first. */
+        private final boolean refresh;
+        private volatile boolean cancelled;
+        // The results, which are set on the worker thread and read on the
+        // EDT after invokeLater
+        private STLFileModel model;
+        /** The new datasets or null to append to the old ones. */
+        private DataType[] types;
+        /** The number of points a refresh added, as from refresh. */
+        private int nNew = STLFileModel.REFRESH_ALL;
+        private String info;
+        private Throwable error;
+        /** The errors that did not stop the job. */
+        private final List<String> errors = new ArrayList<String>();
+
+        /**
+         * FileLoadJob constructor for a new file. Call on the EDT, since it
+         * takes the state of the plot and the settings.
+         * 
+         * @param fileName
+         */
+        FileLoadJob(String fileName) {
+            this.fileName = fileName;
+            plotState = stlPlot.getPlotState();
+            settings = copySettings();
+            loader = new ModelLoader(fileName, ParseMode.MAPPED, true, null);
+            oldModel = null;
+            refresh = false;
+        }
+
+        /**
+         * FileLoadJob constructor for a model that is already loaded. Call on
+         * the EDT, since it takes the state of the plot and the settings.
+         * 
+         * @param oldModel
+         * @param refresh Whether to read any new points first. Then the
+         *            datasets are made again only if all of the values were
+         *            read again, and otherwise any new points are appended.
+         *            If false, the datasets are all made again.
+         */
+        FileLoadJob(STLFileModel oldModel, boolean refresh) {
+            this.fileName = oldModel.getFileName();
+            plotState = stlPlot.getPlotState();
+            settings = copySettings();
+            this.oldModel = oldModel;
+            this.refresh = refresh;
+            loader = null;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.lang.Runnable#run()
+         */
+        @Override
+        public void run() {
+            try {
+                STLFileModel newModel;
+                if(loader != null) {
+                    // Parse
+                    loader.run();
+                    if(cancelled) {
+                        return;
+                    }
+                    if(loader.getModel() == null) {
+                        error = loader.getError();
+                        if(error == null) {
+                            error = new Exception("No model was loaded");
+                        }
+                        publish();
+                        return;
+                    }
+                    newModel = loader.getModel();
+                } else {
+                    newModel = oldModel;
+                    if(refresh) {
+                        nNew = newModel.refresh();
+                        if(nNew == STLFileModel.REFRESH_FAILED) {
+                            error = newModel.getRefreshError();
+                            publish();
+                            return;
+                        }
+                    }
+                }
+                if(cancelled) {
+                    return;
+                }
+
+                DataType[] newTypes = null;
+                String newInfo;
+                // Keep a refresh that is still running from changing the
+                // values meanwhile
+                synchronized(newModel) {
+                    // Build the datasets, which derives the visible channels
+                    if(nNew == STLFileModel.REFRESH_ALL) {
+                        newTypes = STLPlot.createDatasets(newModel,
+                            plotState, settings);
+                        STLPlot.setPyramids(newTypes, newModel);
+                        if(cancelled) {
+                            return;
+                        }
+                    }
+
+                    // The summaries for the info text
+                    if(newModel.getnHrValues() > 0) {
+                        newModel.getHrZoneTimes();
+                        newModel.getHrBestEfforts();
+                    }
+                    if(newModel.isSpeedDerived()) {
+                        newModel.getSpeedBestEfforts();
+                    }
+                    if(cancelled) {
+                        return;
+                    }
+
+                    // Info text
+                    newInfo = getInfoText(newModel, settings, errors);
+                    if(cancelled) {
+                        return;
+                    }
+                }
+
+                // Database
+                newInfo += getDataBaseInfo(newModel.getFileName(), settings,
+                    errors);
+                if(cancelled) {
+                    return;
+                }
+
+                model = newModel;
+                types = newTypes;
+                info = newInfo;
+            } catch(Exception ex) {
+                error = ex;
+            } catch(Error err) {
+                error = err;
+            }
+            if(!cancelled) {
+                publish();
+            }
+        }
+
+        /**
+         * @return A copy of the viewer settings, which the job uses so they
+         *         cannot change while it runs.
+         */
+        private Settings copySettings() {
+            Settings copy = new Settings();
+            copy.copyFrom(STLViewer.this.settings);
+            return copy;
+        }
+
+        /**
+         * Has onLoadDone show the results on the EDT.
+         */
+        private void publish() {
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    onLoadDone(FileLoadJob.this);
+                }
+            });
+        }
+
+        /**
+         * Cancels the job.
+         */
+        void cancel() {
+            cancelled = true;
+            if(loader != null) {
+                loader.cancel();
+            }
+        }
+
+        /**
+         * @return The message to show with the error.
+         */
+        String getErrorMessage() {
+            return (refresh ? "Error refreshing file: "
+                : "Error loading file: ") + fileName;
+        }
+    }
+
     /**
      * Main method.
      * 
@@ -0,0 +1,130 @@
+package net.kenevans.stlviewer.utils;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * ArrayKernels holds the array loops used for the statistics and distances,
+ * so that a vectorized implementation can be used when it is available.
+ * getInstance returns ScalarArrayKernels, whose results are the same as
+ * those of the loops they replaced. If the system property
+ * "stlviewer.vectorKernels" is set to true, it returns VectorArrayKernels,
+ * which uses the jdk.incubator.vector module, if that class is on the class
+ * path and the module is present. Its sums are in a different order and its
+ * distances use the vector sin, cos, and atan2, so its results can differ in
+ * the last digits, and it is not used unless asked for.<br>
+ * <br>
+ * VectorArrayKernels is in the separate src-vector source folder, since it
+ * needs Java 16 or later and --add-modules jdk.incubator.vector to compile
+ * and run. The rest of the program does not depend on it. The Eclipse
+ * project, which is Java 8, has it as a source folder with all of its files
+ * excluded, so it is shown but not compiled. The compile_vector target in
+ * the Export build files compiles it into bin-vector, which create_run_jar
+ * puts in the jar, and run_vector runs the jar with the module and the
+ * property. To run it otherwise, compile it with
+ * 
+ * <pre>
+ * javac --add-modules jdk.incubator.vector -cp bin -d bin-vector src-vector/net/kenevans/stlviewer/utils/VectorArrayKernels.java
+ * </pre>
+ * 
+ * and add bin-vector to the class path and --add-modules
+ * jdk.incubator.vector and -Dstlviewer.vectorKernels=true to the VM
+ * arguments.
+ *
+ * @author Kenneth Evans, Jr.
+ */
+public abstract class ArrayKernels
+{
+    /** The name of the vectorized implementation. */
+    private static final String VECTOR_CLASS_NAME = "net.kenevans.stlviewer.utils.VectorArrayKernels";
+
+    // Indices of the results of channelStats
+    public static final int N_VALUES = 0;
+    public static final int N_NAN = 1;
+    public static final int N_SEGMENTS = 2;
+    public static final int N_USED = 3;
+    public static final int MIN = 4;
+    public static final int MAX = 5;
+    public static final int SUM = 6;
+    public static final int WEIGHTED_SUM = 7;
+    public static final int TOTAL_WEIGHT = 8;
+    public static final int N_MOVING = 9;
+    public static final int MOVING_SUM = 10;
+    public static final int MOVING_WEIGHTED_SUM = 11;
+    public static final int MOVING_TOTAL_WEIGHT = 12;
+    public static final int N_DIFFS = 13;
+    public static final int GAIN = 14;
+    public static final int LOSS = 15;
+    public static final int N_RESULTS = 16;
+
+    private static ArrayKernels instance;
+
+    /**
+     * Gets the implementation to use, which is found the first time.
+     *
+     * @return
+     */
+    public static synchronized ArrayKernels getInstance() {
+        if(instance == null) {
+            if(Boolean.getBoolean("stlviewer.vectorKernels")) {
+                try {
+                    instance = (ArrayKernels)Class.forName(VECTOR_CLASS_NAME)
+                        .newInstance();
+                } catch(ClassNotFoundException ex) {
+                    // Not compiled or not on the class path
+                    instance = null;
+                } catch(LinkageError err) {
+                    // The module is missing or the Java version is too old
+                    instance = null;
+                } catch(ReflectiveOperationException ex) {
+                    instance = null;
+                } catch(IllegalStateException ex) {
+                    // The constructor cannot use the vector shapes
+                    instance = null;
+                }
+            }
+            if(instance == null) {
+                instance = new ScalarArrayKernels();
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the statistics for ChannelStats.compute in one pass. A NaN value is
+     * a segment break. Each value that is not NaN is weighted by half the time
+     * to the values on either side that are not NaN. The results are indexed
+     * by N_VALUES, N_NAN, etc. MIN and MAX are Double.MAX_VALUE and
+     * -Double.MAX_VALUE if no values are used.
+     *
+     * @param vals
+     * @param timeVals The times in ms, which must have the same length.
+     * @param omitBelow Values below this are not used for N_USED to
+     *            TOTAL_WEIGHT.
+     * @param movingOmitBelow Values below this are not used for N_MOVING to
+     *            MOVING_TOTAL_WEIGHT.
+     * @param results An array of at least N_RESULTS for the results.
+     */
+    public abstract void channelStats(double[] vals, long[] timeVals,
+        double omitBelow, double movingOmitBelow, double[] results);
+
+    /**
+     * Gets the great circle distance in m from each point to the one before
+     * it, as from GpxUtils.greatCircleDistance. The first distance is NaN, as
+     * are those to or from a point with a NaN latitude or longitude.
+     *
+     * @param lats The latitudes in deg.
+     * @param lons The longitudes in deg, which must have the same length.
+     * @param distances An array at least as long for the distances.
+     */
+    public abstract void consecutiveDistances(double[] lats, double[] lons,
+        double[] distances);
+
+    /**
+     * @return A name for the implementation.
+     */
+    public abstract String getName();
+
+}
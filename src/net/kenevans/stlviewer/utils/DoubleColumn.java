@@ -0,0 +1,164 @@
+package net.kenevans.stlviewer.utils;
+
+import java.util.Arrays;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * DoubleColumn is a growable array of primitive doubles. It is used in place of
+ * an ArrayList&lt;Double&gt; to avoid creating an object for every value. The
+ * capacity doubles when it is exceeded.
+ * 
+ * @author Kenneth Evans, Jr.
+ * @see LongColumn
+ */
+public class DoubleColumn
+{
+    /** The default initial capacity. */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private double[] data;
+    private int size;
+
+    /**
+     * DoubleColumn constructor with the default capacity.
+     */
+    public DoubleColumn() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * DoubleColumn constructor.
+     * 
+     * @param capacity The initial capacity.
+     */
+    public DoubleColumn(int capacity) {
+        data = new double[Math.max(capacity, 1)];
+    }
+
+    /**
+     * DoubleColumn constructor that uses the given array as the backing array
+     * without copying it. The size is the length of the array.
+     * 
+     * @param data
+     */
+    public DoubleColumn(double[] data) {
+        this.data = data;
+        this.size = data.length;
+    }
+
+    /**
+     * Adds a value at the end.
+     * 
+     * @param val
+     */
+    public void add(double val) {
+        if(size == data.length) {
+            grow(size + 1);
+        }
+        data[size++] = val;
+    }
+
+    /**
+     * Adds the first n values of the given array at the end.
+     * 
+     * @param vals
+     * @param n
+     */
+    public void addAll(double[] vals, int n) {
+        if(size + n > data.length) {
+            grow(size + n);
+        }
+        System.arraycopy(vals, 0, data, size, n);
+        size += n;
+    }
+
+    /**
+     * Adds all the values in the given column at the end.
+     * 
+     * @param column
+     */
+    public void addAll(DoubleColumn column) {
+        addAll(column.data, column.size);
+    }
+
+    /**
+     * Gets the value at the given index.
+     * 
+     * @param index
+     * @return
+     */
+    public double get(int index) {
+        if(index >= size) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        return data[index];
+    }
+
+    /**
+     * Sets the value at the given index.
+     * 
+     * @param index
+     * @param val
+     */
+    public void set(int index, double val) {
+        if(index >= size) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        data[index] = val;
+    }
+
+    /**
+     * @return The number of values.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all the values but keeps the capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Makes the capacity equal to the size and returns the backing array,
+     * which then has exactly size() values. No copy is made if the capacity
+     * already equals the size. The column remains usable, but the returned
+     * array is no longer its backing array after the next add.
+     * 
+     * @return The backing array.
+     */
+    public double[] trimToSize() {
+        if(data.length != size) {
+            data = Arrays.copyOf(data, size);
+        }
+        return data;
+    }
+
+    /**
+     * @return A copy of the values.
+     */
+    public double[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    /**
+     * Increases the capacity to at least the given value by doubling.
+     * 
+     * @param minCapacity
+     */
+    private void grow(int minCapacity) {
+        int capacity = Math.max(Math.max(2 * data.length, minCapacity), 16);
+        if(capacity < 0) {
+            // Overflow
+            capacity = Integer.MAX_VALUE - 8;
+        }
+        data = Arrays.copyOf(data, capacity);
+    }
+
+}
@@ -0,0 +1,242 @@
+package net.kenevans.stlviewer.utils;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * IsoTimeParser converts ISO-8601 / xsd:dateTime timestamps of the form
+ * yyyy-MM-ddTHH:mm:ss[.fff...][Z|+HH:mm|-HH:mm|+HHmm|-HH] directly to epoch
+ * milliseconds. A missing time zone is taken as UTC, as is done for the GPX
+ * times elsewhere. Fractional seconds beyond milliseconds are truncated.<br>
+ * <br>
+ * No Calendar, Date, or other objects are created, and there is no shared
+ * state, so it is safe to use from multiple threads. Invalid input returns
+ * INVALID rather than throwing.
+ * 
+ * @author Kenneth Evans, Jr.
+ */
+public class IsoTimeParser
+{
+    /** Returned for input that cannot be parsed. */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private static final long MS_PER_SEC = 1000L;
+    private static final long MS_PER_MIN = 60 * MS_PER_SEC;
+    private static final long MS_PER_HOUR = 60 * MS_PER_MIN;
+    private static final long MS_PER_DAY = 24 * MS_PER_HOUR;
+
+    /** Days in each month for a non-leap year. */
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31,
+        31, 30, 31, 30, 31};
+
+    /**
+     * Parses the whole given CharSequence.
+     * 
+     * @param text
+     * @return The time in ms or INVALID.
+     */
+    public static long parse(CharSequence text) {
+        if(text == null) {
+            return INVALID;
+        }
+        return parse(text, null, 0, text.length());
+    }
+
+    /**
+     * Parses the characters from start (inclusive) to end (exclusive) in the
+     * given CharSequence.
+     * 
+     * @param text
+     * @param start
+     * @param end
+     * @return The time in ms or INVALID.
+     */
+    public static long parse(CharSequence text, int start, int end) {
+        return parse(text, null, start, end);
+    }
+
+    /**
+     * Parses the ASCII bytes from start (inclusive) to end (exclusive) in the
+     * given array.
+     * 
+     * @param bytes
+     * @param start
+     * @param end
+     * @return The time in ms or INVALID.
+     */
+    public static long parse(byte[] bytes, int start, int end) {
+        return parse(null, bytes, start, end);
+    }
+
+    /**
+     * Gets the epoch milliseconds for the given fields. This is used for
+     * values that have already been split into fields, such as those from an
+     * XMLGregorianCalendar.
+     * 
+     * @param year
+     * @param month 1-12.
+     * @param day 1-31.
+     * @param hour
+     * @param minute
+     * @param second
+     * @param millis
+     * @param offsetMinutes The time zone offset in minutes east of UTC.
+     * @return The time in ms.
+     */
+    public static long toMillis(int year, int month, int day, int hour,
+        int minute, int second, int millis, int offsetMinutes) {
+        return daysFromCivil(year, month, day) * MS_PER_DAY
+            + hour * MS_PER_HOUR + minute * MS_PER_MIN + second * MS_PER_SEC
+            + millis - offsetMinutes * MS_PER_MIN;
+    }
+
+    /**
+     * Gets the number of days from 1970-01-01 to the given date in the
+     * proleptic Gregorian calendar. From Howard Hinnant's days_from_civil.
+     * 
+     * @param year
+     * @param month 1-12.
+     * @param day 1-31.
+     * @return
+     */
+    public static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yoe = y - era * 400;
+        long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    /**
+     * Parses from either text or bytes, whichever is not null.
+     * 
+     * @param text
+     * @param bytes
+     * @param start
+     * @param end
+     * @return The time in ms or INVALID.
+     */
+    private static long parse(CharSequence text, byte[] bytes, int start,
+        int end) {
+        // Trim white space
+        while(start < end && isWhitespace(charAt(text, bytes, start))) {
+            start++;
+        }
+        while(end > start && isWhitespace(charAt(text, bytes, end - 1))) {
+            end--;
+        }
+        // The shortest form is yyyy-MM-ddTHH:mm:ss
+        if(end - start < 19) {
+            return INVALID;
+        }
+        int i = start;
+        int year = digits(text, bytes, i, 4);
+        if(year < 0 || charAt(text, bytes, i + 4) != '-') return INVALID;
+        int month = digits(text, bytes, i + 5, 2);
+        if(month < 1 || month > 12 || charAt(text, bytes, i + 7) != '-') {
+            return INVALID;
+        }
+        int day = digits(text, bytes, i + 8, 2);
+        if(day < 1 || day > daysInMonth(year, month)) return INVALID;
+        char c = charAt(text, bytes, i + 10);
+        if(c != 'T' && c != 't') return INVALID;
+        int hour = digits(text, bytes, i + 11, 2);
+        if(hour < 0 || hour > 24 || charAt(text, bytes, i + 13) != ':') {
+            return INVALID;
+        }
+        int minute = digits(text, bytes, i + 14, 2);
+        if(minute < 0 || minute > 59 || charAt(text, bytes, i + 16) != ':') {
+            return INVALID;
+        }
+        int second = digits(text, bytes, i + 17, 2);
+        if(second < 0 || second > 59) return INVALID;
+        i += 19;
+
+        // Fractional seconds, truncated to ms
+        int millis = 0;
+        if(i < end && charAt(text, bytes, i) == '.') {
+            i++;
+            int nDigits = 0;
+            while(i < end) {
+                c = charAt(text, bytes, i);
+                if(c < '0' || c > '9') break;
+                if(nDigits < 3) {
+                    millis = 10 * millis + (c - '0');
+                }
+                nDigits++;
+                i++;
+            }
+            if(nDigits == 0) return INVALID;
+            for(int n = nDigits; n < 3; n++) {
+                millis *= 10;
+            }
+        }
+        if(hour == 24 && (minute != 0 || second != 0 || millis != 0)) {
+            return INVALID;
+        }
+
+        // Time zone
+        int offsetMinutes = 0;
+        if(i < end) {
+            c = charAt(text, bytes, i);
+            if(c == 'Z' || c == 'z') {
+                i++;
+            } else if(c == '+' || c == '-') {
+                int sign = c == '-' ? -1 : 1;
+                i++;
+                int offHour = end - i >= 2 ? digits(text, bytes, i, 2) : -1;
+                if(offHour < 0 || offHour > 14) return INVALID;
+                i += 2;
+                int offMin = 0;
+                if(i < end) {
+                    if(charAt(text, bytes, i) == ':') {
+                        i++;
+                    }
+                    offMin = end - i >= 2 ? digits(text, bytes, i, 2) : -1;
+                    if(offMin < 0 || offMin > 59) return INVALID;
+                    i += 2;
+                }
+                offsetMinutes = sign * (60 * offHour + offMin);
+            }
+            if(i != end) return INVALID;
+        }
+        return toMillis(year, month, day, hour, minute, second, millis,
+            offsetMinutes);
+    }
+
+    /**
+     * Reads n decimal digits starting at i.
+     * 
+     * @return The value or -1 if they are not all digits.
+     */
+    private static int digits(CharSequence text, byte[] bytes, int i, int n) {
+        int val = 0;
+        for(int j = i; j < i + n; j++) {
+            char c = charAt(text, bytes, j);
+            if(c < '0' || c > '9') {
+                return -1;
+            }
+            val = 10 * val + (c - '0');
+        }
+        return val;
+    }
+
+    private static char charAt(CharSequence text, byte[] bytes, int i) {
+        return text != null ? text.charAt(i) : (char)(bytes[i] & 0xff);
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if(month == 2 && (year % 4 == 0 && year % 100 != 0 || year % 400 == 0)) {
+            return 29;
+        }
+        return DAYS_IN_MONTH[month - 1];
+    }
+
+}
@@ -0,0 +1,171 @@
+package net.kenevans.stlviewer.utils;
+
+import java.util.Random;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * KernelBenchmark compares the time of ScalarArrayKernels with that of the
+ * ArrayKernels from getInstance, which is VectorArrayKernels when it is
+ * enabled and available, and reports the largest differences in the results. It uses
+ * generated tracks with segment breaks. The number of points may be given as
+ * the argument.<br>
+ * <br>
+ * To include VectorArrayKernels, compile src-vector with Java 16 or later and
+ * run with --add-modules jdk.incubator.vector and
+ * -Dstlviewer.vectorKernels=true.
+ *
+ * @author Kenneth Evans, Jr.
+ */
+public class KernelBenchmark
+{
+    /** Number of untimed runs per kernel. */
+    private static final int N_WARMUP = 20;
+    /** Number of timed runs per kernel. */
+    private static final int N_RUNS = 50;
+    /** Default number of points. */
+    private static final int N_POINTS = 1000000;
+    /** Points per segment. */
+    private static final int SEGMENT_LENGTH = 5000;
+
+    private static double[] vals;
+    private static long[] timeVals;
+    private static double[] lats;
+    private static double[] lons;
+    /** Keeps the results live. */
+    private static double sink;
+
+    /**
+     * Makes a track of the given number of points, with a NaN every
+     * SEGMENT_LENGTH points.
+     *
+     * @param nPoints
+     */
+    private static void generate(int nPoints) {
+        Random random = new Random(1);
+        vals = new double[nPoints];
+        timeVals = new long[nPoints];
+        lats = new double[nPoints];
+        lons = new double[nPoints];
+        long time = 1400000000000L;
+        double lat = 42.5, lon = -83.2;
+        for(int i = 0; i < nPoints; i++) {
+            time += 1000 + random.nextInt(2000);
+            lat += 1e-4 * random.nextGaussian();
+            lon += 1e-4 * random.nextGaussian();
+            timeVals[i] = time;
+            if(i % SEGMENT_LENGTH == SEGMENT_LENGTH - 1) {
+                vals[i] = lats[i] = lons[i] = Double.NaN;
+            } else {
+                vals[i] = 120 + 30 * random.nextGaussian();
+                lats[i] = lat;
+                lons[i] = lon;
+            }
+        }
+    }
+
+    /**
+     * Times channelStats for the given kernels.
+     *
+     * @param kernels
+     * @param results The results of the last run.
+     * @return The average time in ns.
+     */
+    private static double timeStats(ArrayKernels kernels, double[] results) {
+        for(int i = 0; i < N_WARMUP; i++) {
+            kernels.channelStats(vals, timeVals, 0, 100, results);
+            sink += results[ArrayKernels.SUM];
+        }
+        long start = System.nanoTime();
+        for(int i = 0; i < N_RUNS; i++) {
+            kernels.channelStats(vals, timeVals, 0, 100, results);
+            sink += results[ArrayKernels.SUM];
+        }
+        return (double)(System.nanoTime() - start) / N_RUNS;
+    }
+
+    /**
+     * Times consecutiveDistances for the given kernels.
+     *
+     * @param kernels
+     * @param distances The results of the last run.
+     * @return The average time in ns.
+     */
+    private static double timeDistances(ArrayKernels kernels,
+        double[] distances) {
+        for(int i = 0; i < N_WARMUP; i++) {
+            kernels.consecutiveDistances(lats, lons, distances);
+            sink += distances[1];
+        }
+        long start = System.nanoTime();
+        for(int i = 0; i < N_RUNS; i++) {
+            kernels.consecutiveDistances(lats, lons, distances);
+            sink += distances[1];
+        }
+        return (double)(System.nanoTime() - start) / N_RUNS;
+    }
+
+    /**
+     * Gets the largest relative difference between the values that are not
+     * NaN in both arrays. A NaN in only one counts as a difference of 1.
+     *
+     * @param vals1
+     * @param vals2
+     * @return
+     */
+    private static double maxRelativeDiff(double[] vals1, double[] vals2) {
+        double maxDiff = 0, diff;
+        for(int i = 0; i < vals1.length; i++) {
+            if(Double.isNaN(vals1[i]) || Double.isNaN(vals2[i])) {
+                diff = Double.isNaN(vals1[i]) == Double.isNaN(vals2[i]) ? 0
+                    : 1;
+            } else if(vals1[i] == vals2[i]) {
+                diff = 0;
+            } else {
+                diff = Math.abs(vals1[i] - vals2[i])
+                    / Math.max(Math.abs(vals1[i]), Math.abs(vals2[i]));
+            }
+            maxDiff = Math.max(maxDiff, diff);
+        }
+        return maxDiff;
+    }
+
+    /**
+     * @param args The number of points, optionally.
+     */
+    public static void main(String[] args) {
+        int nPoints = args.length > 0 ? Integer.parseInt(args[0]) : N_POINTS;
+        generate(nPoints);
+        ArrayKernels scalar = new ScalarArrayKernels();
+        ArrayKernels kernels = ArrayKernels.getInstance();
+        System.out.println(nPoints + " points, " + kernels.getName()
+            + " vs " + scalar.getName());
+
+        double[] scalarResults = new double[ArrayKernels.N_RESULTS];
+        double[] results = new double[ArrayKernels.N_RESULTS];
+        double scalarNs = timeStats(scalar, scalarResults);
+        double ns = timeStats(kernels, results);
+        System.out.println(String.format(
+            "  channelStats          %8.3f ms  %8.3f ms  %5.2fx"
+                + "  max rel diff %.2e",
+            1e-6 * scalarNs, 1e-6 * ns, scalarNs / ns,
+            maxRelativeDiff(scalarResults, results)));
+
+        double[] scalarDistances = new double[nPoints];
+        double[] distances = new double[nPoints];
+        scalarNs = timeDistances(scalar, scalarDistances);
+        ns = timeDistances(kernels, distances);
+        System.out.println(String.format(
+            "  consecutiveDistances  %8.3f ms  %8.3f ms  %5.2fx"
+                + "  max rel diff %.2e",
+            1e-6 * scalarNs, 1e-6 * ns, scalarNs / ns,
+            maxRelativeDiff(scalarDistances, distances)));
+
+        System.out.println();
+        System.out.println("All Done" + (sink == 0 ? " " : ""));
+    }
+
+}
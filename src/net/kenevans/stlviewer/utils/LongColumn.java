@@ -0,0 +1,164 @@
+package net.kenevans.stlviewer.utils;
+
+import java.util.Arrays;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * LongColumn is a growable array of primitive longs. It is used in place of
+ * an ArrayList&lt;Long&gt; to avoid creating an object for every value. The
+ * capacity doubles when it is exceeded.
+ * 
+ * @author Kenneth Evans, Jr.
+ * @see DoubleColumn
+ */
+public class LongColumn
+{
+    /** The default initial capacity. */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private long[] data;
+    private int size;
+
+    /**
+     * LongColumn constructor with the default capacity.
+     */
+    public LongColumn() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * LongColumn constructor.
+     * 
+     * @param capacity The initial capacity.
+     */
+    public LongColumn(int capacity) {
+        data = new long[Math.max(capacity, 1)];
+    }
+
+    /**
+     * LongColumn constructor that uses the given array as the backing array
+     * without copying it. The size is the length of the array.
+     * 
+     * @param data
+     */
+    public LongColumn(long[] data) {
+        this.data = data;
+        this.size = data.length;
+    }
+
+    /**
+     * Adds a value at the end.
+     * 
+     * @param val
+     */
+    public void add(long val) {
+        if(size == data.length) {
+            grow(size + 1);
+        }
+        data[size++] = val;
+    }
+
+    /**
+     * Adds the first n values of the given array at the end.
+     * 
+     * @param vals
+     * @param n
+     */
+    public void addAll(long[] vals, int n) {
+        if(size + n > data.length) {
+            grow(size + n);
+        }
+        System.arraycopy(vals, 0, data, size, n);
+        size += n;
+    }
+
+    /**
+     * Adds all the values in the given column at the end.
+     * 
+     * @param column
+     */
+    public void addAll(LongColumn column) {
+        addAll(column.data, column.size);
+    }
+
+    /**
+     * Gets the value at the given index.
+     * 
+     * @param index
+     * @return
+     */
+    public long get(int index) {
+        if(index >= size) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        return data[index];
+    }
+
+    /**
+     * Sets the value at the given index.
+     * 
+     * @param index
+     * @param val
+     */
+    public void set(int index, long val) {
+        if(index >= size) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        data[index] = val;
+    }
+
+    /**
+     * @return The number of values.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all the values but keeps the capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Makes the capacity equal to the size and returns the backing array,
+     * which then has exactly size() values. No copy is made if the capacity
+     * already equals the size. The column remains usable, but the returned
+     * array is no longer its backing array after the next add.
+     * 
+     * @return The backing array.
+     */
+    public long[] trimToSize() {
+        if(data.length != size) {
+            data = Arrays.copyOf(data, size);
+        }
+        return data;
+    }
+
+    /**
+     * @return A copy of the values.
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    /**
+     * Increases the capacity to at least the given value by doubling.
+     * 
+     * @param minCapacity
+     */
+    private void grow(int minCapacity) {
+        int capacity = Math.max(Math.max(2 * data.length, minCapacity), 16);
+        if(capacity < 0) {
+            // Overflow
+            capacity = Integer.MAX_VALUE - 8;
+        }
+        data = Arrays.copyOf(data, capacity);
+    }
+
+}
@@ -0,0 +1,244 @@
+package net.kenevans.stlviewer.utils;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * MinMaxDownsampler reduces the points of a series to those needed to draw it
+ * at a given width in pixels. The domain is divided into one bucket per
+ * pixel, and each bucket keeps its first, minimum, maximum, and last points
+ * in order. The lines drawn through these cover the same pixels as the lines
+ * through all of the points, so the peaks are not lost, and there are at
+ * most four points per pixel however many there were.<br>
+ * <br>
+ * A NaN value is a segment break and is kept, so the gaps are drawn. It is
+ * given the time of the point before it so the points stay in order. The
+ * points before and after the domain go into one bucket on each side, so the
+ * lines continue to the edges.
+ *
+ * @author Kenneth Evans, Jr.
+ */
+public class MinMaxDownsampler
+{
+    /** The most points kept for each bucket. */
+    public static final int POINTS_PER_BUCKET = 4;
+
+    private final long[] xVals;
+    private final double[] yVals;
+    private final LongColumn xOut;
+    private final DoubleColumn yOut;
+    // The indices of the points for the current bucket, or -1 if it is
+    // empty
+    private int first = -1, last, min, max;
+
+    /**
+     * MinMaxDownsampler constructor for adding points and blocks of points
+     * one bucket at a time, as MinMaxPyramid does.
+     *
+     * @param xVals
+     * @param yVals
+     * @param xOut
+     * @param yOut
+     */
+    MinMaxDownsampler(long[] xVals, double[] yVals, LongColumn xOut,
+        DoubleColumn yOut) {
+        this.xVals = xVals;
+        this.yVals = yVals;
+        this.xOut = xOut;
+        this.yOut = yOut;
+    }
+
+    /**
+     * Adds the downsampled points for the domain from lower to upper to the
+     * given columns. If the times are in order, only the points in the domain
+     * and one on either side are used.
+     *
+     * @param xVals The times.
+     * @param yVals The values, which must be as long as the times.
+     * @param ascending Whether the times are in order.
+     * @param lower The start of the domain.
+     * @param upper The end of the domain.
+     * @param nBuckets The number of buckets, usually the width in pixels.
+     * @param xOut The column for the times.
+     * @param yOut The column for the values.
+     */
+    public static void downsample(long[] xVals, double[] yVals,
+        boolean ascending, double lower, double upper, int nBuckets,
+        LongColumn xOut, DoubleColumn yOut) {
+        int start = 0;
+        int end = xVals.length;
+        if(ascending) {
+            start = Math.max(firstIndexAtOrAfter(xVals, lower) - 1, 0);
+            end = Math.min(firstIndexAfter(xVals, upper) + 1, end);
+        }
+        MinMaxDownsampler downsampler = new MinMaxDownsampler(xVals, yVals,
+            xOut, yOut);
+        double scale = upper > lower ? nBuckets / (upper - lower) : 0;
+        int bucket = Integer.MIN_VALUE, newBucket;
+        double x, y;
+        for(int i = start; i < end; i++) {
+            y = yVals[i];
+            if(Double.isNaN(y)) {
+                downsampler.flush();
+                downsampler.addBreak();
+                continue;
+            }
+            x = xVals[i];
+            if(x < lower) {
+                newBucket = -1;
+            } else if(x >= upper) {
+                newBucket = nBuckets;
+            } else {
+                newBucket = (int)((x - lower) * scale);
+            }
+            if(newBucket != bucket) {
+                downsampler.flush();
+                bucket = newBucket;
+            }
+            downsampler.add(i);
+        }
+        downsampler.flush();
+    }
+
+    /**
+     * Gets the number of points from the given times that are in the domain
+     * from lower to upper, with one on either side.
+     *
+     * @param xVals The times, which must be in order.
+     * @param lower
+     * @param upper
+     * @return
+     */
+    public static int countInDomain(long[] xVals, double lower, double upper) {
+        int start = Math.max(firstIndexAtOrAfter(xVals, lower) - 1, 0);
+        int end = Math.min(firstIndexAfter(xVals, upper) + 1, xVals.length);
+        return Math.max(end - start, 0);
+    }
+
+    /**
+     * Adds the point with the given index to the current bucket.
+     *
+     * @param i
+     */
+    void add(int i) {
+        addBlock(i, i, i, i);
+    }
+
+    /**
+     * Adds a block of points with no NaN values to the current bucket. The
+     * block must come after the points already in it. On ties, the earlier
+     * minimum and maximum are kept.
+     *
+     * @param blockFirst The index of the first point.
+     * @param blockLast The index of the last point.
+     * @param blockMin The index of the minimum.
+     * @param blockMax The index of the maximum.
+     */
+    void addBlock(int blockFirst, int blockLast, int blockMin, int blockMax) {
+        if(first < 0) {
+            first = blockFirst;
+            last = blockLast;
+            min = blockMin;
+            max = blockMax;
+            return;
+        }
+        last = blockLast;
+        if(yVals[blockMin] < yVals[min]) {
+            min = blockMin;
+        }
+        if(yVals[blockMax] > yVals[max]) {
+            max = blockMax;
+        }
+    }
+
+    /**
+     * Adds a NaN at the time of the last point, if there is one and it is not
+     * already a NaN.
+     */
+    void addBreak() {
+        int size = yOut.size();
+        if(size > 0 && !Double.isNaN(yOut.get(size - 1))) {
+            xOut.add(xOut.get(size - 1));
+            yOut.add(Double.NaN);
+        }
+    }
+
+    /**
+     * Adds the points for the current bucket in order and empties it.
+     */
+    void flush() {
+        if(first < 0) {
+            return;
+        }
+        int low = Math.min(min, max);
+        int high = Math.max(min, max);
+        addPoint(first);
+        if(low != first) {
+            addPoint(low);
+        }
+        if(high != low && high != first) {
+            addPoint(high);
+        }
+        if(last != high && last != first) {
+            addPoint(last);
+        }
+        first = -1;
+    }
+
+    /**
+     * Adds the point with the given index to the output.
+     *
+     * @param i
+     */
+    private void addPoint(int i) {
+        xOut.add(xVals[i]);
+        yOut.add(yVals[i]);
+    }
+
+    /**
+     * Gets the index of the first time that is not before the given one.
+     *
+     * @param xVals The times, which must be in order.
+     * @param x
+     * @return The index or the length if there is none.
+     */
+    static int firstIndexAtOrAfter(long[] xVals, double x) {
+        int low = 0;
+        int high = xVals.length;
+        int mid;
+        while(low < high) {
+            mid = (low + high) >>> 1;
+            if(xVals[mid] < x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets the index of the first time that is after the given one.
+     *
+     * @param xVals The times, which must be in order.
+     * @param x
+     * @return The index or the length if there is none.
+     */
+    static int firstIndexAfter(long[] xVals, double x) {
+        int low = 0;
+        int high = xVals.length;
+        int mid;
+        while(low < high) {
+            mid = (low + high) >>> 1;
+            if(xVals[mid] <= x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+}
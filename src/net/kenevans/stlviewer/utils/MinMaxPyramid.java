@@ -0,0 +1,203 @@
+package net.kenevans.stlviewer.utils;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * MinMaxPyramid holds the levels of detail for a series, so the points to
+ * draw it over a domain at a given width can be found without going over all
+ * the points in the domain. Level k divides the points into blocks of 2^k,
+ * and for each block holds the indices of its minimum and maximum. The first
+ * and last points of a block are its ends. A block with a NaN, which is a
+ * segment break, is marked so the blocks inside it are used instead. The
+ * levels take about two ints per point and are built in one pass.<br>
+ * <br>
+ * downsample gives the same points as MinMaxDownsampler.downsample. For each
+ * pixel it finds the end of the points in it by a binary search and then
+ * uses the largest blocks that fit, so the work is proportional to the
+ * number of pixels and breaks times the logarithm of the number of points,
+ * rather than to the number of points. The times must be in order.
+ *
+ * @author Kenneth Evans, Jr.
+ * @see MinMaxDownsampler
+ */
+public class MinMaxPyramid
+{
+    /** The index used for a block that has a NaN. */
+    private static final int BREAK = -1;
+
+    private final long[] xVals;
+    private final double[] yVals;
+    /**
+     * The indices of the minimum and maximum for each block, indexed by level
+     * - 1 and block.
+     */
+    private final int[][] minIndex;
+    private final int[][] maxIndex;
+
+    /**
+     * MinMaxPyramid constructor. Builds the levels for the given values,
+     * which are used without copying and must not be changed.
+     *
+     * @param xVals The times, which must be in order.
+     * @param yVals The values, which must be as long as the times.
+     */
+    public MinMaxPyramid(long[] xVals, double[] yVals) {
+        this.xVals = xVals;
+        this.yVals = yVals;
+        int len = yVals.length;
+        int nLevels = 0;
+        while((1L << (nLevels + 1)) < len) {
+            nLevels++;
+        }
+        minIndex = new int[nLevels][];
+        maxIndex = new int[nLevels][];
+        int nBlocks, i0, i1;
+        int[] mins, maxs, prevMins = null, prevMaxs = null;
+        for(int level = 1; level <= nLevels; level++) {
+            nBlocks = (len + (1 << level) - 1) >> level;
+            mins = new int[nBlocks];
+            maxs = new int[nBlocks];
+            for(int j = 0; j < nBlocks; j++) {
+                if(level == 1) {
+                    // Pairs of points
+                    i0 = 2 * j;
+                    i1 = Math.min(i0 + 1, len - 1);
+                    if(Double.isNaN(yVals[i0]) || Double.isNaN(yVals[i1])) {
+                        mins[j] = maxs[j] = BREAK;
+                        continue;
+                    }
+                    mins[j] = yVals[i1] < yVals[i0] ? i1 : i0;
+                    maxs[j] = yVals[i1] > yVals[i0] ? i1 : i0;
+                } else {
+                    // Pairs of blocks from the level below
+                    i0 = 2 * j;
+                    i1 = Math.min(i0 + 1, prevMins.length - 1);
+                    if(prevMins[i0] == BREAK || prevMins[i1] == BREAK) {
+                        mins[j] = maxs[j] = BREAK;
+                        continue;
+                    }
+                    mins[j] = yVals[prevMins[i1]] < yVals[prevMins[i0]]
+                        ? prevMins[i1] : prevMins[i0];
+                    maxs[j] = yVals[prevMaxs[i1]] > yVals[prevMaxs[i0]]
+                        ? prevMaxs[i1] : prevMaxs[i0];
+                }
+            }
+            minIndex[level - 1] = mins;
+            maxIndex[level - 1] = maxs;
+            prevMins = mins;
+            prevMaxs = maxs;
+        }
+    }
+
+    /**
+     * Adds the downsampled points for the domain from lower to upper to the
+     * given columns, as MinMaxDownsampler.downsample does.
+     *
+     * @param lower The start of the domain.
+     * @param upper The end of the domain.
+     * @param nBuckets The number of buckets, usually the width in pixels.
+     * @param xOut The column for the times.
+     * @param yOut The column for the values.
+     */
+    public void downsample(double lower, double upper, int nBuckets,
+        LongColumn xOut, DoubleColumn yOut) {
+        int len = xVals.length;
+        int start = Math.max(
+            MinMaxDownsampler.firstIndexAtOrAfter(xVals, lower) - 1, 0);
+        int end = Math.min(MinMaxDownsampler.firstIndexAfter(xVals, upper) + 1,
+            len);
+        MinMaxDownsampler downsampler = new MinMaxDownsampler(xVals, yVals,
+            xOut, yOut);
+        double scale = upper > lower ? nBuckets / (upper - lower) : 0;
+        int bucket = Integer.MIN_VALUE, newBucket;
+        int limit, level, block;
+        int i = start;
+        while(i < end) {
+            if(Double.isNaN(yVals[i])) {
+                downsampler.flush();
+                downsampler.addBreak();
+                i++;
+                continue;
+            }
+            newBucket = getBucket(xVals[i], lower, upper, nBuckets, scale);
+            if(newBucket != bucket) {
+                downsampler.flush();
+                bucket = newBucket;
+            }
+            // Find the end of the points in this bucket
+            int low = i + 1;
+            int high = end;
+            int mid;
+            while(low < high) {
+                mid = (low + high) >>> 1;
+                if(getBucket(xVals[mid], lower, upper, nBuckets,
+                    scale) == bucket) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            limit = low;
+            // Add the largest blocks that fit, down to the next break
+            while(i < limit && !Double.isNaN(yVals[i])) {
+                level = Math.min(Math.min(Integer.numberOfTrailingZeros(i),
+                    31 - Integer.numberOfLeadingZeros(limit - i)),
+                    minIndex.length);
+                while(level > 0
+                    && minIndex[level - 1][i >> level] == BREAK) {
+                    level--;
+                }
+                if(level == 0) {
+                    downsampler.add(i);
+                    i++;
+                } else {
+                    block = i >> level;
+                    downsampler.addBlock(i, i + (1 << level) - 1,
+                        minIndex[level - 1][block],
+                        maxIndex[level - 1][block]);
+                    i += 1 << level;
+                }
+            }
+        }
+        downsampler.flush();
+    }
+
+    /**
+     * Gets the bucket for the given time, which is -1 before the domain and
+     * nBuckets after it.
+     *
+     * @param x
+     * @param lower
+     * @param upper
+     * @param nBuckets
+     * @param scale The number of buckets per unit of time.
+     * @return
+     */
+    private static int getBucket(double x, double lower, double upper,
+        int nBuckets, double scale) {
+        if(x < lower) {
+            return -1;
+        } else if(x >= upper) {
+            return nBuckets;
+        }
+        return (int)((x - lower) * scale);
+    }
+
+    /**
+     * @return The times used for the levels.
+     */
+    public long[] getXVals() {
+        return xVals;
+    }
+
+    /**
+     * @return The values used for the levels.
+     */
+    public double[] getYVals() {
+        return yVals;
+    }
+
+}
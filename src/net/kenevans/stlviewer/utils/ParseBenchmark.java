@@ -0,0 +1,164 @@
+package net.kenevans.stlviewer.utils;
+
+import java.io.File;
+import java.util.Arrays;
+
+import net.kenevans.stlviewer.model.IConstants;
+import net.kenevans.stlviewer.model.ParseMode;
+import net.kenevans.stlviewer.model.STLFileModel;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * ParseBenchmark compares the time and memory used to load GPX files into an
+ * STLFileModel with the different ParseModes and checks that they give the
+ * same values. It also reports the heap retained per model, with and without
+ * the GpxType. The files are given as arguments. FILE_PATH is used if there
+ * are none.
+ * 
+ * @author Kenneth Evans, Jr.
+ */
+public class ParseBenchmark implements IConstants
+{
+    /** Number of untimed loads per file and mode. */
+    private static final int N_WARMUP = 3;
+    /** Number of timed loads per file and mode. */
+    private static final int N_RUNS = 10;
+    /** Number of models held at once to measure the retained heap. */
+    private static final int N_HELD = 5;
+
+    /**
+     * Loads the file N_RUNS times with the given mode and prints the average
+     * time and the heap in use after the load.
+     * 
+     * @param fileName
+     * @param mode
+     * @return The last model loaded.
+     */
+    public static STLFileModel time(String fileName, ParseMode mode) {
+        STLFileModel model = null;
+        for(int i = 0; i < N_WARMUP; i++) {
+            model = new STLFileModel(fileName, mode);
+        }
+        model = null;
+        Runtime runtime = Runtime.getRuntime();
+        long totalNs = 0;
+        long maxHeap = 0;
+        long start, heap;
+        for(int i = 0; i < N_RUNS; i++) {
+            System.gc();
+            heap = runtime.totalMemory() - runtime.freeMemory();
+            start = System.nanoTime();
+            model = new STLFileModel(fileName, mode);
+            totalNs += System.nanoTime() - start;
+            heap = runtime.totalMemory() - runtime.freeMemory() - heap;
+            if(heap > maxHeap) {
+                maxHeap = heap;
+            }
+        }
+        System.out.println(String.format(
+            "  %-10s %8.2f ms/load  %8.1f KB max heap growth", mode,
+            1.e-6 * totalNs / N_RUNS, maxHeap / 1024.));
+        return model;
+    }
+
+    /**
+     * Holds N_HELD models for the file at once and prints the heap retained
+     * per model, along with the size of its value arrays. The difference is
+     * mostly the GpxType, if it is kept.
+     * 
+     * @param fileName
+     * @param mode
+     * @param lean
+     */
+    public static void footprint(String fileName, ParseMode mode,
+        boolean lean) {
+        Runtime runtime = Runtime.getRuntime();
+        STLFileModel[] models = new STLFileModel[N_HELD];
+        gc();
+        long heap = runtime.totalMemory() - runtime.freeMemory();
+        for(int i = 0; i < N_HELD; i++) {
+            models[i] = new STLFileModel(fileName, mode, lean);
+        }
+        gc();
+        heap = runtime.totalMemory() - runtime.freeMemory() - heap;
+        System.out.println(String.format(
+            "  %-10s %-5s %10.1f KB retained/model %10.1f KB values",
+            mode, lean ? "lean" : "", heap / 1024. / N_HELD,
+            models[0].getValuesSize() / 1024.));
+    }
+
+    /**
+     * Runs the garbage collector until the heap in use stops going down.
+     */
+    private static void gc() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        long newUsed;
+        for(int i = 0; i < 10; i++) {
+            System.gc();
+            newUsed = runtime.totalMemory() - runtime.freeMemory();
+            if(newUsed >= used) {
+                break;
+            }
+            used = newUsed;
+        }
+    }
+
+    /**
+     * Checks that the two models have the same values.
+     * 
+     * @param model1
+     * @param model2
+     * @return If they are the same.
+     */
+    public static boolean compare(STLFileModel model1, STLFileModel model2) {
+        boolean same = Arrays.equals(model1.getTimeVals(),
+            model2.getTimeVals())
+            && Arrays.equals(model1.getHrTimeVals(), model2.getHrTimeVals())
+            && Arrays.equals(model1.getHrVals(), model2.getHrVals())
+            && Arrays.equals(model1.getSpeedTimeVals(),
+                model2.getSpeedTimeVals())
+            && Arrays.equals(model1.getSpeedVals(), model2.getSpeedVals())
+            && Arrays.equals(model1.getEleVals(), model2.getEleVals())
+            && model1.getnTracks() == model2.getnTracks()
+            && model1.getnSegments() == model2.getnSegments()
+            && model1.getnTrackPoints() == model2.getnTrackPoints()
+            && model1.getnHrValues() == model2.getnHrValues()
+            && model1.getDistance() == model2.getDistance();
+        return same;
+    }
+
+    /**
+     * @param args The GPX files to use.
+     */
+    public static void main(String[] args) {
+        if(args.length == 0) {
+            args = new String[] {FILE_PATH};
+        }
+        for(String fileName : args) {
+            File file = new File(fileName);
+            System.out.println(file.getName() + " (" + file.length() / 1024
+                + " KB)");
+            STLFileModel reference = null;
+            for(ParseMode mode : ParseMode.values()) {
+                STLFileModel model = time(fileName, mode);
+                if(reference == null) {
+                    reference = model;
+                } else if(!compare(reference, model)) {
+                    System.out.println("  " + mode + " values differ from "
+                        + reference.getParseMode());
+                }
+            }
+            footprint(fileName, ParseMode.JAXB, false);
+            footprint(fileName, ParseMode.JAXB, true);
+            footprint(fileName, ParseMode.MAPPED, false);
+        }
+        System.out.println();
+        System.out.println("All Done");
+    }
+
+}
@@ -0,0 +1,312 @@
+package net.kenevans.stlviewer.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import net.kenevans.stlviewer.model.IConstants;
+import net.kenevans.stlviewer.model.ParseMode;
+import net.kenevans.stlviewer.model.STLFileModel;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * ParseModeCheck checks that the ParseModes and refresh give the same values.
+ * It writes GPX files to a temporary directory:
+ * <ul>
+ * <li>a single track with Garmin TrackPointExtension HR values,</li>
+ * <li>several tracks with several segments each,</li>
+ * <li>OruxMaps tracks with bpm text, with LF and with CRLF line ends.</li>
+ * </ul>
+ * Each file is loaded with every ParseMode, and the values are compared
+ * with those from STREAMING. Each file is then written in pieces, as when it
+ * is still being recorded, and a model is refreshed after each piece. The
+ * values after the last piece are compared with those from a full parse. It
+ * prints a line for each check and exits with status 1 if any fail.
+ *
+ * @author Kenneth Evans, Jr.
+ */
+public class ParseModeCheck implements IConstants
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /** The time of the first track point in ms. */
+    private static final long START_TIME = 1404129600000L;
+    /** The number of pieces in which a file is written for refresh. */
+    private static final int N_PIECES = 9;
+
+    private static int nChecks;
+    private static int nFailed;
+
+    /**
+     * Makes the text of a GPX file. Every fifth track point has no HR, every
+     * seventh has a TrackPointExtension without hr, and every eleventh has
+     * no elevation. For OruxMaps, the HR values are in bpm text for each
+     * track, with an empty line in it, instead.
+     *
+     * @param nTracks
+     * @param nSegments The number of segments per track.
+     * @param nPoints The number of points per segment.
+     * @param oruxMaps Whether to use OruxMaps bpm text for the HR.
+     * @param eol The line end.
+     * @return
+     */
+    private static String makeGpx(int nTracks, int nSegments, int nPoints,
+        boolean oruxMaps, String eol) {
+        SimpleDateFormat formatter = new SimpleDateFormat(
+            "yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        formatter.setTimeZone(TimeZone.getTimeZone("GMT"));
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>").append(eol);
+        sb.append("<gpx version=\"1.1\" creator=\"ParseModeCheck\""
+            + " xmlns=\"http://www.topografix.com/GPX/1/1\""
+            + " xmlns:gpxtpx=\"http://www.garmin.com/xmlschemas/"
+            + "TrackPointExtension/v1\""
+            + " xmlns:om=\"http://www.oruxmaps.com/oruxmapsextensions/1/0\">")
+            .append(eol);
+        long time = START_TIME;
+        int k = 0;
+        for(int trk = 0; trk < nTracks; trk++) {
+            sb.append("<trk><name>Track ").append(trk).append("</name>")
+                .append(eol);
+            if(oruxMaps) {
+                sb.append("<extensions><om:oruxmapsextensions><om:bpm>");
+                for(int i = 0; i < nSegments * nPoints; i++) {
+                    if(i == nPoints / 2) {
+                        // An empty line
+                        sb.append(eol);
+                    }
+                    sb.append(90 + (k + i) % 60).append(' ')
+                        .append(formatter.format(new Date(time + 1000L * i)));
+                    if(i < nSegments * nPoints - 1) {
+                        sb.append(eol);
+                    }
+                }
+                sb.append("</om:bpm></om:oruxmapsextensions></extensions>")
+                    .append(eol);
+            }
+            for(int seg = 0; seg < nSegments; seg++) {
+                sb.append("<trkseg>").append(eol);
+                for(int i = 0; i < nPoints; i++, k++, time += 1000) {
+                    sb.append(String.format(Locale.US,
+                        "<trkpt lat=\"%.7f\" lon=\"%.7f\">", 42.1 + 1e-5 * k,
+                        -88.2 + 1.3e-5 * k));
+                    if(k % 11 != 0) {
+                        sb.append(String.format(Locale.US,
+                            "<ele>%.1f</ele>", 200 + .7 * (k % 30)));
+                    }
+                    sb.append("<time>").append(formatter.format(new Date(time)))
+                        .append("</time>");
+                    if(!oruxMaps && k % 5 != 0) {
+                        sb.append("<extensions><gpxtpx:TrackPointExtension>");
+                        if(k % 7 == 0) {
+                            sb.append("<gpxtpx:cad>80</gpxtpx:cad>");
+                        } else {
+                            sb.append("<gpxtpx:hr>").append(100 + k % 50)
+                                .append("</gpxtpx:hr>");
+                        }
+                        sb.append("</gpxtpx:TrackPointExtension></extensions>");
+                    }
+                    sb.append("</trkpt>").append(eol);
+                }
+                sb.append("</trkseg>").append(eol);
+            }
+            sb.append("</trk>").append(eol);
+        }
+        sb.append("</gpx>").append(eol);
+        return sb.toString();
+    }
+
+    /**
+     * Writes the given bytes to the given file and moves its last-modified
+     * time forward, so a refresh sees the change even if it is quick.
+     *
+     * @param file
+     * @param bytes
+     * @param length The number of bytes to write.
+     * @throws IOException
+     */
+    private static void write(File file, byte[] bytes, int length)
+        throws IOException {
+        long lastModified = file.exists() ? file.lastModified() : 0;
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes, 0, length);
+        } finally {
+            out.close();
+        }
+        if(file.lastModified() <= lastModified) {
+            file.setLastModified(lastModified + 2000);
+        }
+    }
+
+    /**
+     * Records the result of a check.
+     *
+     * @param name
+     * @param ok
+     */
+    private static void check(String name, boolean ok) {
+        nChecks++;
+        if(!ok) {
+            nFailed++;
+        }
+        System.out.println((ok ? "  OK     " : "  FAILED ") + name);
+    }
+
+    /**
+     * Checks that the two models have the same values, including the
+     * positions the speed was derived from and the malformed bpm lines.
+     *
+     * @param model1
+     * @param model2
+     * @return If they are the same.
+     */
+    private static boolean same(STLFileModel model1, STLFileModel model2) {
+        return model1.isLoaded() && model2.isLoaded()
+            && ParseBenchmark.compare(model1, model2)
+            && model1.getStartTime() == model2.getStartTime()
+            && model1.getEndTime() == model2.getEndTime()
+            && model1.getStartHrTime() == model2.getStartHrTime()
+            && model1.getEndHrTime() == model2.getEndHrTime()
+            && model1.getnMalformedBpmLines() == model2
+                .getnMalformedBpmLines();
+    }
+
+    /**
+     * Checks that every ParseMode gives the same values for the given file as
+     * STREAMING.
+     *
+     * @param file
+     */
+    private static void checkModes(File file) {
+        STLFileModel reference = new STLFileModel(file.getPath(),
+            ParseMode.STREAMING);
+        check(file.getName() + " has values", reference.isLoaded()
+            && reference.getnTrackPoints() > 0
+            && reference.getnHrValues() > 0);
+        for(ParseMode mode : ParseMode.values()) {
+            if(mode == ParseMode.STREAMING) {
+                continue;
+            }
+            STLFileModel model = new STLFileModel(file.getPath(), mode);
+            check(file.getName() + " " + mode + " same as STREAMING",
+                same(reference, model));
+        }
+    }
+
+    /**
+     * Writes the given text to the given file in N_PIECES pieces, refreshing
+     * a model loaded from the first piece with the given mode after each one,
+     * and checks that the values at the end are the same as those from a
+     * full parse. The pieces end at arbitrary bytes, so most end in the
+     * middle of a track point.
+     *
+     * @param file
+     * @param text
+     * @param mode
+     * @throws IOException
+     */
+    private static void checkRefresh(File file, String text, ParseMode mode)
+        throws IOException {
+        byte[] bytes = text.getBytes(UTF8);
+        // Start after the first track point, so there is something to load
+        int first = text.indexOf("</trkpt>") + "</trkpt>".length();
+        write(file, bytes, first);
+        STLFileModel model = new STLFileModel(file.getPath(), mode);
+        // Only MAPPED can load a file that is not complete. For the others
+        // the first refresh reads it all again.
+        boolean ok = model.isLoaded() || mode != ParseMode.MAPPED;
+        int nAdded = 0;
+        int nAll = 0;
+        int end, res;
+        for(int i = 1; i <= N_PIECES; i++) {
+            end = i == N_PIECES ? bytes.length
+                : first + (int)((long)(bytes.length - first) * i / N_PIECES)
+                    + 3 * i;
+            write(file, bytes, Math.min(end, bytes.length));
+            res = model.refresh();
+            if(res == STLFileModel.REFRESH_FAILED) {
+                ok = false;
+            } else if(res == STLFileModel.REFRESH_ALL) {
+                nAll++;
+            } else {
+                nAdded += res;
+            }
+            if(i % 3 == 0) {
+                // Derive the speed and elevation part way, so the rest is
+                // appended to them
+                model.getSpeedVals();
+                model.getEleVals();
+            }
+        }
+        // Nothing has changed
+        ok &= model.refresh() == 0;
+        STLFileModel reference = new STLFileModel(file.getPath(),
+            ParseMode.STREAMING);
+        check(file.getName() + " refresh from " + mode + " same as full parse"
+            + " (" + nAdded + " appended, " + nAll + " read again)",
+            ok && same(reference, model));
+    }
+
+    /**
+     * @param args Not used.
+     */
+    public static void main(String[] args) {
+        File dir = null;
+        try {
+            dir = File.createTempFile("ParseModeCheck", "");
+            if(!dir.delete() || !dir.mkdir()) {
+                throw new IOException("Cannot make " + dir);
+            }
+            String[] names = {"single.gpx", "multi.gpx", "oruxmaps.gpx",
+                "oruxmaps-crlf.gpx"};
+            String[] texts = {makeGpx(1, 1, 500, false, "\n"),
+                makeGpx(4, 3, 80, false, "\n"),
+                makeGpx(3, 2, 100, true, "\n"),
+                makeGpx(3, 2, 100, true, "\r\n")};
+            System.out.println("ParseModes");
+            for(int i = 0; i < names.length; i++) {
+                File file = new File(dir, names[i]);
+                byte[] bytes = texts[i].getBytes(UTF8);
+                write(file, bytes, bytes.length);
+                checkModes(file);
+            }
+            System.out.println("Refresh");
+            for(int i = 0; i < names.length; i++) {
+                File file = new File(dir, "growing-" + names[i]);
+                checkRefresh(file, texts[i], ParseMode.MAPPED);
+                file.delete();
+                checkRefresh(file, texts[i], ParseMode.STREAMING);
+            }
+        } catch(Exception ex) {
+            ex.printStackTrace();
+            nFailed++;
+        } finally {
+            if(dir != null) {
+                File[] files = dir.listFiles();
+                if(files != null) {
+                    for(File file : files) {
+                        file.delete();
+                    }
+                }
+                dir.delete();
+            }
+        }
+        System.out.println();
+        System.out.println((nChecks - nFailed) + " of " + nChecks
+            + " checks passed"
+            + (nFailed > 0 ? ", " + nFailed + " failed" : ""));
+        if(nFailed > 0) {
+            System.exit(1);
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+package net.kenevans.stlviewer.utils;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * RunningAverage calculates trailing moving averages over primitive arrays in
+ * one pass with a running sum, so the time is O(n) however long the average
+ * is. The average can be over a number of points or over a window of time.
+ * <br>
+ * <br>
+ * A NaN value is a segment break. The average is NaN there and starts over
+ * after it, so values from different segments are not averaged together. The
+ * averages may be calculated from a given index on, so the values appended to
+ * a series can be averaged without calculating the earlier ones again.
+ *
+ * @author Kenneth Evans, Jr.
+ */
+public class RunningAverage
+{
+    /**
+     * Calculates the average of each value and up to count - 1 values before
+     * it in the same segment.
+     *
+     * @param vals The values.
+     * @param count The number of points to average over.
+     * @param start The index of the first average to calculate.
+     * @param avgVals The array for the averages, which must be at least as
+     *            long as the values.
+     */
+    public static void pointAverage(double[] vals, int count, int start,
+        double[] avgVals) {
+        int len = vals.length;
+        if(count < 1) {
+            count = 1;
+        }
+        // Begin with the values before start that are in the first window
+        int first = start;
+        while(first > 0 && start - first < count - 1
+            && !Double.isNaN(vals[first - 1])) {
+            first--;
+        }
+        double sum = 0;
+        for(int j = first; j < start; j++) {
+            sum += vals[j];
+        }
+        double val;
+        for(int i = start; i < len; i++) {
+            val = vals[i];
+            if(Double.isNaN(val)) {
+                avgVals[i] = Double.NaN;
+                sum = 0;
+                first = i + 1;
+                continue;
+            }
+            sum += val;
+            if(i - first >= count) {
+                sum -= vals[first++];
+            }
+            avgVals[i] = sum / (i - first + 1);
+        }
+    }
+
+    /**
+     * Calculates the average of the values in the same segment that are less
+     * than the given time before each value. Each value counts once, as for
+     * pointAverage, rather than being weighted by how long it holds.
+     *
+     * @param timeVals The times in ms, which must be in order within each
+     *            segment.
+     * @param vals The values, which must be as long as the times.
+     * @param window The length of the window in ms.
+     * @param start The index of the first average to calculate.
+     * @param avgVals The array for the averages, which must be at least as
+     *            long as the values.
+     */
+    public static void timeAverage(long[] timeVals, double[] vals, long window,
+        int start, double[] avgVals) {
+        int len = vals.length;
+        // Begin with the values before start that are in the first window
+        int first = start;
+        if(start < len) {
+            long limit = timeVals[start] - window;
+            while(first > 0 && !Double.isNaN(vals[first - 1])
+                && timeVals[first - 1] > limit) {
+                first--;
+            }
+        }
+        double sum = 0;
+        for(int j = first; j < start; j++) {
+            sum += vals[j];
+        }
+        double val;
+        long limit;
+        for(int i = start; i < len; i++) {
+            val = vals[i];
+            if(Double.isNaN(val)) {
+                avgVals[i] = Double.NaN;
+                sum = 0;
+                first = i + 1;
+                continue;
+            }
+            sum += val;
+            limit = timeVals[i] - window;
+            while(first < i && timeVals[first] <= limit) {
+                sum -= vals[first++];
+            }
+            avgVals[i] = sum / (i - first + 1);
+        }
+    }
+
+}
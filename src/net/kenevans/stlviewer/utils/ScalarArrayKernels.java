@@ -0,0 +1,126 @@
+package net.kenevans.stlviewer.utils;
+
+/*
+ * Created on Oct 18, 2026
+ * By Kenneth Evans, Jr.
+ */
+
+/**
+ * ScalarArrayKernels implements ArrayKernels with plain loops. The sums are
+ * taken in the same order as when the values are added one at a time to a
+ * ChannelStats, so the results are the same to the bit.
+ *
+ * @author Kenneth Evans, Jr.
+ */
+public class ScalarArrayKernels extends ArrayKernels
+{
+    /*
+     * (non-Javadoc)
+     *
+     * @see net.kenevans.stlviewer.utils.ArrayKernels#channelStats(double[],
+     * long[], double, double, double[])
+     */
+    @Override
+    public void channelStats(double[] vals, long[] timeVals,
+        double omitBelow, double movingOmitBelow, double[] results) {
+        int len = vals.length;
+        int nValues = 0, nNaN = 0, nSegments = 0, nUsed = 0, nMoving = 0;
+        int nDiffs = 0;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        double sum = 0, weightedSum = 0, totalWeight = 0;
+        double movingSum = 0, movingWeightedSum = 0, movingTotalWeight = 0;
+        double gain = 0, loss = 0;
+        double val, diff, weight;
+        boolean prevValid, nextValid;
+        for(int i = 0; i < len; i++) {
+            val = vals[i];
+            if(Double.isNaN(val)) {
+                nNaN++;
+                continue;
+            }
+            nValues++;
+            prevValid = i > 0 && !Double.isNaN(vals[i - 1]);
+            nextValid = i < len - 1 && !Double.isNaN(vals[i + 1]);
+            if(prevValid) {
+                diff = val - vals[i - 1];
+                nDiffs++;
+                if(diff > 0) {
+                    gain += diff;
+                } else if(diff < 0) {
+                    loss += -diff;
+                }
+            } else {
+                nSegments++;
+            }
+            weight = (prevValid ? .5 * (timeVals[i] - timeVals[i - 1]) : 0)
+                + (nextValid ? .5 * (timeVals[i + 1] - timeVals[i]) : 0);
+            if(val >= omitBelow) {
+                nUsed++;
+                sum += val;
+                totalWeight += weight;
+                weightedSum += val * weight;
+                if(val > max) {
+                    max = val;
+                }
+                if(val < min) {
+                    min = val;
+                }
+            }
+            if(val >= movingOmitBelow) {
+                nMoving++;
+                movingSum += val;
+                movingTotalWeight += weight;
+                movingWeightedSum += val * weight;
+            }
+        }
+        results[N_VALUES] = nValues;
+        results[N_NAN] = nNaN;
+        results[N_SEGMENTS] = nSegments;
+        results[N_USED] = nUsed;
+        results[MIN] = min;
+        results[MAX] = max;
+        results[SUM] = sum;
+        results[WEIGHTED_SUM] = weightedSum;
+        results[TOTAL_WEIGHT] = totalWeight;
+        results[N_MOVING] = nMoving;
+        results[MOVING_SUM] = movingSum;
+        results[MOVING_WEIGHTED_SUM] = movingWeightedSum;
+        results[MOVING_TOTAL_WEIGHT] = movingTotalWeight;
+        results[N_DIFFS] = nDiffs;
+        results[GAIN] = gain;
+        results[LOSS] = loss;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * net.kenevans.stlviewer.utils.ArrayKernels#consecutiveDistances(double[],
+     * double[], double[])
+     */
+    @Override
+    public void consecutiveDistances(double[] lats, double[] lons,
+        double[] distances) {
+        int len = lats.length;
+        if(len == 0) {
+            return;
+        }
+        distances[0] = Double.NaN;
+        for(int i = 1; i < len; i++) {
+            distances[i] = GpxUtils.greatCircleDistance(lats[i - 1],
+                lons[i - 1], lats[i], lons[i]);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see net.kenevans.stlviewer.utils.ArrayKernels#getName()
+     */
+    @Override
+    public String getName() {
+        return "Scalar";
+    }
+
+}